@@ -4,17 +4,49 @@
  */
 package tv.racespot.racespotlivebot.config;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
+import tv.racespot.racespotlivebot.data.AnnouncementDeliveryRepository;
+import tv.racespot.racespotlivebot.data.DServerRepository;
+import tv.racespot.racespotlivebot.data.EventRepository;
+import tv.racespot.racespotlivebot.data.LeaderLeaseRepository;
+import tv.racespot.racespotlivebot.data.ScheduledEventRepository;
+import tv.racespot.racespotlivebot.data.TalentAvailabilityRepository;
+import tv.racespot.racespotlivebot.data.UserMappingRepository;
+import tv.racespot.racespotlivebot.data.YoutubeChannelRepository;
+import tv.racespot.racespotlivebot.service.AvailabilityPool;
 import tv.racespot.racespotlivebot.service.BotService;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.RetentionService;
+import tv.racespot.racespotlivebot.service.ScheduleIndex;
 import tv.racespot.racespotlivebot.service.commands.*;
+import tv.racespot.racespotlivebot.service.delivery.AnnouncementDispatcher;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.SendPriority;
+import tv.racespot.racespotlivebot.service.reminders.ReminderService;
+import tv.racespot.racespotlivebot.service.rest.ApiGuard;
+import tv.racespot.racespotlivebot.service.rest.QuotaAccountant;
 import tv.racespot.racespotlivebot.service.rest.SheetsManager;
+import tv.racespot.racespotlivebot.service.rest.YouTubeManager;
+import tv.racespot.racespotlivebot.service.tracing.RepositoryTracing;
+import tv.racespot.racespotlivebot.service.tracing.TraceCollector;
+import tv.racespot.racespotlivebot.service.websub.WebSubCallbackServer;
+import tv.racespot.racespotlivebot.service.websub.WebSubSubscriber;
 
+import org.apache.commons.lang3.StringUtils;
 import org.javacord.api.DiscordApi;
-import org.javacord.api.DiscordApiBuilder;
+import org.javacord.api.entity.message.MessageBuilder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -27,6 +59,21 @@ public class AppConfig {
     @Value("${discord.api.token}")
     private String apiToken;
 
+    @Value("${discord.notification.admin_channel_id}")
+    private String adminChannelId;
+
+    @Value("${discord.shards.enabled:false}")
+    private boolean shardsEnabled;
+
+    @Value("${discord.shards.total:0}")
+    private int totalShards;
+
+    @Value("${discord.shards.first:0}")
+    private int firstShard;
+
+    @Value("${discord.shards.count:0}")
+    private int shardCount;
+
     @Value("${discord.sheets.id}")
     private String sheetId;
 
@@ -36,13 +83,80 @@ public class AppConfig {
     @Value("${discord.sheets.range}")
     private String sheetRange;
 
+    @Value("${discord.sheets.ranges:}")
+    private String sheetRanges;
+
+    @Value("${google.api_key}")
+    private String googleApiKey;
+
+    @Value("${google.api_keys:}")
+    private String googleApiKeys;
+
+    @Value("${discord.sheets.snapshot_ttl_seconds:60}")
+    private long scheduleSnapshotTtlSeconds;
+
+    @Value("${reminders.offset_minutes:1440,120,30}")
+    private String reminderOffsetMinutes;
+
+    @Value("${reminders.tick_millis:30000}")
+    private long reminderTickMillis;
+
+    @Value("${google.sheets.field_mask:true}")
+    private boolean sheetsFieldMaskEnabled;
+
+    @Value("${google.sheets.streaming_decode:true}")
+    private boolean sheetsStreamingDecodeEnabled;
+
+    @Value("${google.sheets.timeout_millis:20000}")
+    private long sheetsTimeoutMillis;
+
+    @Value("${google.youtube.timeout_millis:10000}")
+    private long youTubeTimeoutMillis;
+
+    @Value("${google.hedging.enabled:true}")
+    private boolean googleHedgingEnabled;
+
+    @Value("${google.breaker.failure_threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${google.breaker.open_seconds:60}")
+    private long breakerOpenSeconds;
+
+    @Value("${websub.enabled:false}")
+    private boolean webSubEnabled;
+
+    @Value("${websub.hub_url:https://pubsubhubbub.appspot.com/subscribe}")
+    private String webSubHubUrl;
+
+    @Value("${websub.callback_url:}")
+    private String webSubCallbackUrl;
+
+    @Value("${websub.secret:}")
+    private String webSubSecret;
+
+    @Value("${websub.lease_seconds:432000}")
+    private long webSubLeaseSeconds;
+
+    @Value("${websub.port:8090}")
+    private int webSubPort;
+
+    @Value("${websub.path:/websub/youtube}")
+    private String webSubPath;
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public ShardManager shardManager() {
+        return new ShardManager(
+            apiToken,
+            shardsEnabled,
+            totalShards,
+            firstShard,
+            shardCount);
+    }
+
     @Bean
-    public DiscordApi api(){
+    public DiscordApi api(ShardManager shardManager){
 
-        return new DiscordApiBuilder()
-            .setToken(apiToken)
-            .setAllIntents()
-            .login().join();
+        return shardManager.getPrimaryApi(adminChannelId);
     }
 
     @Bean
@@ -52,7 +166,8 @@ public class AppConfig {
             ScheduleCommands scheduleCommands,
             SeriesLogoCommands seriesLogoCommands,
             ServerCommands serverCommands,
-            UserMappingCommands userMappingCommands) {
+            UserMappingCommands userMappingCommands,
+            DiagnosticsCommands diagnosticsCommands) {
 
         return new BotService(
                 api,
@@ -60,16 +175,162 @@ public class AppConfig {
                 scheduleCommands,
                 seriesLogoCommands,
                 serverCommands,
-                userMappingCommands);
+                userMappingCommands,
+                diagnosticsCommands);
     }
 
     @Bean
     @Scope("singleton")
-    public SheetsManager sheetsManager() {
+    public SheetsManager sheetsManager(ShardManager shardManager, OutboundMessageQueue outboundQueue) {
         return new SheetsManager(
             sheetId,
             gid,
-            sheetRange);
+            Arrays.stream((StringUtils.isNotBlank(sheetRanges) ? sheetRanges : sheetRange).split(";"))
+                .map(String::trim)
+                .filter(range -> !range.isEmpty())
+                .collect(Collectors.toList()),
+            sheetsApiGuard(shardManager, outboundQueue),
+            scheduleSnapshotTtlSeconds,
+            sheetsFieldMaskEnabled,
+            sheetsStreamingDecodeEnabled);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ApiGuard sheetsApiGuard(ShardManager shardManager, OutboundMessageQueue outboundQueue) {
+        return apiGuard("Google Sheets", sheetsTimeoutMillis, shardManager, outboundQueue);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ApiGuard youTubeApiGuard(ShardManager shardManager, OutboundMessageQueue outboundQueue) {
+        return apiGuard("YouTube", youTubeTimeoutMillis, shardManager, outboundQueue);
+    }
+
+    @Bean
+    public QuotaAccountant quotaAccountant() {
+        String pool = StringUtils.isNotBlank(googleApiKeys) ? googleApiKeys : googleApiKey;
+        List<String> keys = Arrays.stream(pool.split(","))
+            .map(String::trim)
+            .filter(key -> !key.isEmpty())
+            .collect(Collectors.toList());
+        return new QuotaAccountant(keys);
+    }
+
+    @Bean
+    public YouTubeManager youTubeManager(QuotaAccountant quotaAccountant, ShardManager shardManager, OutboundMessageQueue outboundQueue) {
+        return new YouTubeManager(quotaAccountant, youTubeApiGuard(shardManager, outboundQueue));
+    }
+
+    @Bean
+    public WebSubSubscriber webSubSubscriber(YoutubeChannelRepository youtubeChannelRepository, LeaderElection leaderElection) {
+        return new WebSubSubscriber(
+            webSubEnabled,
+            webSubHubUrl,
+            webSubCallbackUrl,
+            webSubSecret,
+            webSubLeaseSeconds,
+            youtubeChannelRepository,
+            leaderElection);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "websub.enabled", havingValue = "true")
+    public WebSubCallbackServer webSubCallbackServer(
+            WebSubSubscriber webSubSubscriber,
+            EventCommands eventCommands) {
+        return new WebSubCallbackServer(
+            webSubPort,
+            webSubPath,
+            webSubSecret,
+            webSubSubscriber::verify,
+            eventCommands::onVideoNotification);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public WorkExecutor workExecutor() {
+        return new WorkExecutor();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public OutboundMessageQueue outboundMessageQueue(DiscordApi api) {
+        return new OutboundMessageQueue(api);
+    }
+
+    @Bean
+    public RetentionService retentionService(
+            EventRepository eventRepository,
+            ScheduledEventRepository scheduledEventRepository,
+            AnnouncementDispatcher announcementDispatcher,
+            ScheduleIndex scheduleIndex,
+            WorkExecutor workExecutor,
+            LeaderElection leaderElection) {
+        return new RetentionService(eventRepository, scheduledEventRepository, announcementDispatcher, scheduleIndex, workExecutor, leaderElection);
+    }
+
+    @Bean(initMethod = "rebuild")
+    public ReminderService reminderService(
+            ScheduleIndex scheduleIndex,
+            ShardManager shardManager,
+            OutboundMessageQueue outboundQueue,
+            LeaderElection leaderElection) {
+        List<Duration> offsets = Arrays.stream(reminderOffsetMinutes.split(","))
+            .map(String::trim)
+            .filter(StringUtils::isNotBlank)
+            .map(minutes -> Duration.ofMinutes(Long.parseLong(minutes)))
+            .collect(Collectors.toList());
+        return new ReminderService(offsets, reminderTickMillis, scheduleIndex, shardManager, outboundQueue, leaderElection);
+    }
+
+    @Bean(initMethod = "rebuild")
+    public ScheduleIndex scheduleIndex(
+            ScheduledEventRepository scheduledEventRepository,
+            UserMappingRepository userMappingRepository) {
+        return new ScheduleIndex(scheduledEventRepository, userMappingRepository);
+    }
+
+    @Bean(initMethod = "rebuild")
+    public AvailabilityPool availabilityPool(TalentAvailabilityRepository talentAvailabilityRepository) {
+        return new AvailabilityPool(talentAvailabilityRepository);
+    }
+
+    @Bean
+    public ErrorReporter errorReporter(ShardManager shardManager, OutboundMessageQueue outboundQueue) {
+        return new ErrorReporter(shardManager, outboundQueue);
+    }
+
+    @Bean
+    public AnnouncementDispatcher announcementDispatcher(
+            AnnouncementDeliveryRepository announcementDeliveryRepository,
+            EventRepository eventRepository,
+            DServerRepository serverRepository,
+            ShardManager shardManager,
+            OutboundMessageQueue outboundQueue,
+            ErrorReporter errorReporter,
+            WorkExecutor workExecutor,
+            LeaderElection leaderElection) {
+        return new AnnouncementDispatcher(
+            announcementDeliveryRepository,
+            eventRepository,
+            serverRepository,
+            shardManager,
+            outboundQueue,
+            errorReporter,
+            workExecutor,
+            leaderElection);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public TraceCollector traceCollector() {
+        return new TraceCollector();
+    }
+
+    @Bean
+    public static RepositoryTracing repositoryTracing() {
+        return new RepositoryTracing();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "release")
+    public LeaderElection leaderElection(LeaderLeaseRepository leaderLeaseRepository, ShardManager shardManager) {
+        return new LeaderElection(leaderLeaseRepository, shardManager);
     }
 
     /* used for local dev
@@ -79,6 +340,13 @@ public class AppConfig {
             "-tcp", "-tcpAllowOthers", "-tcpPort", "9090");
     }*/
 
+    private ApiGuard apiGuard(String name, long timeoutMillis, ShardManager shardManager, OutboundMessageQueue outboundQueue) {
+        ApiGuard guard = new ApiGuard(name, timeoutMillis, googleHedgingEnabled, breakerFailureThreshold, breakerOpenSeconds * 1000);
+        guard.setDegradedListener(message -> shardManager.getServerTextChannelById(adminChannelId)
+            .ifPresent(channel -> outboundQueue.send(SendPriority.DIAGNOSTIC, channel, new MessageBuilder().append(message))));
+        return guard;
+    }
+
     @PostConstruct
     void started() {
         TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
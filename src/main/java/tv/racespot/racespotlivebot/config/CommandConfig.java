@@ -1,12 +1,28 @@
 package tv.racespot.racespotlivebot.config;
 
+import java.util.List;
+
 import org.javacord.api.DiscordApi;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import tv.racespot.racespotlivebot.data.*;
+import tv.racespot.racespotlivebot.service.AvailabilityPool;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.ScheduleIndex;
 import tv.racespot.racespotlivebot.service.commands.*;
+import tv.racespot.racespotlivebot.service.delivery.AnnouncementDispatcher;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.reminders.ReminderService;
+import tv.racespot.racespotlivebot.service.rest.ApiGuard;
+import tv.racespot.racespotlivebot.service.rest.QuotaAccountant;
 import tv.racespot.racespotlivebot.service.rest.SheetsManager;
+import tv.racespot.racespotlivebot.service.rest.YouTubeManager;
+import tv.racespot.racespotlivebot.service.tracing.TraceCollector;
+import tv.racespot.racespotlivebot.service.websub.WebSubSubscriber;
 
 @Configuration
 public class CommandConfig {
@@ -27,27 +43,44 @@ public class CommandConfig {
     private SeriesLogoRepository seriesLogoRepository;
 
     @Bean
-    public EventCommands eventCommands(DiscordApi api) {
-        return new EventCommands(api, eventRepository, serverRepository);
+    public CommandRunner commandRunner(WorkExecutor workExecutor, ErrorReporter errorReporter, LeaderElection leaderElection) {
+        return new CommandRunner(workExecutor, errorReporter, leaderElection);
+    }
+
+    @Bean
+    public EventCommands eventCommands(WorkExecutor workExecutor, CommandRunner commandRunner, ErrorReporter errorReporter, YouTubeManager youTubeManager, QuotaAccountant quotaAccountant, WebSubSubscriber webSubSubscriber, LeaderElection leaderElection, AnnouncementDispatcher announcementDispatcher) {
+        return new EventCommands(eventRepository, announcementDispatcher, workExecutor, commandRunner, errorReporter, youTubeManager, quotaAccountant, webSubSubscriber, leaderElection);
+    }
+
+    @Bean
+    public ScheduleCommands scheduleCommands(DiscordApi api, SheetsManager sheetsManager, ScheduleIndex scheduleIndex, ReminderService reminderService, AvailabilityPool availabilityPool, WorkExecutor workExecutor, CommandRunner commandRunner, OutboundMessageQueue outboundQueue, ErrorReporter errorReporter, LeaderElection leaderElection) {
+        ScheduleCommands scheduleCommands = new ScheduleCommands(api, sheetsManager, scheduledEventRepository, userMappingRepository, seriesLogoRepository, scheduleIndex, reminderService, availabilityPool, workExecutor, commandRunner, outboundQueue, errorReporter, leaderElection);
+        leaderElection.setLeadershipListener(scheduleCommands::reloadIndexes);
+        return scheduleCommands;
+    }
+
+    @Bean
+    public ListingPager listingPager(DiscordApi api, CommandRunner commandRunner, WorkExecutor workExecutor, OutboundMessageQueue outboundQueue, LeaderElection leaderElection) {
+        return new ListingPager(api, commandRunner, workExecutor, outboundQueue, leaderElection);
     }
 
     @Bean
-    public ScheduleCommands scheduleCommands(DiscordApi api, SheetsManager sheetsManager) {
-        return new ScheduleCommands(api, sheetsManager, scheduledEventRepository, userMappingRepository, seriesLogoRepository);
+    public SeriesLogoCommands seriesLogoCommands(CommandRunner commandRunner, ListingPager listingPager) {
+        return new SeriesLogoCommands(seriesLogoRepository, commandRunner, listingPager);
     }
 
     @Bean
-    public SeriesLogoCommands seriesLogoCommands() {
-        return new SeriesLogoCommands(seriesLogoRepository);
+    public ServerCommands serverCommands(ShardManager shardManager, CommandRunner commandRunner, ListingPager listingPager) {
+        return new ServerCommands(serverRepository, shardManager, commandRunner, listingPager);
     }
 
     @Bean
-    public ServerCommands serverCommands(DiscordApi api) {
-        return new ServerCommands(serverRepository, api);
+    public DiagnosticsCommands diagnosticsCommands(ShardManager shardManager, EventCommands eventCommands, SheetsManager sheetsManager, ScheduleIndex scheduleIndex, ReminderService reminderService, AvailabilityPool availabilityPool, WorkExecutor workExecutor, OutboundMessageQueue outboundQueue, CommandRunner commandRunner, QuotaAccountant quotaAccountant, List<ApiGuard> apiGuards, ErrorReporter errorReporter, TraceCollector traceCollector, LeaderElection leaderElection) {
+        return new DiagnosticsCommands(shardManager, eventCommands, sheetsManager, scheduleIndex, reminderService, availabilityPool, workExecutor, outboundQueue, commandRunner, quotaAccountant, apiGuards, errorReporter, traceCollector, leaderElection);
     }
 
     @Bean
-    public UserMappingCommands userMappingCommands() {
-        return new UserMappingCommands(userMappingRepository);
+    public UserMappingCommands userMappingCommands(ScheduleIndex scheduleIndex, CommandRunner commandRunner, ListingPager listingPager) {
+        return new UserMappingCommands(userMappingRepository, scheduleIndex, commandRunner, listingPager);
     }
 }
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.GenericGenerator;
+
+@Entity
+@Table(name = "announcement_delivery",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"eventId", "serverId"}),
+    indexes = @Index(columnList = "status, nextAttemptAt"))
+public class AnnouncementDelivery {
+
+    @Id
+    @GeneratedValue(generator = "system-uuid")
+    @GenericGenerator(name = "system-uuid", strategy = "uuid")
+    private String id;
+
+    private String eventId;
+    private String serverId;
+    private String channelId;
+
+    @Enumerated(EnumType.STRING)
+    private DeliveryStatus status;
+
+    private Long messageId;
+    private Integer attempts;
+    private Instant nextAttemptAt;
+    private Instant lastAttemptAt;
+    private String lastError;
+
+    private Instant createdAt;
+    private Instant sentAt;
+
+    public AnnouncementDelivery() {
+    }
+
+    public AnnouncementDelivery(final String eventId, final String serverId, final String channelId) {
+        this.eventId = eventId;
+        this.serverId = serverId;
+        this.channelId = channelId;
+        this.status = DeliveryStatus.PENDING;
+        this.attempts = 0;
+        this.createdAt = Instant.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(final String eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public void setServerId(final String serverId) {
+        this.serverId = serverId;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public void setChannelId(final String channelId) {
+        this.channelId = channelId;
+    }
+
+    public DeliveryStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(final DeliveryStatus status) {
+        this.status = status;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(final Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public int getAttempts() {
+        return attempts == null ? 0 : attempts;
+    }
+
+    public void setAttempts(final int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(final Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Instant getLastAttemptAt() {
+        return lastAttemptAt;
+    }
+
+    public void setLastAttemptAt(final Instant lastAttemptAt) {
+        this.lastAttemptAt = lastAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(final String lastError) {
+        this.lastError = lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(final Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(final Instant sentAt) {
+        this.sentAt = sentAt;
+    }
+}
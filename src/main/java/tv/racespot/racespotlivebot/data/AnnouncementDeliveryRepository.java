@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface AnnouncementDeliveryRepository extends JpaRepository<AnnouncementDelivery, String> {
+
+    boolean existsByEventIdAndServerId(String eventId, String serverId);
+
+    /**
+     * Due rows of every server, oldest first; which of them belong to this process's shards is
+     * worked out in Java.
+     */
+    @Query("select d from AnnouncementDelivery d where d.status in :statuses and d.messageId is null "
+        + "and d.nextAttemptAt <= :now order by d.nextAttemptAt, d.id")
+    List<AnnouncementDelivery> findDue(
+        @Param("statuses") Collection<DeliveryStatus> statuses,
+        @Param("now") Instant now,
+        Pageable pageable);
+
+    long countByStatus(DeliveryStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("delete from AnnouncementDelivery d where d.eventId in :eventIds")
+    int deleteByEventIdIn(@Param("eventIds") Collection<String> eventIds);
+}
@@ -6,11 +6,18 @@ package tv.racespot.racespotlivebot.data;
 
 import java.util.List;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface DServerRepository extends JpaRepository<DServer, String> {
 
     List<DServer> findBydServerId(String dServerId);
+
+    @Query(value = "select s.dName as name, s.dServerId as serverId from DServer s order by s.dName",
+        countQuery = "select count(s) from DServer s")
+    Page<ServerSummary> findServerSummaries(Pageable pageable);
 }
@@ -4,6 +4,8 @@
  */
 package tv.racespot.racespotlivebot.data;
 
+import java.time.Instant;
+
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -26,12 +28,24 @@ public class Event {
     @Enumerated(EnumType.STRING)
     private EventStatus status;
 
+    private Instant scheduledStartTime;
+    private Instant statusChangedAt;
+    // set when a WebSub push for the video reached a standby, for the leader to check it
+    private Instant pushedAt;
+
+    // captured when the stream goes live so announcements can be retried without YouTube
+    private String title;
+    private String channelTitle;
+    private String channelAvatarUrl;
+    private String imageUrl;
+
     public Event() {
     }
 
     public Event(String url) {
         this.youtubeLink = url;
         this.status = EventStatus.SCHEDULED;
+        this.statusChangedAt = Instant.now();
     }
 
     public String getId() {
@@ -56,5 +70,62 @@ public class Event {
 
     public void setStatus(final EventStatus status) {
         this.status = status;
+        this.statusChangedAt = Instant.now();
+    }
+
+    public Instant getScheduledStartTime() {
+        return scheduledStartTime;
+    }
+
+    public void setScheduledStartTime(final Instant scheduledStartTime) {
+        this.scheduledStartTime = scheduledStartTime;
+    }
+
+    public Instant getStatusChangedAt() {
+        return statusChangedAt;
+    }
+
+    public void setStatusChangedAt(final Instant statusChangedAt) {
+        this.statusChangedAt = statusChangedAt;
+    }
+
+    public Instant getPushedAt() {
+        return pushedAt;
+    }
+
+    public void setPushedAt(final Instant pushedAt) {
+        this.pushedAt = pushedAt;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(final String title) {
+        this.title = title;
+    }
+
+    public String getChannelTitle() {
+        return channelTitle;
+    }
+
+    public void setChannelTitle(final String channelTitle) {
+        this.channelTitle = channelTitle;
+    }
+
+    public String getChannelAvatarUrl() {
+        return channelAvatarUrl;
+    }
+
+    public void setChannelAvatarUrl(final String channelAvatarUrl) {
+        this.channelAvatarUrl = channelAvatarUrl;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(final String imageUrl) {
+        this.imageUrl = imageUrl;
     }
-}
\ No newline at end of file
+}
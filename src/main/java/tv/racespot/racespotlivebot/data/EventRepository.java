@@ -4,13 +4,65 @@
  */
 package tv.racespot.racespotlivebot.data;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface EventRepository extends JpaRepository<Event, String> {
 
     List<Event> findByStatus(EventStatus status);
-}
\ No newline at end of file
+
+    List<Event> findByYoutubeLinkAndStatus(String youtubeLink, EventStatus status);
+
+    List<Event> findByStatusAndPushedAtIsNotNull(EventStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.pushedAt = :now where e.youtubeLink = :youtubeLink and e.status = :status")
+    int markPushed(
+        @Param("youtubeLink") String youtubeLink,
+        @Param("status") EventStatus status,
+        @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.pushedAt = null where e.id in :ids")
+    int clearPushed(@Param("ids") Collection<String> ids);
+
+    @Query("select e.id from Event e where e.status in :statuses "
+        + "and e.statusChangedAt < :cutoff")
+    List<String> findIdsByStatusChangedBefore(
+        @Param("statuses") Collection<EventStatus> statuses,
+        @Param("cutoff") Instant cutoff,
+        Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Event e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<String> ids);
+
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.statusChangedAt = :now where e.statusChangedAt is null")
+    int backfillStatusChangedAt(@Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = :expired, e.statusChangedAt = :now "
+        + "where e.status = :scheduled and (e.scheduledStartTime < :cutoff "
+        + "or (e.scheduledStartTime is null and e.statusChangedAt < :cutoff))")
+    int expireScheduledBefore(
+        @Param("scheduled") EventStatus scheduled,
+        @Param("expired") EventStatus expired,
+        @Param("cutoff") Instant cutoff,
+        @Param("now") Instant now);
+}
@@ -7,5 +7,6 @@ package tv.racespot.racespotlivebot.data;
 public enum EventStatus {
 
     SCHEDULED,
-    LIVE
+    LIVE,
+    EXPIRED
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "leader_lease")
+public class LeaderLease {
+
+    @Id
+    private String name;
+
+    private String holderId;
+
+    private Instant expiresAt;
+
+    private Instant acquiredAt;
+
+    public LeaderLease() {
+    }
+
+    public LeaderLease(final String name, final String holderId, final Instant expiresAt, final Instant acquiredAt) {
+        this.name = name;
+        this.holderId = holderId;
+        this.expiresAt = expiresAt;
+        this.acquiredAt = acquiredAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public String getHolderId() {
+        return holderId;
+    }
+
+    public void setHolderId(final String holderId) {
+        this.holderId = holderId;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(final Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Instant getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public void setAcquiredAt(final Instant acquiredAt) {
+        this.acquiredAt = acquiredAt;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Plain JPQL and SQL so the election runs on any database the app is pointed at. Lease times are
+ * judged and set by the database clock, so replicas whose clocks disagree still agree on whether
+ * the lease has run out: expiry is compared with {@code CURRENT_TIMESTAMP}, and new expiry times
+ * are worked out from {@link #currentTimestamp()}.
+ */
+@Repository
+public interface LeaderLeaseRepository extends JpaRepository<LeaderLease, String> {
+
+    /**
+     * The database clock, as a timestamp without time zone so both Postgres and H2 hand back a
+     * {@link Timestamp}.
+     */
+    @Query(value = "select cast(current_timestamp as timestamp)", nativeQuery = true)
+    Timestamp currentTimestamp();
+
+    @Transactional
+    @Modifying
+    @Query("update LeaderLease l set l.expiresAt = :expiresAt "
+        + "where l.name = :name and l.holderId = :holder and l.expiresAt > CURRENT_TIMESTAMP")
+    int renew(
+        @Param("name") String name,
+        @Param("holder") String holder,
+        @Param("expiresAt") Instant expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("update LeaderLease l set l.holderId = :holder, l.expiresAt = :expiresAt, l.acquiredAt = CURRENT_TIMESTAMP "
+        + "where l.name = :name and l.expiresAt <= CURRENT_TIMESTAMP")
+    int takeOver(
+        @Param("name") String name,
+        @Param("holder") String holder,
+        @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Fails with a {@link org.springframework.dao.DataIntegrityViolationException} when another
+     * replica created the row first.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into leader_lease (name, holder_id, expires_at, acquired_at) "
+        + "values (:name, :holder, :expiresAt, current_timestamp)", nativeQuery = true)
+    int create(
+        @Param("name") String name,
+        @Param("holder") String holder,
+        @Param("expiresAt") Instant expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("update LeaderLease l set l.expiresAt = CURRENT_TIMESTAMP where l.name = :name and l.holderId = :holder")
+    int release(@Param("name") String name, @Param("holder") String holder);
+}
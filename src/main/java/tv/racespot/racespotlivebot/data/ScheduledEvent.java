@@ -4,15 +4,20 @@
  */
 package tv.racespot.racespotlivebot.data;
 
+import java.time.Instant;
+
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
 import org.hibernate.annotations.GenericGenerator;
 
 @Entity
-@Table(name = "scheduled_event")
+@Table(name = "scheduled_event", indexes = {
+    @Index(columnList = "startsAt"),
+    @Index(columnList = "sourceGid, index")})
 public class ScheduledEvent {
 
     @Id
@@ -24,6 +29,8 @@ public class ScheduledEvent {
 
     private String time;
 
+    private Instant startsAt;
+
     private boolean isPublic;
 
     private String seriesName;
@@ -42,19 +49,53 @@ public class ScheduledEvent {
 
     private Long dMessageId;
 
+    private Long dChannelId;
+
+    private String renderHash;
+
     private boolean isWebcam;
 
     private int index;
 
+    private Integer sourceGid;
+
     private String notes;
 
     private float red;
     private float green;
     private float blue;
 
+    private Instant createdAt;
+
     public ScheduledEvent() {
     }
 
+    public ScheduledEvent(final ScheduledEvent other) {
+        this.id = other.id;
+        this.date = other.date;
+        this.time = other.time;
+        this.startsAt = other.startsAt;
+        this.isPublic = other.isPublic;
+        this.seriesName = other.seriesName;
+        this.description = other.description;
+        this.producer = other.producer;
+        this.leadCommentator = other.leadCommentator;
+        this.colourOne = other.colourOne;
+        this.colourTwo = other.colourTwo;
+        this.streamLocation = other.streamLocation;
+        this.dMessageId = other.dMessageId;
+        this.dChannelId = other.dChannelId;
+        this.renderHash = other.renderHash;
+        this.isWebcam = other.isWebcam;
+        this.index = other.index;
+        this.sourceGid = other.sourceGid;
+        this.notes = other.notes;
+        this.red = other.red;
+        this.green = other.green;
+        this.blue = other.blue;
+        this.createdAt = other.createdAt;
+    }
+
     public String getDate() {
         return date;
     }
@@ -71,6 +112,18 @@ public class ScheduledEvent {
         this.time = time;
     }
 
+    /**
+     * Start of the event in UTC, parsed from the date and time cells when the sheet is read.
+     * Null when the cells could not be read.
+     */
+    public Instant getStartsAt() {
+        return startsAt;
+    }
+
+    public void setStartsAt(final Instant startsAt) {
+        this.startsAt = startsAt;
+    }
+
     public boolean isPublic() {
         return isPublic;
     }
@@ -151,6 +204,22 @@ public class ScheduledEvent {
         this.dMessageId = dMessageId;
     }
 
+    public Long getdChannelId() {
+        return dChannelId;
+    }
+
+    public void setdChannelId(final Long dChannelId) {
+        this.dChannelId = dChannelId;
+    }
+
+    public String getRenderHash() {
+        return renderHash;
+    }
+
+    public void setRenderHash(final String renderHash) {
+        this.renderHash = renderHash;
+    }
+
     public boolean isWebcam() {
         return isWebcam;
     }
@@ -167,6 +236,18 @@ public class ScheduledEvent {
         this.index = index;
     }
 
+    /**
+     * Sheet id (gid) of the tab the row was read from; together with the index it locates the
+     * row. Null for rows stored before multiple tabs were read.
+     */
+    public Integer getSourceGid() {
+        return sourceGid;
+    }
+
+    public void setSourceGid(final Integer sourceGid) {
+        this.sourceGid = sourceGid;
+    }
+
     public String getNotes() {
         return notes;
     }
@@ -198,4 +279,12 @@ public class ScheduledEvent {
     public void setBlue(final float blue) {
         this.blue = blue;
     }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(final Instant createdAt) {
+        this.createdAt = createdAt;
+    }
 }
\ No newline at end of file
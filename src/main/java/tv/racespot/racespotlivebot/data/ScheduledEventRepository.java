@@ -4,9 +4,55 @@
  */
 package tv.racespot.racespotlivebot.data;
 
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface ScheduledEventRepository extends JpaRepository<ScheduledEvent, String>  {
     ScheduledEvent findBydMessageId(long dMessageId);
     ScheduledEvent findByIndex(int index);
+    ScheduledEvent findBySourceGidAndIndex(Integer sourceGid, int index);
+    ScheduledEvent findFirstBySourceGidIsNullAndIndex(int index);
+
+    @Query("select e from ScheduledEvent e where e.startsAt >= :from and e.startsAt < :to order by e.startsAt")
+    List<ScheduledEvent> findStartingBetween(@Param("from") Instant from, @Param("to") Instant to);
+
+    default List<ScheduledEvent> findStartingWithin(final Duration window) {
+        Instant now = Instant.now();
+        return findStartingBetween(now, now.plus(window));
+    }
+
+    /**
+     * Events starting in the current Monday-to-Sunday week, UTC.
+     */
+    default List<ScheduledEvent> findThisWeek() {
+        Instant weekStart = LocalDate.now(ZoneOffset.UTC)
+            .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+            .atStartOfDay(ZoneOffset.UTC)
+            .toInstant();
+        return findStartingBetween(weekStart, weekStart.plus(Duration.ofDays(7)));
+    }
+
+    @Transactional
+    @Modifying
+    @Query("update ScheduledEvent e set e.createdAt = :now where e.createdAt is null")
+    int backfillCreatedAt(@Param("now") Instant now);
+
+    /**
+     * Rows without a readable start fall back to when they were posted.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from ScheduledEvent e where e.startsAt < :cutoff or (e.startsAt is null and e.createdAt < :cutoff)")
+    int deleteStartedBefore(@Param("cutoff") Instant cutoff);
 }
@@ -4,9 +4,16 @@
  */
 package tv.racespot.racespotlivebot.data;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface SeriesLogoRepository extends JpaRepository<SeriesLogo, String> {
 
     SeriesLogo findBySeriesNameIgnoreCase(String seriesName);
+
+    @Query(value = "select s.seriesName as seriesName, s.thumbnailUrl as thumbnailUrl from SeriesLogo s order by s.seriesName",
+        countQuery = "select count(s) from SeriesLogo s")
+    Page<SeriesSummary> findSeriesSummaries(Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+public interface ServerSummary {
+
+    String getName();
+
+    String getServerId();
+}
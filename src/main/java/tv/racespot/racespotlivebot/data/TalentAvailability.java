@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+@Entity
+@Table(name = "talent_availability", indexes = {
+    @Index(columnList = "availableOn"),
+    @Index(columnList = "dUserId, availableOn")})
+public class TalentAvailability {
+
+    @Id
+    @GeneratedValue(generator="system-uuid")
+    @GenericGenerator(name="system-uuid", strategy = "uuid")
+    private String id;
+
+    private long dUserId;
+
+    private String talentName;
+
+    private LocalDate availableOn;
+
+    private String eventId;
+
+    private Instant createdAt;
+
+    public TalentAvailability() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    public long getdUserId() {
+        return dUserId;
+    }
+
+    public void setdUserId(final long dUserId) {
+        this.dUserId = dUserId;
+    }
+
+    public String getTalentName() {
+        return talentName;
+    }
+
+    public void setTalentName(final String talentName) {
+        this.talentName = talentName;
+    }
+
+    public LocalDate getAvailableOn() {
+        return availableOn;
+    }
+
+    public void setAvailableOn(final LocalDate availableOn) {
+        this.availableOn = availableOn;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(final String eventId) {
+        this.eventId = eventId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(final Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
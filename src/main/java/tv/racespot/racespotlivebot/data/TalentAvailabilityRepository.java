@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface TalentAvailabilityRepository extends JpaRepository<TalentAvailability, String> {
+
+    TalentAvailability findBydUserIdAndAvailableOn(long dUserId, LocalDate availableOn);
+
+    List<TalentAvailability> findByAvailableOnGreaterThanEqual(LocalDate availableOn);
+
+    @Transactional
+    @Modifying
+    @Query("delete from TalentAvailability a where a.availableOn < :cutoff")
+    int deleteAvailableBefore(@Param("cutoff") LocalDate cutoff);
+}
@@ -24,6 +24,8 @@ public class UserMapping {
 
     private long dUserId;
 
+    private Boolean dmOptIn;
+
     public UserMapping() {
     }
 
@@ -50,4 +52,12 @@ public class UserMapping {
     public void setdUserId(final long dUserId) {
         this.dUserId = dUserId;
     }
+
+    public boolean isDmOptIn() {
+        return Boolean.TRUE.equals(dmOptIn);
+    }
+
+    public void setDmOptIn(final boolean dmOptIn) {
+        this.dmOptIn = dmOptIn;
+    }
 }
\ No newline at end of file
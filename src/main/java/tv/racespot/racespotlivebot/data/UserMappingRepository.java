@@ -7,7 +7,10 @@ package tv.racespot.racespotlivebot.data;
 import java.util.HashSet;
 import java.util.List;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface UserMappingRepository extends JpaRepository<UserMapping, String> {
 
@@ -16,4 +19,8 @@ public interface UserMappingRepository extends JpaRepository<UserMapping, String
     UserMapping findByTalentNameIgnoreCase(String talentName);
 
     List<UserMapping> findByTalentNameIn(HashSet<String> talentNames);
+
+    @Query(value = "select u.talentName as talentName, u.dUserId as userId from UserMapping u order by u.talentName",
+        countQuery = "select count(u) from UserMapping u")
+    Page<TalentSummary> findTalentSummaries(Pageable pageable);
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+@Entity
+@Table(name = "youtube_channel")
+public class YoutubeChannel {
+
+    @Id
+    @GeneratedValue(generator="system-uuid")
+    @GenericGenerator(name="system-uuid", strategy = "uuid")
+    private String id;
+
+    private String channelId;
+
+    private Instant leaseExpiresAt;
+
+    private Instant lastNotificationAt;
+
+    public YoutubeChannel() {
+    }
+
+    public YoutubeChannel(final String channelId) {
+        this.channelId = channelId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public void setChannelId(final String channelId) {
+        this.channelId = channelId;
+    }
+
+    public Instant getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(final Instant leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public Instant getLastNotificationAt() {
+        return lastNotificationAt;
+    }
+
+    public void setLastNotificationAt(final Instant lastNotificationAt) {
+        this.lastNotificationAt = lastNotificationAt;
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.data;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface YoutubeChannelRepository extends JpaRepository<YoutubeChannel, String> {
+
+    YoutubeChannel findByChannelId(String channelId);
+
+    @Query("select c from YoutubeChannel c where c.leaseExpiresAt is null or c.leaseExpiresAt < :renewBefore")
+    List<YoutubeChannel> findLeasesExpiringBefore(@Param("renewBefore") Instant renewBefore);
+}
@@ -0,0 +1,212 @@
+package tv.racespot.racespotlivebot.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tv.racespot.racespotlivebot.data.ScheduledEvent;
+import tv.racespot.racespotlivebot.data.TalentAvailability;
+import tv.racespot.racespotlivebot.data.TalentAvailabilityRepository;
+import tv.racespot.racespotlivebot.data.UserMapping;
+import tv.racespot.racespotlivebot.util.ScheduleTimes;
+
+/**
+ * Talent who said they are free, by date. A free reaction on a schedule post counts for the
+ * whole day of that event. Stored so it survives restarts, and mirrored in a date-keyed map so
+ * matching a week of open roles is one lookup per event. Suggestions already handed out are
+ * remembered in memory and not repeated until the pool is cleared or the bot restarts.
+ */
+public class AvailabilityPool {
+
+    private final TalentAvailabilityRepository availabilityRepository;
+
+    private final Map<LocalDate, Map<Long, String>> talentByDate = new ConcurrentHashMap<>();
+    private final Set<String> suggested = ConcurrentHashMap.newKeySet();
+
+    private final Logger logger;
+
+    public AvailabilityPool(final TalentAvailabilityRepository availabilityRepository) {
+        this.availabilityRepository = availabilityRepository;
+
+        this.logger = LoggerFactory.getLogger(AvailabilityPool.class);
+    }
+
+    public synchronized void rebuild() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        int pruned = availabilityRepository.deleteAvailableBefore(today);
+        talentByDate.clear();
+        List<TalentAvailability> availability = availabilityRepository.findByAvailableOnGreaterThanEqual(today);
+        for (TalentAvailability entry : availability) {
+            put(entry);
+        }
+        logger.info("Loaded {} talent availabilities, pruned {} past ones", availability.size(), pruned);
+    }
+
+    /**
+     * Records the talent as free on the day of {@code event}. Returns false when the event has
+     * no readable date or the talent was already in the pool for that day.
+     */
+    public synchronized boolean markFree(final UserMapping mapping, final ScheduledEvent event) {
+        Optional<LocalDate> day = getDay(event);
+        if (!day.isPresent()) {
+            logger.info("Ignored free reaction from {}, '{}' is not a readable date",
+                    mapping.getTalentName(), event.getDate());
+            return false;
+        }
+        if (talentByDate.getOrDefault(day.get(), Collections.emptyMap()).containsKey(mapping.getdUserId())) {
+            return false;
+        }
+        TalentAvailability availability = new TalentAvailability();
+        availability.setdUserId(mapping.getdUserId());
+        availability.setTalentName(mapping.getTalentName());
+        availability.setAvailableOn(day.get());
+        availability.setEventId(event.getId());
+        availability.setCreatedAt(Instant.now());
+        put(availabilityRepository.save(availability));
+        logger.info("{} is free on {}", mapping.getTalentName(), day.get());
+        return true;
+    }
+
+    public synchronized void clear() {
+        availabilityRepository.deleteAllInBatch();
+        talentByDate.clear();
+        suggested.clear();
+    }
+
+    /**
+     * Free talent for every open (empty or TBD) role of {@code events}, leaving out talent already
+     * on that event or on another of {@code events} starting at the same time. Only suggestions
+     * not made before are returned.
+     */
+    public List<Suggestion> suggest(final Collection<ScheduledEvent> events) {
+        Map<Instant, Set<String>> bookedByStart = new HashMap<>();
+        for (ScheduledEvent event : events) {
+            if (event.getStartsAt() == null) {
+                continue;
+            }
+            Set<String> booked = bookedByStart.computeIfAbsent(event.getStartsAt(), key -> new HashSet<>());
+            for (String talent : new String[] {event.getProducer(), event.getLeadCommentator(),
+                    event.getColourOne(), event.getColourTwo()}) {
+                if (!isOpen(talent)) {
+                    booked.add(normalize(talent));
+                }
+            }
+        }
+
+        List<Suggestion> suggestions = new ArrayList<>();
+        for (ScheduledEvent event : events) {
+            Optional<LocalDate> day = getDay(event);
+            if (!day.isPresent()) {
+                continue;
+            }
+            Map<Long, String> free = talentByDate.get(day.get());
+            if (free == null || free.isEmpty()) {
+                continue;
+            }
+            Set<String> booked = event.getStartsAt() != null
+                    ? bookedByStart.get(event.getStartsAt())
+                    : Collections.emptySet();
+            suggest(suggestions, event, free, booked, "producer", "Producer", event.getProducer());
+            suggest(suggestions, event, free, booked, "lead", "Lead Commentator", event.getLeadCommentator());
+            suggest(suggestions, event, free, booked, "colour1", "Color Commentator", event.getColourOne());
+            suggest(suggestions, event, free, booked, "colour2", "Color Commentator", event.getColourTwo());
+        }
+        return suggestions;
+    }
+
+    public int size() {
+        return talentByDate.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void suggest(
+            final List<Suggestion> suggestions,
+            final ScheduledEvent event,
+            final Map<Long, String> free,
+            final Set<String> booked,
+            final String roleKey,
+            final String role,
+            final String assigned) {
+        if (!isOpen(assigned)) {
+            return;
+        }
+        List<String> talent = new ArrayList<>();
+        for (Map.Entry<Long, String> candidate : free.entrySet()) {
+            // covers this event too, its assigned talent is booked at its own start
+            if (booked.contains(normalize(candidate.getValue())) || isOnEvent(event, candidate.getValue())) {
+                continue;
+            }
+            if (suggested.add(event.getId() + ":" + roleKey + ":" + candidate.getKey())) {
+                talent.add(candidate.getValue());
+            }
+        }
+        if (!talent.isEmpty()) {
+            Collections.sort(talent);
+            suggestions.add(new Suggestion(event, role, talent));
+        }
+    }
+
+    private void put(final TalentAvailability availability) {
+        talentByDate.computeIfAbsent(availability.getAvailableOn(), key -> new ConcurrentHashMap<>())
+                .put(availability.getdUserId(), availability.getTalentName());
+    }
+
+    private static boolean isOnEvent(final ScheduledEvent event, final String talentName) {
+        return talentName.equalsIgnoreCase(StringUtils.trim(event.getProducer()))
+                || talentName.equalsIgnoreCase(StringUtils.trim(event.getLeadCommentator()))
+                || talentName.equalsIgnoreCase(StringUtils.trim(event.getColourOne()))
+                || talentName.equalsIgnoreCase(StringUtils.trim(event.getColourTwo()));
+    }
+
+    private static String normalize(final String talentName) {
+        return StringUtils.normalizeSpace(talentName).toLowerCase();
+    }
+
+    private static boolean isOpen(final String assigned) {
+        return StringUtils.isBlank(assigned) || "tbd".equalsIgnoreCase(assigned.trim());
+    }
+
+    private static Optional<LocalDate> getDay(final ScheduledEvent event) {
+        if (event.getStartsAt() != null) {
+            return Optional.of(event.getStartsAt().atOffset(ZoneOffset.UTC).toLocalDate());
+        }
+        return ScheduleTimes.parseDate(event.getDate(), Instant.now());
+    }
+
+    public static class Suggestion {
+
+        private final ScheduledEvent event;
+        private final String role;
+        private final List<String> talent;
+
+        public Suggestion(final ScheduledEvent event, final String role, final List<String> talent) {
+            this.event = event;
+            this.role = role;
+            this.talent = talent;
+        }
+
+        public ScheduledEvent getEvent() {
+            return event;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public List<String> getTalent() {
+            return talent;
+        }
+    }
+}
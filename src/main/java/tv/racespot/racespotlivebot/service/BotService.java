@@ -18,6 +18,7 @@ public class BotService {
     private final SeriesLogoCommands seriesLogoCommands;
     private final ServerCommands serverCommands;
     private final UserMappingCommands userMappingCommands;
+    private final DiagnosticsCommands diagnosticsCommands;
 
     public BotService(
             final DiscordApi api,
@@ -25,13 +26,15 @@ public class BotService {
             final ScheduleCommands scheduleCommands,
             final SeriesLogoCommands seriesLogoCommands,
             final ServerCommands serverCommands,
-            final UserMappingCommands userMappingCommands) {
+            final UserMappingCommands userMappingCommands,
+            final DiagnosticsCommands diagnosticsCommands) {
         this.api = api;
         this.eventCommands = eventCommands;
         this.scheduleCommands = scheduleCommands;
         this.seriesLogoCommands = seriesLogoCommands;
         this.serverCommands = serverCommands;
         this.userMappingCommands = userMappingCommands;
+        this.diagnosticsCommands = diagnosticsCommands;
     }
 
     public Boolean startBot() {
@@ -43,6 +46,8 @@ public class BotService {
         CommandHandler.registerCommand(scheduleCommands.postSchedule());
         CommandHandler.registerCommand(scheduleCommands.updateSchedule());
         CommandHandler.registerCommand(scheduleCommands.clearSchedule());
+        CommandHandler.registerCommand(scheduleCommands.mySchedule());
+        CommandHandler.registerCommand(scheduleCommands.findEvent());
         CommandHandler.registerCommand(seriesLogoCommands.addSeries());
         CommandHandler.registerCommand(seriesLogoCommands.listSeries());
         CommandHandler.registerCommand(seriesLogoCommands.removeSeries());
@@ -51,6 +56,8 @@ public class BotService {
         CommandHandler.registerCommand(userMappingCommands.addTalent());
         CommandHandler.registerCommand(userMappingCommands.listTalent());
         CommandHandler.registerCommand(userMappingCommands.removeTalent());
+        CommandHandler.registerCommand(userMappingCommands.talentDirectMessages());
+        CommandHandler.registerCommand(diagnosticsCommands.botStats());
 
 
         api.addReconnectListener(event -> event.getApi().updateActivity(ActivityType.WATCHING, "Getting ready for live coverage!"));
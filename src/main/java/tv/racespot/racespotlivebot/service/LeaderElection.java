@@ -0,0 +1,266 @@
+package tv.racespot.racespotlivebot.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import tv.racespot.racespotlivebot.data.LeaderLease;
+import tv.racespot.racespotlivebot.data.LeaderLeaseRepository;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+/**
+ * Lease row based leader election so a hot standby can run next to the active bot. The leader
+ * extends the lease on every heartbeat; when it stops, another replica takes the row over once
+ * the lease runs out. Jobs that are not tied to one guild check {@link #isLeader()} first.
+ * <p>
+ * Every local shard has a lease of its own as well, since with shard ranges the leader cannot
+ * reach guilds on another process's shards. Whatever answers or posts to one guild (commands,
+ * reactions, live announcements) checks {@link #isLeaderForServer(long)} instead, so each guild
+ * is served by exactly one of the processes that run its shard. With a single shard every
+ * process runs it, so the global lease covers it too and guild work stays on the replica that
+ * also fires reminders. The heartbeat has a thread of its own so it never waits behind the other
+ * scheduled jobs.
+ */
+public class LeaderElection {
+
+    private static final String LEASE_NAME = "racespot-live-bot";
+
+    @Value("${leader.lease_seconds:10}")
+    private long leaseSeconds;
+    @Value("${leader.heartbeat_millis:2000}")
+    private long heartbeatMillis;
+
+    private final LeaderLeaseRepository leaseRepository;
+    private final ShardManager shardManager;
+    private final String holderId;
+
+    private final Logger logger;
+
+    private volatile boolean leader;
+    private volatile long leaderUntilNanos;
+    private volatile Instant leaderSince;
+    private volatile String lastKnownHolder;
+    private final Map<Integer, Long> shardLeaseUntilNanos = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService heartbeatExecutor;
+    private volatile Runnable leadershipListener = () -> { };
+
+    public LeaderElection(final LeaderLeaseRepository leaseRepository, final ShardManager shardManager) {
+        this.leaseRepository = leaseRepository;
+        this.shardManager = shardManager;
+        this.holderId = getHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+        this.logger = LoggerFactory.getLogger(LeaderElection.class);
+    }
+
+    /**
+     * True while this replica holds a lease that cannot have expired yet. The local deadline
+     * stops one heartbeat short of the lease so a stalled leader steps down before anyone else
+     * can take over.
+     */
+    public boolean isLeader() {
+        return leader && System.nanoTime() < leaderUntilNanos;
+    }
+
+    /**
+     * True while this process holds the lease of the shard {@code serverId} is on.
+     */
+    public boolean isLeaderForServer(final long serverId) {
+        if (!isSharded()) {
+            return isLeader();
+        }
+        Long until = shardLeaseUntilNanos.get(shardManager.getShardId(serverId));
+        return until != null && System.nanoTime() < until;
+    }
+
+    /**
+     * For guild scoped work that may come without a guild (e.g. in a DM), which the global
+     * leader handles.
+     */
+    public boolean isLeaderForServer(final Optional<Long> serverId) {
+        return serverId.isPresent() ? isLeaderForServer(serverId.get()) : isLeader();
+    }
+
+    /**
+     * The local shards whose lease this process holds.
+     */
+    public List<Integer> getLedShards() {
+        if (!isSharded()) {
+            return isLeader() ? new ArrayList<>(shardManager.getLocalShardIds()) : new ArrayList<>();
+        }
+        long now = System.nanoTime();
+        List<Integer> led = new ArrayList<>();
+        shardLeaseUntilNanos.forEach((shardId, until) -> {
+            if (now < until) {
+                led.add(shardId);
+            }
+        });
+        return led;
+    }
+
+    public String getHolderId() {
+        return holderId;
+    }
+
+    public Instant getLeaderSince() {
+        return isLeader() ? leaderSince : null;
+    }
+
+    public String getLastKnownHolder() {
+        return lastKnownHolder;
+    }
+
+    /**
+     * Called from the heartbeat whenever this process gains the global lease or a shard lease,
+     * since in-memory state built while another replica led may be stale.
+     */
+    public void setLeadershipListener(final Runnable leadershipListener) {
+        this.leadershipListener = leadershipListener;
+    }
+
+    public void start() {
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leader-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat();
+            } catch (RuntimeException ex) {
+                // an exception escaping here would cancel every later heartbeat
+                logger.error("Leader heartbeat failed", ex);
+            }
+        }, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void heartbeat() {
+        try (LogContext ignored = LogContext.begin("leader.heartbeat")) {
+            long attemptNanos = System.nanoTime();
+            boolean held;
+            try {
+                held = holdLease(LEASE_NAME);
+                lastKnownHolder = held
+                    ? holderId
+                    : leaseRepository.findById(LEASE_NAME).map(LeaderLease::getHolderId).orElse(null);
+            } catch (DataAccessException ex) {
+                // keep the local deadline; without a renewal it runs out and we step down
+                logger.warn("Leader heartbeat failed: {}", ex.getMessage());
+                return;
+            }
+
+            if (held) {
+                leaderUntilNanos = getLocalDeadline(attemptNanos);
+                if (!leader) {
+                    leaderSince = Instant.now();
+                    leader = true;
+                    logger.info("{} is now the leader", holderId);
+                    leadershipListener.run();
+                }
+            } else {
+                if (leader) {
+                    logger.warn("{} lost leadership", holderId);
+                }
+                leader = false;
+            }
+            if (isSharded()) {
+                for (Integer shardId : shardManager.getLocalShardIds()) {
+                    heartbeatShard(shardId, attemptNanos);
+                }
+            }
+        }
+    }
+
+    private void heartbeatShard(final int shardId, final long attemptNanos) {
+        boolean held;
+        try {
+            held = holdLease(getShardLeaseName(shardId));
+        } catch (DataAccessException ex) {
+            logger.warn("Heartbeat for shard {} failed: {}", shardId, ex.getMessage());
+            return;
+        }
+        if (held) {
+            Long previous = shardLeaseUntilNanos.put(shardId, getLocalDeadline(attemptNanos));
+            if (previous == null) {
+                logger.info("{} now serves shard {}", holderId, shardId);
+                leadershipListener.run();
+            }
+        } else if (shardLeaseUntilNanos.remove(shardId) != null) {
+            logger.warn("{} lost shard {}", holderId, shardId);
+        }
+    }
+
+    private boolean holdLease(final String name) {
+        // read before the update, so the lease ends a little early rather than late
+        Instant expiresAt = leaseRepository.currentTimestamp().toInstant().plusSeconds(leaseSeconds);
+        if (leaseRepository.renew(name, holderId, expiresAt) == 1
+            || leaseRepository.takeOver(name, holderId, expiresAt) == 1) {
+            return true;
+        }
+        try {
+            return leaseRepository.create(name, holderId, expiresAt) == 1;
+        } catch (DataIntegrityViolationException ex) {
+            // another replica created the row in the meantime
+            return false;
+        }
+    }
+
+    private long getLocalDeadline(final long attemptNanos) {
+        return attemptNanos + TimeUnit.SECONDS.toNanos(leaseSeconds) - TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+    }
+
+    private boolean isSharded() {
+        return shardManager.getTotalShards() > 1;
+    }
+
+    private static String getShardLeaseName(final int shardId) {
+        return LEASE_NAME + "/shard-" + shardId;
+    }
+
+    public void release() {
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdownNow();
+        }
+        for (Integer shardId : shardLeaseUntilNanos.keySet()) {
+            shardLeaseUntilNanos.remove(shardId);
+            try {
+                leaseRepository.release(getShardLeaseName(shardId), holderId);
+            } catch (DataAccessException ex) {
+                logger.warn("Unable to release lease of shard {}: {}", shardId, ex.getMessage());
+            }
+        }
+        if (!leader) {
+            return;
+        }
+        leader = false;
+        try {
+            leaseRepository.release(LEASE_NAME, holderId);
+            logger.info("{} released leadership", holderId);
+        } catch (DataAccessException ex) {
+            logger.warn("Unable to release leader lease: {}", ex.getMessage());
+        }
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return "unknown-host";
+        }
+    }
+}
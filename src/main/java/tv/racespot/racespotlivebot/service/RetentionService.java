@@ -0,0 +1,194 @@
+package tv.racespot.racespotlivebot.service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.data.EventRepository;
+import tv.racespot.racespotlivebot.data.EventStatus;
+import tv.racespot.racespotlivebot.data.ScheduledEventRepository;
+import tv.racespot.racespotlivebot.service.delivery.AnnouncementDispatcher;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.Workload;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+public class RetentionService {
+
+    private static final List<EventStatus> FINISHED_STATUSES = Arrays.asList(EventStatus.LIVE, EventStatus.EXPIRED);
+
+    @Value("${retention.finished_event_max_age_hours:48}")
+    private long finishedEventMaxAgeHours;
+    @Value("${retention.scheduled_event_grace_days:3}")
+    private long scheduledEventGraceDays;
+    @Value("${retention.schedule_weeks_to_keep:1}")
+    private long scheduleWeeksToKeep;
+    @Value("${retention.delete_batch_size:500}")
+    private int deleteBatchSize;
+
+    private final EventRepository eventRepository;
+    private final ScheduledEventRepository scheduledEventRepository;
+    private final AnnouncementDispatcher announcementDispatcher;
+    private final ScheduleIndex scheduleIndex;
+    private final WorkExecutor workExecutor;
+    private final LeaderElection leaderElection;
+
+    private final Logger logger;
+
+    private volatile RetentionReport lastReport;
+
+    public RetentionService(
+            final EventRepository eventRepository,
+            final ScheduledEventRepository scheduledEventRepository,
+            final AnnouncementDispatcher announcementDispatcher,
+            final ScheduleIndex scheduleIndex,
+            final WorkExecutor workExecutor,
+            final LeaderElection leaderElection) {
+        this.eventRepository = eventRepository;
+        this.scheduledEventRepository = scheduledEventRepository;
+        this.announcementDispatcher = announcementDispatcher;
+        this.scheduleIndex = scheduleIndex;
+        this.workExecutor = workExecutor;
+        this.leaderElection = leaderElection;
+
+        this.logger = LoggerFactory.getLogger(RetentionService.class);
+    }
+
+    /**
+     * Events stored before statusChangedAt existed have no value for it. They are dated from
+     * now, so their age counts from the first start with retention rather than reading as
+     * infinitely old (and being deleted on the first run) or never matching at all. Schedule
+     * rows posted before createdAt existed get the same treatment, as rows without a readable
+     * start are pruned by it.
+     */
+    @PostConstruct
+    void backfillTimestamps() {
+        Instant now = Instant.now();
+        int backfilled = eventRepository.backfillStatusChangedAt(now);
+        if (backfilled > 0) {
+            logger.info("Dated {} events without a status change time from now", backfilled);
+        }
+        int backfilledRows = scheduledEventRepository.backfillCreatedAt(now);
+        if (backfilledRows > 0) {
+            logger.info("Dated {} schedule rows without a creation time from now", backfilledRows);
+        }
+    }
+
+    @Scheduled(cron = "${retention.cron:0 15 4 * * *}", zone = "UTC")
+    public void runRetention() {
+        try (LogContext ignored = LogContext.begin("retention")) {
+            if (!leaderElection.isLeader()) {
+                return;
+            }
+            workExecutor.execute(Workload.SCHEDULED, this::applyRetention)
+                    .exceptionally(ex -> {
+                        logger.error("Retention run failed: {}", ex.getMessage());
+                        return null;
+                    });
+        }
+    }
+
+    private void applyRetention() {
+        long start = System.currentTimeMillis();
+        Instant now = Instant.now();
+
+        int expired = eventRepository.expireScheduledBefore(
+                EventStatus.SCHEDULED,
+                EventStatus.EXPIRED,
+                now.minus(Duration.ofDays(scheduledEventGraceDays)),
+                now);
+        int deletedEvents = deleteFinishedEvents(now.minus(Duration.ofHours(finishedEventMaxAgeHours)));
+        int prunedSchedule = scheduledEventRepository.deleteStartedBefore(getScheduleCutoff(now));
+        if (prunedSchedule > 0) {
+            scheduleIndex.rebuild();
+        }
+
+        RetentionReport report = new RetentionReport(
+                now, expired, deletedEvents, prunedSchedule, System.currentTimeMillis() - start);
+        lastReport = report;
+        logger.info(
+                "Retention finished in {} ms: {} scheduled events expired, {} finished events deleted, {} schedule rows pruned",
+                report.getDurationMillis(), expired, deletedEvents, prunedSchedule);
+    }
+
+    public RetentionReport getLastReport() {
+        return lastReport;
+    }
+
+    private int deleteFinishedEvents(final Instant cutoff) {
+        int deleted = 0;
+        List<String> ids;
+        do {
+            ids = eventRepository.findIdsByStatusChangedBefore(
+                    FINISHED_STATUSES, cutoff, PageRequest.of(0, deleteBatchSize));
+            if (!ids.isEmpty()) {
+                deleted += announcementDispatcher.deleteEvents(ids);
+            }
+        } while (ids.size() == deleteBatchSize);
+        return deleted;
+    }
+
+    private Instant getScheduleCutoff(final Instant now) {
+        LocalDate weekStart = LocalDate.ofInstant(now, ZoneOffset.UTC)
+                .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                .minusWeeks(Math.max(0, scheduleWeeksToKeep - 1));
+        return weekStart.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public static class RetentionReport {
+
+        private final Instant ranAt;
+        private final int expiredEvents;
+        private final int deletedEvents;
+        private final int prunedScheduleRows;
+        private final long durationMillis;
+
+        public RetentionReport(
+                final Instant ranAt,
+                final int expiredEvents,
+                final int deletedEvents,
+                final int prunedScheduleRows,
+                final long durationMillis) {
+            this.ranAt = ranAt;
+            this.expiredEvents = expiredEvents;
+            this.deletedEvents = deletedEvents;
+            this.prunedScheduleRows = prunedScheduleRows;
+            this.durationMillis = durationMillis;
+        }
+
+        public Instant getRanAt() {
+            return ranAt;
+        }
+
+        public int getExpiredEvents() {
+            return expiredEvents;
+        }
+
+        public int getDeletedEvents() {
+            return deletedEvents;
+        }
+
+        public int getPrunedScheduleRows() {
+            return prunedScheduleRows;
+        }
+
+        public int getRemovedRows() {
+            return deletedEvents + prunedScheduleRows;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package tv.racespot.racespotlivebot.service;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tv.racespot.racespotlivebot.data.ScheduledEvent;
+import tv.racespot.racespotlivebot.data.ScheduledEventRepository;
+import tv.racespot.racespotlivebot.data.UserMapping;
+import tv.racespot.racespotlivebot.data.UserMappingRepository;
+import tv.racespot.racespotlivebot.util.ScheduleTimes;
+
+/**
+ * In-memory inverted indexes over the stored schedule: talent name to the events (and roles)
+ * they are on, series words to events, and each event's start date (UTC) to events. Rows
+ * without a readable start are indexed by the words of their date cell instead. Loaded from the
+ * database once at startup and then kept current by the commands that write schedule rows and
+ * talent mappings, so queries never touch the database.
+ */
+public class ScheduleIndex {
+
+    private static final int MAX_DATE_WORDS = 3;
+
+    private static final Comparator<ScheduledEvent> BY_SHEET_ORDER = Comparator
+            .comparing(ScheduledEvent::getSourceGid, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingInt(ScheduledEvent::getIndex);
+
+    private final ScheduledEventRepository scheduledEventRepository;
+    private final UserMappingRepository userMappingRepository;
+
+    private final Map<String, ScheduledEvent> eventsById = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> rolesByTalent = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> eventsBySeriesTerm = new ConcurrentHashMap<>();
+    private final Map<LocalDate, Set<String>> eventsByDate = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> undatedByDateWord = new ConcurrentHashMap<>();
+    private final Map<Long, String> talentByUser = new ConcurrentHashMap<>();
+    private final Map<String, Long> userByTalent = new ConcurrentHashMap<>();
+
+    private final Logger logger;
+
+    public ScheduleIndex(
+            final ScheduledEventRepository scheduledEventRepository,
+            final UserMappingRepository userMappingRepository) {
+        this.scheduledEventRepository = scheduledEventRepository;
+        this.userMappingRepository = userMappingRepository;
+
+        this.logger = LoggerFactory.getLogger(ScheduleIndex.class);
+    }
+
+    /**
+     * A query-only index over rows that are not stored, e.g. read straight from the sheet. Rows
+     * are keyed by tab and position as they have no id yet.
+     */
+    public static ScheduleIndex over(final List<ScheduledEvent> rows) {
+        ScheduleIndex index = new ScheduleIndex(null, null);
+        for (ScheduledEvent row : rows) {
+            ScheduledEvent keyed = new ScheduledEvent(row);
+            keyed.setId(String.format("%s:%d", row.getSourceGid(), row.getIndex()));
+            index.put(keyed);
+        }
+        return index;
+    }
+
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        clear();
+        talentByUser.clear();
+        userByTalent.clear();
+        List<ScheduledEvent> events = scheduledEventRepository.findAll();
+        for (ScheduledEvent event : events) {
+            put(event);
+        }
+        List<UserMapping> mappings = userMappingRepository.findAll();
+        for (UserMapping mapping : mappings) {
+            putMapping(mapping);
+        }
+        logger.info("Indexed {} schedule rows and {} talent in {} ms",
+                events.size(), mappings.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Indexes a saved schedule row, replacing whatever was indexed for the same id.
+     */
+    public synchronized void put(final ScheduledEvent event) {
+        if (event.getId() == null) {
+            return;
+        }
+        remove(event.getId());
+        ScheduledEvent copy = new ScheduledEvent(event);
+        eventsById.put(copy.getId(), copy);
+
+        addRole(copy, copy.getProducer(), "Producer");
+        addRole(copy, copy.getLeadCommentator(), "Lead Commentator");
+        addRole(copy, copy.getColourOne(), "Color Commentator");
+        addRole(copy, copy.getColourTwo(), "Color Commentator");
+        for (String term : getTerms(copy.getSeriesName())) {
+            addPosting(eventsBySeriesTerm, term, copy.getId());
+        }
+        if (copy.getStartsAt() != null) {
+            addPosting(eventsByDate, getDate(copy.getStartsAt()), copy.getId());
+        } else {
+            for (String term : getTerms(copy.getDate())) {
+                addPosting(undatedByDateWord, term, copy.getId());
+            }
+        }
+    }
+
+    public synchronized void remove(final String eventId) {
+        ScheduledEvent previous = eventsById.remove(eventId);
+        if (previous == null) {
+            return;
+        }
+        for (String talent : new String[] {previous.getProducer(), previous.getLeadCommentator(),
+                previous.getColourOne(), previous.getColourTwo()}) {
+            if (StringUtils.isBlank(talent)) {
+                continue;
+            }
+            rolesByTalent.computeIfPresent(normalize(talent), (key, roles) -> {
+                roles.remove(eventId);
+                return roles.isEmpty() ? null : roles;
+            });
+        }
+        for (String term : getTerms(previous.getSeriesName())) {
+            removePosting(eventsBySeriesTerm, term, eventId);
+        }
+        if (previous.getStartsAt() != null) {
+            removePosting(eventsByDate, getDate(previous.getStartsAt()), eventId);
+        } else {
+            for (String term : getTerms(previous.getDate())) {
+                removePosting(undatedByDateWord, term, eventId);
+            }
+        }
+    }
+
+    /**
+     * Drops every schedule row; talent mappings stay.
+     */
+    public synchronized void clear() {
+        eventsById.clear();
+        rolesByTalent.clear();
+        eventsBySeriesTerm.clear();
+        eventsByDate.clear();
+        undatedByDateWord.clear();
+    }
+
+    public void putMapping(final UserMapping mapping) {
+        talentByUser.put(mapping.getdUserId(), normalize(mapping.getTalentName()));
+        userByTalent.put(normalize(mapping.getTalentName()), mapping.getdUserId());
+    }
+
+    public void removeMapping(final UserMapping mapping) {
+        talentByUser.remove(mapping.getdUserId());
+        userByTalent.remove(normalize(mapping.getTalentName()));
+    }
+
+    public Optional<ScheduledEvent> getEvent(final String eventId) {
+        return Optional.ofNullable(eventsById.get(eventId));
+    }
+
+    public List<ScheduledEvent> getEvents() {
+        List<ScheduledEvent> events = new ArrayList<>(eventsById.values());
+        events.sort(BY_SHEET_ORDER);
+        return events;
+    }
+
+    /**
+     * The Discord user registered under a talent name as written on the sheet.
+     */
+    public Optional<Long> findUserId(final String talentName) {
+        return StringUtils.isBlank(talentName) ? Optional.empty() : Optional.ofNullable(userByTalent.get(normalize(talentName)));
+    }
+
+    public boolean isTalent(final long userId) {
+        return talentByUser.containsKey(userId);
+    }
+
+    /**
+     * The events a Discord user is on, in sheet order, with the role(s) they have on each.
+     */
+    public List<Assignment> findAssignments(final long userId) {
+        String talent = talentByUser.get(userId);
+        if (talent == null) {
+            return Collections.emptyList();
+        }
+        Map<String, String> roles = rolesByTalent.getOrDefault(talent, Collections.emptyMap());
+        List<Assignment> assignments = new ArrayList<>();
+        for (Map.Entry<String, String> role : roles.entrySet()) {
+            ScheduledEvent event = eventsById.get(role.getKey());
+            if (event != null) {
+                assignments.add(new Assignment(event, role.getValue()));
+            }
+        }
+        assignments.sort(Comparator.comparing(Assignment::getEvent, BY_SHEET_ORDER));
+        return assignments;
+    }
+
+    /**
+     * Events matching every part of {@code query}. Up to three words in a row that read as a
+     * date ("06/09", "6/9", "Friday 9 June") match events starting that day, a weekday matches
+     * events on that day of the week or with the word in their series name, and any other word
+     * matches the series name, so "gt3", "06/09" and "gt3 friday" all work.
+     */
+    public List<ScheduledEvent> find(final String query) {
+        List<String> words = getWords(query);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Instant now = Instant.now();
+        Set<String> matches = null;
+        int next = 0;
+        while (next < words.size()) {
+            Set<String> postings = null;
+            for (int length = Math.min(MAX_DATE_WORDS, words.size() - next); length > 0 && postings == null; length--) {
+                List<String> dateWords = words.subList(next, next + length);
+                Optional<LocalDate> date = ScheduleTimes.parseDate(String.join(" ", dateWords), now);
+                if (date.isPresent()) {
+                    postings = new HashSet<>(eventsByDate.getOrDefault(date.get(), Collections.emptySet()));
+                    postings.addAll(getUndatedMatching(dateWords));
+                    next += length;
+                }
+            }
+            if (postings == null) {
+                String word = words.get(next++);
+                postings = new HashSet<>(eventsBySeriesTerm.getOrDefault(word, Collections.emptySet()));
+                postings.addAll(undatedByDateWord.getOrDefault(word, Collections.emptySet()));
+                Optional<DayOfWeek> weekday = ScheduleTimes.parseWeekday(word);
+                if (weekday.isPresent()) {
+                    postings.addAll(getEventsOn(weekday.get()));
+                }
+            }
+            if (matches == null) {
+                matches = postings;
+            } else {
+                matches.retainAll(postings);
+            }
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+        List<ScheduledEvent> events = new ArrayList<>();
+        for (String id : matches) {
+            ScheduledEvent event = eventsById.get(id);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        events.sort(BY_SHEET_ORDER);
+        return events;
+    }
+
+    public int size() {
+        return eventsById.size();
+    }
+
+    private void addRole(final ScheduledEvent event, final String talent, final String role) {
+        if (StringUtils.isBlank(talent)) {
+            return;
+        }
+        rolesByTalent.computeIfAbsent(normalize(talent), key -> new ConcurrentHashMap<>())
+                .merge(event.getId(), role, (existing, added) -> existing.equals(added) ? existing : existing + ", " + added);
+    }
+
+    private static <K> void addPosting(final Map<K, Set<String>> index, final K term, final String eventId) {
+        index.computeIfAbsent(term, key -> ConcurrentHashMap.newKeySet()).add(eventId);
+    }
+
+    private static <K> void removePosting(final Map<K, Set<String>> index, final K term, final String eventId) {
+        index.computeIfPresent(term, (key, postings) -> {
+            postings.remove(eventId);
+            return postings.isEmpty() ? null : postings;
+        });
+    }
+
+    private Set<String> getEventsOn(final DayOfWeek day) {
+        Set<String> events = new HashSet<>();
+        eventsByDate.forEach((date, postings) -> {
+            if (date.getDayOfWeek() == day) {
+                events.addAll(postings);
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Rows without a readable start whose date cell has every one of {@code words}.
+     */
+    private Set<String> getUndatedMatching(final List<String> words) {
+        Set<String> matches = null;
+        for (String word : words) {
+            Set<String> postings = undatedByDateWord.getOrDefault(word, Collections.emptySet());
+            if (matches == null) {
+                matches = new HashSet<>(postings);
+            } else {
+                matches.retainAll(postings);
+            }
+        }
+        return matches == null ? Collections.emptySet() : matches;
+    }
+
+    private static Set<String> getTerms(final String text) {
+        return new HashSet<>(getWords(text));
+    }
+
+    private static List<String> getWords(final String text) {
+        List<String> words = new ArrayList<>();
+        if (StringUtils.isBlank(text)) {
+            return words;
+        }
+        for (String word : normalize(text).split("[^\\p{L}\\p{N}/.\\-]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static LocalDate getDate(final Instant startsAt) {
+        return startsAt.atOffset(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static String normalize(final String text) {
+        return StringUtils.normalizeSpace(text).toLowerCase();
+    }
+
+    public static class Assignment {
+
+        private final ScheduledEvent event;
+        private final String role;
+
+        public Assignment(final ScheduledEvent event, final String role) {
+            this.event = event;
+            this.role = role;
+        }
+
+        public ScheduledEvent getEvent() {
+            return event;
+        }
+
+        public String getRole() {
+            return role;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package tv.racespot.racespotlivebot.service.commands;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import me.s3ns3iw00.jcommands.event.type.CommandActionEvent;
+import org.apache.commons.lang3.StringUtils;
+import org.javacord.api.entity.channel.TextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.javacord.api.interaction.callback.InteractionOriginalResponseUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.Workload;
+import tv.racespot.racespotlivebot.util.LatencyRecorder;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Tracer;
+
+/**
+ * Every slash command goes through here: the interaction is deferred straight away on the
+ * listener thread, the body runs on the command lane with a timeout, and its result (or error)
+ * replaces the deferred response exactly once. Whether the response is ephemeral is fixed when
+ * it is deferred, so it is chosen by the entry point the command uses.
+ */
+public class CommandRunner {
+
+    private static final int MAX_CONTENT_LENGTH = 2000;
+
+    @Value("${discord.notification.error_channel_id}")
+    private String errorChannelId;
+    @Value("${commands.timeout_seconds:120}")
+    private long timeoutSeconds;
+    @Value("${commands.ack_budget_millis:2500}")
+    private long ackBudgetMillis;
+
+    private final WorkExecutor workExecutor;
+    private final ErrorReporter errorReporter;
+    private final LeaderElection leaderElection;
+
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+
+    private final Logger logger;
+
+    public CommandRunner(
+            final WorkExecutor workExecutor,
+            final ErrorReporter errorReporter,
+            final LeaderElection leaderElection) {
+        this.workExecutor = workExecutor;
+        this.errorReporter = errorReporter;
+        this.leaderElection = leaderElection;
+
+        this.logger = LoggerFactory.getLogger(CommandRunner.class);
+    }
+
+    /**
+     * Answers with a reply only the invoking user sees.
+     */
+    public void run(final CommandActionEvent event, final String commandName, final CommandBody body) {
+        execute(event, commandName, () -> Reply.text(body.execute(event)), true, null);
+    }
+
+    /**
+     * Answers with a reply the whole channel sees, for results others have to interact with (e.g.
+     * paged listings that take reactions). {@code onResponse} gets the reply once it is posted,
+     * unless the command failed.
+     */
+    public void runPublic(
+            final CommandActionEvent event,
+            final String commandName,
+            final CommandBody body,
+            final Consumer<Message> onResponse) {
+        execute(event, commandName, () -> Reply.text(body.execute(event)), false, onResponse);
+    }
+
+    /**
+     * Like {@link #run}, for commands that answer with an embed instead of text.
+     */
+    public void runEmbed(final CommandActionEvent event, final String commandName, final EmbedBody body) {
+        execute(event, commandName, () -> Reply.embed(body.execute(event)), true, null);
+    }
+
+    private void execute(
+            final CommandActionEvent event,
+            final String commandName,
+            final Callable<Reply> body,
+            final boolean ephemeral,
+            final Consumer<Message> onResponse) {
+        try (LogContext ignored = LogContext.begin("/" + commandName)) {
+            Optional<Long> serverId = event.getChannel()
+                    .flatMap(TextChannel::asServerTextChannel)
+                    .map(channel -> channel.getServer().getId());
+            if (!leaderElection.isLeaderForServer(serverId)) {
+                // every replica running the guild's shard sees the interaction, only its leader answers it
+                logger.debug("Standby ignoring /{}", commandName);
+                return;
+            }
+            long receivedAt = System.nanoTime();
+            CommandStats commandStats = stats.computeIfAbsent(commandName, name -> new CommandStats());
+            // open until the user sees the result, which keeps the trace open that long too
+            Span reply = Tracer.current().child("reply");
+
+            CompletableFuture<InteractionOriginalResponseUpdater> ack = Tracer
+                    .traceFuture("discord.ack", event.getResponder().respondLater(ephemeral))
+                    .whenComplete((updater, ex) -> {
+                        long ackMillis = elapsedMillis(receivedAt);
+                        commandStats.ackLatency.record(ackMillis);
+                        if (ex != null) {
+                            logger.error("Unable to acknowledge /{}: {}", commandName, ex.getMessage());
+                            reply.markFailed().end();
+                        } else if (ackMillis > ackBudgetMillis) {
+                            logger.warn("/{} acknowledged after {} ms, budget is {} ms",
+                                    commandName, ackMillis, ackBudgetMillis);
+                        }
+                    });
+
+            // the timeout completes the lane's own future, which interrupts the body still running
+            CompletableFuture<Reply> result = workExecutor.submit(Workload.COMMAND, body)
+                    .orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+
+            ack.thenAcceptBoth(
+                    result.handle((response, ex) -> ex == null ? response : Reply.text(describeFailure(commandName, ex))),
+                    (updater, response) -> Tracer
+                            .traceFuture(reply, "discord.update", response.applyTo(updater).update())
+                            .thenAccept(message -> {
+                                if (onResponse != null && !result.isCompletedExceptionally()) {
+                                    onResponse.accept(message);
+                                }
+                            })
+                            .exceptionally(ex -> {
+                                logger.error("Unable to send result for /{}: {}", commandName, ex.getMessage());
+                                reply.markFailed();
+                                return null;
+                            })
+                            .whenComplete((done, ex) -> reply.end()));
+
+            result.whenComplete((response, ex) -> {
+                long totalMillis = elapsedMillis(receivedAt);
+                commandStats.totalLatency.record(totalMillis);
+                if (ex != null) {
+                    commandStats.failures.incrementAndGet();
+                }
+                logger.info("/{} finished in {} ms{}", commandName, totalMillis, ex == null ? "" : " with error");
+            });
+        }
+    }
+
+    public Map<String, CommandStats> getStats() {
+        return new TreeMap<>(stats);
+    }
+
+    /**
+     * For bodies that loop over side effects: stops the body between two of them once it has
+     * timed out, as the user has already been told so.
+     */
+    public static void checkTimedOut() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Command timed out");
+        }
+    }
+
+    private String describeFailure(final String commandName, final Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return "The bot is busy right now, please try again shortly.";
+        }
+        if (cause instanceof TimeoutException) {
+            logger.error("/{} timed out after {} seconds", commandName, timeoutSeconds);
+            return String.format("/%s timed out after %d seconds.", commandName, timeoutSeconds);
+        }
+
+        logger.error("Error while running /{}: {}", commandName, cause.getMessage(), cause);
+        errorReporter.report(errorChannelId, String.format("Error when running /%s", commandName), cause);
+        return String.format("Error while running /%s: %s", commandName, cause.getMessage());
+    }
+
+    private static String truncate(final String content) {
+        if (StringUtils.isEmpty(content)) {
+            return "Done";
+        }
+        return StringUtils.abbreviate(content, MAX_CONTENT_LENGTH);
+    }
+
+    private static long elapsedMillis(final long since) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    @FunctionalInterface
+    public interface CommandBody {
+
+        String execute(CommandActionEvent event) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface EmbedBody {
+
+        EmbedBuilder execute(CommandActionEvent event) throws Exception;
+    }
+
+    private static final class Reply {
+
+        private final String content;
+        private final EmbedBuilder embed;
+
+        private Reply(final String content, final EmbedBuilder embed) {
+            this.content = content;
+            this.embed = embed;
+        }
+
+        private static Reply text(final String content) {
+            return new Reply(content, null);
+        }
+
+        private static Reply embed(final EmbedBuilder embed) {
+            return new Reply(null, embed);
+        }
+
+        private InteractionOriginalResponseUpdater applyTo(final InteractionOriginalResponseUpdater updater) {
+            return embed != null ? updater.addEmbed(embed) : updater.setContent(truncate(content));
+        }
+    }
+
+    public static class CommandStats {
+
+        private final LatencyRecorder ackLatency = new LatencyRecorder(256);
+        private final LatencyRecorder totalLatency = new LatencyRecorder(256);
+        private final AtomicLong failures = new AtomicLong();
+
+        public LatencyRecorder getAckLatency() {
+            return ackLatency;
+        }
+
+        public LatencyRecorder getTotalLatency() {
+            return totalLatency;
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+    }
+}
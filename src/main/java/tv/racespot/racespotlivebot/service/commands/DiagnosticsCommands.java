@@ -0,0 +1,278 @@
+package tv.racespot.racespotlivebot.service.commands;
+
+import java.awt.Color;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import me.s3ns3iw00.jcommands.Command;
+import me.s3ns3iw00.jcommands.type.SlashCommand;
+import org.apache.commons.lang3.StringUtils;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import tv.racespot.racespotlivebot.service.AvailabilityPool;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.ScheduleIndex;
+import tv.racespot.racespotlivebot.service.commands.CommandRunner.CommandStats;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor.WorkloadStats;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager.ShardStats;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue.OutboundStats;
+import tv.racespot.racespotlivebot.service.reminders.ReminderService;
+import tv.racespot.racespotlivebot.service.rest.ApiGuard;
+import tv.racespot.racespotlivebot.service.rest.ApiGuard.ApiStats;
+import tv.racespot.racespotlivebot.service.rest.QuotaAccountant;
+import tv.racespot.racespotlivebot.service.rest.QuotaAccountant.QuotaSnapshot;
+import tv.racespot.racespotlivebot.service.rest.ScheduleSnapshot;
+import tv.racespot.racespotlivebot.service.rest.SheetsManager;
+import tv.racespot.racespotlivebot.service.rest.SheetsManager.FetchStats;
+import tv.racespot.racespotlivebot.service.tracing.TraceCollector;
+import tv.racespot.racespotlivebot.service.tracing.TraceCollector.TraceSummary;
+import tv.racespot.racespotlivebot.util.LatencyRecorder;
+
+/**
+ * /botstats: the bot's internals in one embed, for checking health mid-broadcast without a
+ * shell on the host. Everything shown is read from counters the services already keep in
+ * memory; nothing here calls Discord, Google or the database.
+ */
+public class DiagnosticsCommands {
+
+    private static final int MAX_FIELD_LENGTH = 1024;
+    private static final int SLOWEST_COMMANDS = 3;
+    private static final int SLOWEST_TRACES = 3;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Value("${discord.notification.admin_channel_id}")
+    private String adminChannelId;
+
+    private final ShardManager shardManager;
+    private final EventCommands eventCommands;
+    private final SheetsManager sheetsManager;
+    private final ScheduleIndex scheduleIndex;
+    private final ReminderService reminderService;
+    private final AvailabilityPool availabilityPool;
+    private final WorkExecutor workExecutor;
+    private final OutboundMessageQueue outboundQueue;
+    private final CommandRunner commandRunner;
+    private final QuotaAccountant quotaAccountant;
+    private final List<ApiGuard> apiGuards;
+    private final ErrorReporter errorReporter;
+    private final TraceCollector traceCollector;
+    private final LeaderElection leaderElection;
+
+    public DiagnosticsCommands(
+            final ShardManager shardManager,
+            final EventCommands eventCommands,
+            final SheetsManager sheetsManager,
+            final ScheduleIndex scheduleIndex,
+            final ReminderService reminderService,
+            final AvailabilityPool availabilityPool,
+            final WorkExecutor workExecutor,
+            final OutboundMessageQueue outboundQueue,
+            final CommandRunner commandRunner,
+            final QuotaAccountant quotaAccountant,
+            final List<ApiGuard> apiGuards,
+            final ErrorReporter errorReporter,
+            final TraceCollector traceCollector,
+            final LeaderElection leaderElection) {
+        this.shardManager = shardManager;
+        this.eventCommands = eventCommands;
+        this.sheetsManager = sheetsManager;
+        this.scheduleIndex = scheduleIndex;
+        this.reminderService = reminderService;
+        this.availabilityPool = availabilityPool;
+        this.workExecutor = workExecutor;
+        this.outboundQueue = outboundQueue;
+        this.commandRunner = commandRunner;
+        this.quotaAccountant = quotaAccountant;
+        this.apiGuards = apiGuards;
+        this.errorReporter = errorReporter;
+        this.traceCollector = traceCollector;
+        this.leaderElection = leaderElection;
+    }
+
+    public Command botStats() {
+        SlashCommand botStatsCommand = new SlashCommand("botstats", "Show the bot's runtime internals");
+
+        botStatsCommand.setOnAction(event -> commandRunner.runEmbed(event, "botstats", actionEvent -> {
+            boolean inAdminChannel = actionEvent.getChannel()
+                    .map(channel -> channel.getIdAsString().equals(adminChannelId))
+                    .orElse(false);
+            if (!inAdminChannel) {
+                return new EmbedBuilder().setDescription("/botstats is only available in the admin channel.");
+            }
+            return buildStatsEmbed();
+        }));
+
+        return botStatsCommand;
+    }
+
+    EmbedBuilder buildStatsEmbed() {
+        Instant now = Instant.now();
+        return new EmbedBuilder()
+                .setTitle("Bot stats")
+                .setColor(leaderElection.isLeader() ? Color.GREEN : Color.ORANGE)
+                .addInlineField("Live polling", describePolling(now))
+                .addInlineField("Schedule sheet", describeSheet(now))
+                .addInlineField("Caches", describeCaches())
+                .addInlineField("Discord sends", describeOutbound())
+                .addInlineField("Gateway", describeGateway())
+                .addInlineField("JVM", describeJvm())
+                .addField("Work lanes", describeLanes())
+                .addField("Google APIs", describeApis())
+                .addField("Slowest commands", describeCommands())
+                .addField("Slowest traces", describeTraces())
+                .setFooter(String.format("%s, %s | errors: %d reported, %d sent, %d held back",
+                        leaderElection.getHolderId(), leaderElection.isLeader() ? "leader" : "standby",
+                        errorReporter.getReported(), errorReporter.getSent(), errorReporter.getSuppressed()))
+                .setTimestamp(now);
+    }
+
+    private String describePolling(final Instant now) {
+        LatencyRecorder durations = eventCommands.getPollDurations();
+        return field(String.format("%d tracked events%nlast poll %s, next %s%npolls with events: %d, avg %d ms, p95 %d ms, max %d ms",
+                eventCommands.getTrackedEvents(),
+                ago(eventCommands.getLastPollAt(), now),
+                until(eventCommands.getNextPollAt(), now),
+                durations.getCount(), durations.getAverage(), durations.percentile(95), durations.getMax()));
+    }
+
+    private String describeSheet(final Instant now) {
+        FetchStats stats = sheetsManager.getLastFetchStats();
+        ScheduleSnapshot snapshot = sheetsManager.peekSnapshot();
+        if (stats == null || snapshot == null) {
+            return "not fetched yet";
+        }
+        return field(String.format("%d rows, %d KB%nfetched %s in %d ms%s",
+                snapshot.size(), stats.getPayloadBytes() / 1024, ago(snapshot.getFetchedAt(), now),
+                stats.getFetchMillis() + stats.getDecodeMillis() + stats.getParseMillis(),
+                stats.isStreamed() ? " (streamed)" : ""));
+    }
+
+    private String describeCaches() {
+        long hits = sheetsManager.getSnapshotHits();
+        long lookups = hits + sheetsManager.getSnapshotMisses();
+        return field(String.format("sheet snapshot: %s hits (%d/%d)%nschedule index: %d events%nreminders: %d pending%nfree talent: %d",
+                lookups == 0 ? "-" : String.format("%d%%", hits * 100 / lookups), hits, lookups,
+                scheduleIndex.size(), reminderService.getPending(), availabilityPool.size()));
+    }
+
+    private String describeOutbound() {
+        OutboundStats stats = outboundQueue.getStats();
+        StringJoiner waits = new StringJoiner(", ");
+        stats.getP95WaitMillis().forEach((priority, millis) ->
+                waits.add(String.format("%s %d ms", priority.name().toLowerCase(), millis)));
+        return field(String.format("backlog %d%np95 wait %s%nsent %d, failed %d, coalesced %d, rejected %d",
+                stats.getBacklog(), waits.length() == 0 ? "-" : waits, stats.getSent(), stats.getFailed(),
+                stats.getCoalesced(), stats.getRejected()));
+    }
+
+    private String describeGateway() {
+        StringJoiner shards = new StringJoiner("\n");
+        for (ShardStats stats : shardManager.getShardStats()) {
+            shards.add(String.format("shard %d: %d ms, %d servers",
+                    stats.getShardId(), stats.getGatewayLatencyMillis(), stats.getServers()));
+        }
+        return field(shards.toString());
+    }
+
+    private String describeJvm() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        StringJoiner jvm = new StringJoiner("\n");
+        jvm.add(String.format("heap %d / %d MB (max %s)", heap.getUsed() / MEGABYTE, heap.getCommitted() / MEGABYTE,
+                heap.getMax() < 0 ? "none" : heap.getMax() / MEGABYTE + " MB"));
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long count = Math.max(0, collector.getCollectionCount());
+            long millis = Math.max(0, collector.getCollectionTime());
+            jvm.add(String.format("%s: %d GCs, %d ms total, avg %d ms",
+                    collector.getName(), count, millis, count == 0 ? 0 : millis / count));
+        }
+        jvm.add(String.format("up %s, %d threads",
+                formatDuration(Duration.ofMillis(ManagementFactory.getRuntimeMXBean().getUptime())),
+                ManagementFactory.getThreadMXBean().getThreadCount()));
+        return field(jvm.toString());
+    }
+
+    private String describeLanes() {
+        StringJoiner lanes = new StringJoiner("\n");
+        for (WorkloadStats stats : workExecutor.getStats()) {
+            lanes.add(String.format("%s: %d queued, %d active, wait p95 %d ms, %d rejected, %d failed",
+                    stats.getWorkload(), stats.getQueued(), stats.getActive(), stats.getWaitP95Millis(),
+                    stats.getRejected(), stats.getFailed()));
+        }
+        return field(lanes.toString());
+    }
+
+    private String describeApis() {
+        StringJoiner apis = new StringJoiner("\n");
+        for (ApiGuard guard : apiGuards) {
+            ApiStats stats = guard.getStats();
+            apis.add(String.format("%s: %s, %d calls, %d failed, %d timed out, p99 %d ms",
+                    stats.getName(), stats.getState(), stats.getCalls(), stats.getFailures(), stats.getTimeouts(),
+                    stats.getObservedP99Millis()));
+        }
+        QuotaSnapshot quota = quotaAccountant.getSnapshot();
+        apis.add(String.format("YouTube quota: %d/%d units, %d projected, %d keys usable",
+                quota.getUsedUnits(), quota.getBudgetUnits(), quota.getProjectedUnits(), quota.getUsableKeys()));
+        return field(apis.toString());
+    }
+
+    private String describeCommands() {
+        StringJoiner commands = new StringJoiner("\n");
+        commands.setEmptyValue("none run yet");
+        commandRunner.getStats().entrySet().stream()
+                .sorted((left, right) -> Long.compare(
+                        right.getValue().getTotalLatency().percentile(95), left.getValue().getTotalLatency().percentile(95)))
+                .limit(SLOWEST_COMMANDS)
+                .forEach(entry -> commands.add(describeCommand(entry)));
+        return field(commands.toString());
+    }
+
+    private static String describeCommand(final Map.Entry<String, CommandStats> entry) {
+        CommandStats stats = entry.getValue();
+        return String.format("/%s: p95 %d ms, ack p95 %d ms, %d runs, %d failed",
+                entry.getKey(), stats.getTotalLatency().percentile(95), stats.getAckLatency().percentile(95),
+                stats.getTotalLatency().getCount(), stats.getFailures());
+    }
+
+    private String describeTraces() {
+        StringJoiner traces = new StringJoiner("\n");
+        traces.setEmptyValue("none over the export threshold");
+        traceCollector.getSlowest().stream()
+                .limit(SLOWEST_TRACES)
+                .map(TraceSummary::toString)
+                .forEach(traces::add);
+        return field(traces.toString());
+    }
+
+    private static String field(final String value) {
+        return StringUtils.abbreviate(StringUtils.defaultIfBlank(value, "-"), MAX_FIELD_LENGTH);
+    }
+
+    private static String ago(final Instant at, final Instant now) {
+        return at == null ? "never" : formatDuration(Duration.between(at, now)) + " ago";
+    }
+
+    private static String until(final Instant at, final Instant now) {
+        return at == null || !at.isAfter(now) ? "due" : "in " + formatDuration(Duration.between(now, at));
+    }
+
+    private static String formatDuration(final Duration duration) {
+        long seconds = Math.max(0, duration.getSeconds());
+        if (seconds < 120) {
+            return seconds + " s";
+        }
+        if (seconds < 7200) {
+            return seconds / 60 + " min";
+        }
+        return seconds / 3600 + " h";
+    }
+}
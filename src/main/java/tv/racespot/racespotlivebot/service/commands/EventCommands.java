@@ -1,24 +1,12 @@
 package tv.racespot.racespotlivebot.service.commands;
 
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.youtube.YouTube;
-import com.google.api.services.youtube.model.Channel;
-import com.google.api.services.youtube.model.ChannelListResponse;
 import com.google.api.services.youtube.model.Video;
-import com.google.api.services.youtube.model.VideoListResponse;
 import me.s3ns3iw00.jcommands.Command;
 import me.s3ns3iw00.jcommands.argument.ArgumentResult;
 import me.s3ns3iw00.jcommands.argument.type.ValueArgument;
 import me.s3ns3iw00.jcommands.type.SlashCommand;
 import org.apache.commons.lang3.StringUtils;
-import org.javacord.api.DiscordApi;
-import org.javacord.api.entity.channel.ServerTextChannel;
-import org.javacord.api.entity.message.MessageBuilder;
 import org.javacord.api.entity.message.MessageFlag;
-import org.javacord.api.entity.message.embed.EmbedBuilder;
 import org.javacord.api.interaction.SlashCommandOptionType;
 import org.javacord.api.interaction.callback.InteractionCallbackDataFlag;
 import org.slf4j.Logger;
@@ -27,69 +15,208 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import tv.racespot.racespotlivebot.data.*;
 import tv.racespot.racespotlivebot.data.Event;
-
-import java.awt.*;
-import java.io.IOException;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.delivery.AnnouncementDispatcher;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.Workload;
+import tv.racespot.racespotlivebot.service.rest.QuotaAccountant;
+import tv.racespot.racespotlivebot.service.rest.YouTubeManager;
+import tv.racespot.racespotlivebot.service.websub.WebSubSubscriber;
+import tv.racespot.racespotlivebot.util.LatencyRecorder;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
 public class EventCommands {
 
-    @Value("${google.api_key}")
-    private String googleApiKey;
     @Value("${discord.notification.admin_channel_id}")
     private String adminChannelId;
 
     private final EventRepository eventRepository;
-    private final DServerRepository serverRepository;
-
-    private YouTube youtubeClient;
+    private final AnnouncementDispatcher announcementDispatcher;
+
+    private final WorkExecutor workExecutor;
+    private final CommandRunner commandRunner;
+    private final ErrorReporter errorReporter;
+    private final YouTubeManager youTubeManager;
+    private final QuotaAccountant quotaAccountant;
+    private final WebSubSubscriber webSubSubscriber;
+    private final LeaderElection leaderElection;
+    private final AtomicBoolean pollInFlight = new AtomicBoolean();
+    private final Object liveCheckLock = new Object();
+    private volatile Instant nextPollAt = Instant.EPOCH;
+    private final LatencyRecorder pollDurations = new LatencyRecorder(256);
+    private volatile int trackedEvents;
+    private volatile Instant lastPollAt;
 
     private final Logger logger;
 
-    private DiscordApi api;
-
     public EventCommands(
-            final DiscordApi api,
             final EventRepository eventRepository,
-            final DServerRepository serverRepository) {
-        this.api = api;
+            final AnnouncementDispatcher announcementDispatcher,
+            final WorkExecutor workExecutor,
+            final CommandRunner commandRunner,
+            final ErrorReporter errorReporter,
+            final YouTubeManager youTubeManager,
+            final QuotaAccountant quotaAccountant,
+            final WebSubSubscriber webSubSubscriber,
+            final LeaderElection leaderElection) {
         this.eventRepository = eventRepository;
-        this.serverRepository = serverRepository;
-
-        this.youtubeClient = new YouTube.Builder(new NetHttpTransport(), new JacksonFactory(), new HttpRequestInitializer() {
-            public void initialize(HttpRequest request) throws IOException {
-            }
-        }).setApplicationName("racespot-tv-live-bot").build();
+        this.announcementDispatcher = announcementDispatcher;
+        this.workExecutor = workExecutor;
+        this.commandRunner = commandRunner;
+        this.errorReporter = errorReporter;
+        this.youTubeManager = youTubeManager;
+        this.quotaAccountant = quotaAccountant;
+        this.webSubSubscriber = webSubSubscriber;
+        this.leaderElection = leaderElection;
 
         this.logger = LoggerFactory.getLogger(EventCommands.class);
     }
 
-    @Scheduled(fixedRate = 300000, initialDelay = 10000)
+    // ticks often, the actual poll interval is planned from the remaining YouTube quota
+    @Scheduled(fixedDelay = 15000, initialDelay = 10000)
     public void checkScheduledEvents() {
+        try (LogContext ignored = LogContext.begin("events.poll")) {
+            if (!leaderElection.isLeader() || Instant.now().isBefore(nextPollAt)) {
+                return;
+            }
+            if (!pollInFlight.compareAndSet(false, true)) {
+                logger.info("Previous scheduled check still running, skipping");
+                return;
+            }
+            workExecutor.execute(Workload.SCHEDULED, this::pollScheduledEvents)
+                    .whenComplete((result, ex) -> {
+                        pollInFlight.set(false);
+                        if (ex != null) {
+                            logger.error("Scheduled check failed: {}", ex.getMessage());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Checks videos whose WebSub notification reached a standby rather than the leader, without
+     * waiting for the next quota-planned poll.
+     */
+    @Scheduled(fixedDelay = 5000, initialDelay = 10000)
+    public void checkPushedEvents() {
+        try (LogContext ignored = LogContext.begin("events.pushed")) {
+            if (!leaderElection.isLeader()) {
+                return;
+            }
+            workExecutor.execute(Workload.SCHEDULED, () -> {
+                List<Event> events = eventRepository.findByStatusAndPushedAtIsNotNull(EventStatus.SCHEDULED);
+                if (events.isEmpty()) {
+                    return;
+                }
+                // a push is checked once, the regular poll covers anything it missed
+                eventRepository.clearPushed(events.stream().map(Event::getId).collect(Collectors.toList()));
+                logger.info("Checking {} events pushed to a standby", events.size());
+                checkEvents(events);
+            }).exceptionally(ex -> {
+                logger.error("Pushed event check failed: {}", ex.getMessage());
+                return null;
+            });
+        }
+    }
+
+    private void pollScheduledEvents() {
         logger.info("beginning scheduled check");
+        long started = System.nanoTime();
         List<Event> events = eventRepository.findByStatus(EventStatus.SCHEDULED);
+        trackedEvents = events.size();
+        lastPollAt = Instant.now();
+        long intervalMillis = quotaAccountant.planPollInterval(events.size());
+        nextPollAt = Instant.now().plusMillis(intervalMillis);
         if(events.size() == 0) {
             logger.info("No events scheduled!");
             return;
         }
-        logger.info(String.format("%d events to check", events.size()));
+        logger.info("{} events to check, next check in {} s", events.size(), intervalMillis / 1000);
+        checkEvents(events);
+        pollDurations.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        logger.info("finished scheduled task");
+    }
 
-        try {
-            YouTube.Videos.List search = youtubeClient.videos().list(Arrays.asList("id", "snippet"));
-            search.setKey(googleApiKey);
-            search.setId(events.stream().map(Event::getYoutubeLink).collect(Collectors.toList()));
-            //search.setFields("items(id/kind,id/videoId,snippet/title,snippet/thumbnails/default/url,snippet/liveBroadcastContent)");
+    /**
+     * How long polls that had events to check took.
+     */
+    public LatencyRecorder getPollDurations() {
+        return pollDurations;
+    }
+
+    /**
+     * Scheduled events found by the last poll.
+     */
+    public int getTrackedEvents() {
+        return trackedEvents;
+    }
+
+    public Instant getLastPollAt() {
+        return lastPollAt;
+    }
+
+    public Instant getNextPollAt() {
+        return nextPollAt;
+    }
+
+    public void onVideoNotification(final String channelId, final String videoId) {
+        workExecutor.execute(Workload.SCHEDULED, () -> {
+            webSubSubscriber.recordNotification(channelId);
+            if (!leaderElection.isLeader()) {
+                // the hub only delivers once, so leave it where the leader looks for pushes
+                int marked = eventRepository.markPushed(videoId, EventStatus.SCHEDULED, Instant.now());
+                logger.info("Standby received WebSub notification for {}, handed {} events to the leader",
+                        videoId, marked);
+                return;
+            }
+            List<Event> events = eventRepository.findByYoutubeLinkAndStatus(videoId, EventStatus.SCHEDULED);
+            if (events.isEmpty()) {
+                logger.debug("Ignoring WebSub notification for untracked video {}", videoId);
+                return;
+            }
+            logger.info("WebSub notification for tracked video {}", videoId);
+            checkEvents(events);
+        }).exceptionally(ex -> {
+            logger.error("Push check for {} failed: {}", videoId, ex.getMessage());
+            return null;
+        });
+    }
+
+    private void checkEvents(final List<Event> candidates) {
+        // polling and push notifications may race on the same video
+        synchronized (liveCheckLock) {
+            List<Event> events = eventRepository
+                    .findAllById(candidates.stream().map(Event::getId).collect(Collectors.toList()))
+                    .stream()
+                    .filter(event -> event.getStatus() == EventStatus.SCHEDULED)
+                    .collect(Collectors.toList());
+            if (!events.isEmpty()) {
+                announceLiveEvents(events);
+            }
+        }
+    }
 
+    private void announceLiveEvents(final List<Event> events) {
+        try {
             int counter = 0;
-            VideoListResponse searchResponse = search.execute();
-            List<Video> videos = searchResponse.getItems();
+            List<Video> videos = youTubeManager.getVideos(
+                    events.stream().map(Event::getYoutubeLink).distinct().collect(Collectors.toList()));
             Map<Event, Video> eventToVideoMap = new HashMap<>();
             List<String> channelIds = new ArrayList<>();
             if (videos != null) {
                 for (Video video : videos) {
+                    webSubSubscriber.register(video.getSnippet().getChannelId());
                     if (!"upcoming".equalsIgnoreCase(video.getSnippet().getLiveBroadcastContent())) {
                         Event event =
                                 events.stream().filter(e -> e.getYoutubeLink().equals(video.getId()))
@@ -104,65 +231,27 @@ public class EventCommands {
             }
 
             if(!eventToVideoMap.isEmpty()) {
-                Map<String, String> channelIdToAvatarMap = getChannelAvatarMap(channelIds);
-
-                List<DServer> servers = serverRepository.findAll();
+                Map<String, String> channelIdToAvatarMap = youTubeManager.getChannelAvatarMap(channelIds);
 
                 for (Event event : eventToVideoMap.keySet()) {
+                    Video video = eventToVideoMap.get(event);
+                    event.setTitle(video.getSnippet().getTitle());
+                    event.setChannelTitle(video.getSnippet().getChannelTitle());
+                    event.setChannelAvatarUrl(channelIdToAvatarMap.get(video.getSnippet().getChannelId()));
+                    event.setImageUrl(video.getSnippet().getThumbnails().getMaxres().getUrl());
+                    // ledger rows first: a crash before the status change only means they are found again
+                    announcementDispatcher.enqueue(event);
                     event.setStatus(EventStatus.LIVE);
                     eventRepository.save(event);
-
-                    Video video = eventToVideoMap.get(event);
-
-                    for (DServer server : servers) {
-                        try {
-                            ServerTextChannel
-                                    channel = api.getServerTextChannelById(server.getDChannelId()).get();
-                            new MessageBuilder()
-                                    .setEmbed(constructEmbed(video, channelIdToAvatarMap))
-                                    .send(channel);
-                        } catch (Exception ex) {
-                            logger.error(ex.getMessage());
-                            ServerTextChannel
-                                    channel = api.getServerTextChannelById(adminChannelId).get();
-                            new MessageBuilder()
-                                    .append(String.format("Error while sending live announcement for server %s: %s",
-                                            server.getDName(), ex.getMessage()))
-                                    .send(channel);
-                        }
-                    }
-                    counter++;
-                    logger.info(String.format("Event is live: %S", event.getYoutubeLink()));
+                    logger.info("Event is live: {}", event.getYoutubeLink());
                 }
+                announcementDispatcher.deliverDue();
             }
-            logger.info(String.format("finished checking events: %d events live", counter));
+            logger.info("finished checking events: {} events live", counter);
         } catch (Exception ex) {
             logger.error(ex.getMessage());
-            ServerTextChannel
-                    channel = api.getServerTextChannelById(adminChannelId).get();
-            new MessageBuilder()
-                    .append(String.format("Error while syncing event status: %s", ex.getMessage()))
-                    .send(channel);
-        }
-        logger.info("finished scheduled task");
-    }
-
-    private Map<String, String> getChannelAvatarMap(final List<String> channelIds) throws IOException {
-        YouTube.Channels.List search = youtubeClient.channels().list(Arrays.asList("id","snippet"));
-        search.setKey(googleApiKey);
-        search.setId(channelIds);
-
-        ChannelListResponse searchResponse = search.execute();
-        List<Channel> channels = searchResponse.getItems();
-        Map<String, String> idToUrlMap = new HashMap<>();
-        for(Channel channel : channels) {
-            if(StringUtils.isNotEmpty(channel.getSnippet().getThumbnails().getDefault().getUrl())) {
-                idToUrlMap.put(channel.getId(), channel.getSnippet().getThumbnails().getDefault().getUrl());
-            } else {
-                idToUrlMap.put(channel.getId(), "https://cdn.discordapp.com/icons/291983345133289476/4737f24e20bbe4e78104819daffe0bb1.png?size=256");
-            }
+            errorReporter.report(adminChannelId, "Error while syncing event status", ex);
         }
-        return idToUrlMap;
     }
 
     public Command addYoutubeEvent() {
@@ -177,53 +266,28 @@ public class EventCommands {
         });
 
         addYTEventCommand.addArgument(urlArgument);
-        addYTEventCommand.setOnAction(event -> {
-            event.getResponder().respondLater().thenAccept(updater -> {
-                updater.setContent("Adding event").update();
+        addYTEventCommand.setOnAction(event -> commandRunner.run(event, "addytevent", actionEvent -> {
+            ArgumentResult[] args = actionEvent.getArguments();
 
-                ArgumentResult[] args = event.getArguments();
+            Matcher regexMatcher = args[0].get();
+            String youtubeId = regexMatcher.group(1);
 
-                Matcher regexMatcher = args[0].get();
-                String youtubeId = regexMatcher.group(1);
-
-                try {
-                    YouTube.Videos.List search = youtubeClient.videos().list(Arrays.asList("id","snippet"));
-                    search.setKey(googleApiKey);
-                    search.setId(Collections.singletonList(youtubeId));
-                    //search.setFields("items(id/kind,id/videoId,snippet/title,snippet/thumbnails/default/url,snippet/liveBroadcastContent)");
+            Video stream = youTubeManager.getVideoWithStreamingDetails(youtubeId);
+            if (stream == null) {
+                return "Unable to find video with submitted id";
+            }
 
-                    VideoListResponse searchResponse = search.execute();
-                    List<Video> searchResultList = searchResponse.getItems();
-                    if (searchResultList != null && searchResultList.size() == 1) {
-                        logger.info("found video");
-                        Video stream = searchResultList.get(0);
-                        if("upcoming".equalsIgnoreCase(stream.getSnippet().getLiveBroadcastContent())) {
-                            Event ytEvent = new Event(youtubeId);
-                            eventRepository.save(ytEvent);
-                        } else {
-                            event.getResponder().followUp()
-                                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                                    .setContent(String.format("Event is not in upcoming state. State = %s", stream.getSnippet().getLiveBroadcastContent()))
-                                    .send();
-                            return;
-                        }
-                    } else {
-                        event.getResponder().followUp()
-                                .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                                .setContent("Unable to find video with submitted id")
-                                .send();
-                        return;
-                    }
-                } catch(IOException ioEx) {
-                    event.getResponder().followUp()
-                            .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                            .setContent("Adding Event Failed + " + ioEx.getMessage())
-                            .send();
-                    return;
-                }
-            });
+            logger.info("found video");
+            if (!"upcoming".equalsIgnoreCase(stream.getSnippet().getLiveBroadcastContent())) {
+                return String.format("Event is not in upcoming state. State = %s", stream.getSnippet().getLiveBroadcastContent());
+            }
 
-        });
+            Event ytEvent = new Event(youtubeId);
+            ytEvent.setScheduledStartTime(getScheduledStartTime(stream));
+            eventRepository.save(ytEvent);
+            webSubSubscriber.register(stream.getSnippet().getChannelId());
+            return String.format("Event added: %s", stream.getSnippet().getTitle());
+        }));
 
         return addYTEventCommand;
     }
@@ -231,26 +295,24 @@ public class EventCommands {
     public Command clear() {
         SlashCommand clearCommand = new SlashCommand("clearevents", "Clear Completed Events");
 
-        clearCommand.setOnAction(event -> {
+        clearCommand.setOnAction(event -> commandRunner.run(event, "clearevents", actionEvent -> {
             List<Event> events = eventRepository.findByStatus(EventStatus.LIVE);
-            eventRepository.deleteAll(events);
-
-            event.getResponder().respondNow()
-                    .setContent("Events cleared")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+            announcementDispatcher.deleteEvents(events.stream().map(Event::getId).collect(Collectors.toList()));
+            return "Events cleared";
+        }));
         return clearCommand;
     }
 
-    private EmbedBuilder constructEmbed(Video video, Map<String, String> channelIdToAvatarMap) {
-        return new EmbedBuilder()
-                .setAuthor(video.getSnippet().getChannelTitle())
-                .setTitle(video.getSnippet().getTitle())
-                .setDescription("Stream has just gone live!")
-                .setColor(Color.YELLOW)
-                .setThumbnail(channelIdToAvatarMap.get(video.getSnippet().getChannelId()))
-                .setImage(video.getSnippet().getThumbnails().getMaxres().getUrl())
-                .setUrl(String.format("https://www.youtube.com/watch?v=%s", video.getId()));
+    private Instant getScheduledStartTime(Video video) {
+        if (video.getLiveStreamingDetails() == null
+                || StringUtils.isEmpty(video.getLiveStreamingDetails().getScheduledStartTime())) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(video.getLiveStreamingDetails().getScheduledStartTime()).toInstant();
+        } catch (DateTimeParseException ex) {
+            logger.warn("Unable to parse scheduled start time for {}", video.getId());
+            return null;
+        }
     }
 }
@@ -0,0 +1,180 @@
+package tv.racespot.racespotlivebot.service.commands;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.s3ns3iw00.jcommands.Command;
+import me.s3ns3iw00.jcommands.type.SlashCommand;
+import org.javacord.api.DiscordApi;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.server.Server;
+import org.javacord.api.event.message.reaction.ReactionAddEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.Workload;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.SendPriority;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+import static tv.racespot.racespotlivebot.util.TableFormatter.formatBlock;
+import static tv.racespot.racespotlivebot.util.TableFormatter.formatPage;
+
+/**
+ * Builds listing commands that fetch and render one page at a time. When a listing has more
+ * than one page the reply gets previous/next reactions which swap the page in place.
+ */
+public class ListingPager {
+
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+    private static final String PREVIOUS_PAGE = "◀";
+    private static final String NEXT_PAGE = "▶";
+
+    @Value("${listing.page_size:15}")
+    private int pageSize;
+    @Value("${listing.navigation_minutes:10}")
+    private long navigationMinutes;
+
+    private final DiscordApi api;
+    private final CommandRunner commandRunner;
+    private final WorkExecutor workExecutor;
+    private final OutboundMessageQueue outboundQueue;
+    private final LeaderElection leaderElection;
+
+    private final Logger logger;
+
+    public ListingPager(
+            final DiscordApi api,
+            final CommandRunner commandRunner,
+            final WorkExecutor workExecutor,
+            final OutboundMessageQueue outboundQueue,
+            final LeaderElection leaderElection) {
+        this.api = api;
+        this.commandRunner = commandRunner;
+        this.workExecutor = workExecutor;
+        this.outboundQueue = outboundQueue;
+        this.leaderElection = leaderElection;
+
+        this.logger = LoggerFactory.getLogger(ListingPager.class);
+    }
+
+    public Command listing(
+            final String commandName,
+            final String description,
+            final Listing listing) {
+        SlashCommand command = new SlashCommand(commandName, description);
+
+        command.setOnAction(event -> {
+            AtomicInteger totalPages = new AtomicInteger();
+            commandRunner.runPublic(event, commandName, actionEvent -> {
+                Page<String[]> page = listing.source.fetch(PageRequest.of(0, pageSize));
+                totalPages.set(page.getTotalPages());
+                return render(listing, page);
+            }, message -> {
+                if (totalPages.get() > 1) {
+                    attachNavigation(message, listing);
+                }
+            });
+        });
+
+        return command;
+    }
+
+    private void attachNavigation(final Message message, final Listing listing) {
+        AtomicInteger currentPage = new AtomicInteger();
+        message.addReactions(PREVIOUS_PAGE, NEXT_PAGE);
+        message.addReactionAddListener(reaction -> {
+            if (reaction.getUserId() == api.getYourself().getId()
+                    || !leaderElection.isLeaderForServer(reaction.getServer().map(Server::getId))) {
+                return;
+            }
+            try (LogContext ignored = LogContext.begin("reaction")) {
+                workExecutor.execute(Workload.REACTION, () -> turnPage(reaction, message, listing, currentPage))
+                        .exceptionally(ex -> {
+                            logger.warn("Unable to turn {} page: {}", listing.title, ex.getMessage());
+                            return null;
+                        });
+            }
+        }).removeAfter(navigationMinutes, TimeUnit.MINUTES);
+    }
+
+    private void turnPage(
+            final ReactionAddEvent reaction,
+            final Message message,
+            final Listing listing,
+            final AtomicInteger currentPage) {
+        int step;
+        if (reaction.getEmoji().equalsEmoji(NEXT_PAGE)) {
+            step = 1;
+        } else if (reaction.getEmoji().equalsEmoji(PREVIOUS_PAGE)) {
+            step = -1;
+        } else {
+            return;
+        }
+        reaction.removeReaction();
+
+        // two quick clicks run on different reaction workers; each must step from the page the
+        // other left behind and queue its edit after the other's
+        synchronized (currentPage) {
+            int target = currentPage.get() + step;
+            if (target < 0) {
+                return;
+            }
+            Page<String[]> page = listing.source.fetch(PageRequest.of(target, pageSize));
+            if (target >= page.getTotalPages()) {
+                return;
+            }
+            currentPage.set(target);
+            outboundQueue.edit(
+                    SendPriority.INTERACTIVE,
+                    message.getChannel().getId(),
+                    message.getId(),
+                    render(listing, page),
+                    null);
+        }
+    }
+
+    private String render(final Listing listing, final Page<String[]> page) {
+        if (page.getTotalElements() == 0) {
+            return formatBlock(listing.title, listing.emptyMessage);
+        }
+        return formatPage(
+                listing.title,
+                listing.headers,
+                page.getContent(),
+                page.getNumber(),
+                page.getTotalPages(),
+                page.getTotalElements(),
+                MAX_MESSAGE_LENGTH);
+    }
+
+    @FunctionalInterface
+    public interface PageSource {
+
+        Page<String[]> fetch(Pageable pageable);
+    }
+
+    public static class Listing {
+
+        private final String title;
+        private final String emptyMessage;
+        private final String[] headers;
+        private final PageSource source;
+
+        public Listing(
+                final String title,
+                final String emptyMessage,
+                final String[] headers,
+                final PageSource source) {
+            this.title = title;
+            this.emptyMessage = emptyMessage;
+            this.headers = headers;
+            this.source = source;
+        }
+    }
+}
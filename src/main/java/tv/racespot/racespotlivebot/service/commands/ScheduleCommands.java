@@ -1,34 +1,50 @@
 package tv.racespot.racespotlivebot.service.commands;
 
 import me.s3ns3iw00.jcommands.Command;
+import me.s3ns3iw00.jcommands.argument.type.ValueArgument;
 import me.s3ns3iw00.jcommands.type.SlashCommand;
 import org.apache.commons.lang3.StringUtils;
 import org.javacord.api.DiscordApi;
 import org.javacord.api.entity.channel.ServerTextChannel;
-import org.javacord.api.entity.message.Message;
 import org.javacord.api.entity.message.MessageBuilder;
 import org.javacord.api.entity.message.MessageFlag;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
 import org.javacord.api.entity.server.Server;
 import org.javacord.api.entity.user.User;
 import org.javacord.api.event.message.reaction.ReactionAddEvent;
-import org.javacord.api.interaction.callback.InteractionCallbackDataFlag;
+import org.javacord.api.interaction.SlashCommandOptionType;
 import org.javacord.api.listener.message.reaction.ReactionAddListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.DigestUtils;
 import tv.racespot.racespotlivebot.data.*;
+import tv.racespot.racespotlivebot.service.AvailabilityPool;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.ScheduleIndex;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.Workload;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.SendPriority;
+import tv.racespot.racespotlivebot.service.reminders.ReminderService;
 import tv.racespot.racespotlivebot.service.rest.SheetsManager;
+import tv.racespot.racespotlivebot.util.LogContext;
 
 import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
-import static tv.racespot.racespotlivebot.util.MessageUtil.*;
-
 public class ScheduleCommands {
 
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+
     private final String RACESPOT_DISCORD_IMAGE =
             "https://images-ext-2.discordapp.net/external/1VFV1ZRDAahXbuMLichmZRhPSe2qhyhtvgI0zxwTyl4/https/yt3.ggpht.com/ytc/AAUvwnjVGjj07oMFkJ6fnpkO-ac8h2895p49cDK17i9_Pw%3Ds88-c-k-c0x00ffffff-no-rj";
 
@@ -48,6 +64,15 @@ public class ScheduleCommands {
     private final ScheduledEventRepository scheduleRepository;
     private final UserMappingRepository userRepository;
     private final SeriesLogoRepository seriesLogoRepository;
+    private final ScheduleIndex scheduleIndex;
+    private final ReminderService reminderService;
+    private final AvailabilityPool availabilityPool;
+
+    private final WorkExecutor workExecutor;
+    private final CommandRunner commandRunner;
+    private final OutboundMessageQueue outboundQueue;
+    private final ErrorReporter errorReporter;
+    private final LeaderElection leaderElection;
 
     private DiscordApi api;
 
@@ -56,49 +81,65 @@ public class ScheduleCommands {
             final SheetsManager sheetsManager,
             final ScheduledEventRepository scheduledEventRepository,
             final UserMappingRepository userMappingRepository,
-            final SeriesLogoRepository seriesLogoRepository) {
+            final SeriesLogoRepository seriesLogoRepository,
+            final ScheduleIndex scheduleIndex,
+            final ReminderService reminderService,
+            final AvailabilityPool availabilityPool,
+            final WorkExecutor workExecutor,
+            final CommandRunner commandRunner,
+            final OutboundMessageQueue outboundQueue,
+            final ErrorReporter errorReporter,
+            final LeaderElection leaderElection) {
         this.api = api;
         this.sheetsManager = sheetsManager;
         this.scheduleRepository = scheduledEventRepository;
         this.userRepository = userMappingRepository;
         this.seriesLogoRepository = seriesLogoRepository;
+        this.scheduleIndex = scheduleIndex;
+        this.reminderService = reminderService;
+        this.availabilityPool = availabilityPool;
+        this.workExecutor = workExecutor;
+        this.commandRunner = commandRunner;
+        this.outboundQueue = outboundQueue;
+        this.errorReporter = errorReporter;
+        this.leaderElection = leaderElection;
 
         this.logger = LoggerFactory.getLogger(ScheduleCommands.class);
     }
 
+    /**
+     * Reloads the schedule, reminders and availability from the database, which another replica
+     * may have changed while it led.
+     */
+    public void reloadIndexes() {
+        workExecutor.execute(Workload.SCHEDULED, () -> {
+            scheduleIndex.rebuild();
+            reminderService.rebuild();
+            availabilityPool.rebuild();
+        }).exceptionally(ex -> {
+            logger.error("Reloading the schedule failed: {}", ex.getMessage());
+            return null;
+        });
+    }
+
     public Command clearSchedule() {
         SlashCommand clearScheduleCommand = new SlashCommand("clearschedule", "Clear Weekly Schedule");
 
-        clearScheduleCommand.setOnAction(event -> {
-            try {
-                List<ScheduledEvent> events = scheduleRepository.findAll();
-                long[] messageIds =
-                        events.stream().map(ScheduledEvent::getdMessageId).mapToLong(i -> i).toArray();
-                List<ReactionAddListener> listeners = api.getReactionAddListeners();
-                for (ReactionAddListener listener : listeners) {
-                    api.removeListener(listener);
-                }
-                api.getTextChannelById(scheduleChannelId).get().deleteMessages(messageIds).join();
-                scheduleRepository.deleteAll(events);
-                event.getResponder().respondNow()
-                        .setContent(String.format("Schedule cleared!"))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-            } catch (Exception ex) {
-                logger.error(ex.getMessage());
-                ex.printStackTrace();
-                ServerTextChannel
-                        channel = api.getServerTextChannelById(errorChannelId).get();
-                event.getResponder().respondNow()
-                        .setContent(String.format("Error while clearing schedule: %s", ex.getMessage()))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                sendStackTraceToChannel(
-                        "Error when clearing schedule",
-                        channel,
-                        ex);
+        clearScheduleCommand.setOnAction(event -> commandRunner.run(event, "clearschedule", actionEvent -> {
+            List<ScheduledEvent> events = scheduleRepository.findAll();
+            long[] messageIds =
+                    events.stream().map(ScheduledEvent::getdMessageId).mapToLong(i -> i).toArray();
+            List<ReactionAddListener> listeners = api.getReactionAddListeners();
+            for (ReactionAddListener listener : listeners) {
+                api.removeListener(listener);
             }
-        });
+            api.getTextChannelById(scheduleChannelId).get().deleteMessages(messageIds).join();
+            scheduleRepository.deleteInBatch(events);
+            scheduleIndex.clear();
+            reminderService.cancelAll();
+            availabilityPool.clear();
+            return "Schedule cleared!";
+        }));
 
         return clearScheduleCommand;
     }
@@ -106,62 +147,69 @@ public class ScheduleCommands {
     public Command updateSchedule() {
         SlashCommand updateScheduleCommand = new SlashCommand("updateschedule", "Update Weekly Schedule");
 
-        updateScheduleCommand.setOnAction(event -> {
-            event.getResponder().respondLater().thenAccept(updater -> {
-                updater.setContent("Updating schedule").update();
-
-                try {
-                    Server server = event.getChannel().get().asServerTextChannel().get().getServer();
-
-                    ServerTextChannel scheduleChannel = server.getTextChannelById(scheduleChannelId).get();
-                    List<ScheduledEvent> events = sheetsManager.getWeeklyEvents();
-                    for (ScheduledEvent singleEvent : events) {
-                        logger.info(String.format("Checking %s", singleEvent.getSeriesName()));
-                        ScheduledEvent existingEvent = scheduleRepository.findByIndex(singleEvent.getIndex());
-
-                        if (existingEvent == null) {
-                            ServerTextChannel
-                                    errorChannel = api.getServerTextChannelById(errorChannelId).get();
-                            new MessageBuilder()
-                                    .append(String.format("Saved Event for %s cannot be found. Please clear and reimport" +
-                                            " schedule.", singleEvent.getSeriesName()))
-                                    .send(errorChannel).join();
-                            continue;
-                        }
-
-                        if (hasTalentChanged(existingEvent, singleEvent)) {
-                            logger.info(String.format("%s has had talent updates", existingEvent.getSeriesName()));
-                            List<UserMapping> users = getUserMappingsForEvent(singleEvent);
-                            updateTalent(existingEvent, singleEvent, users, server);
-
-                            logger.info(String.format("Editing message with id %d", existingEvent.getdMessageId()));
-                            Message scheduleMessage = scheduleChannel.getMessageById(existingEvent.getdMessageId()).join();
-                            String tagMessage = getMentionStringFromMappings(server, users);
-                            scheduleMessage.edit(tagMessage, constructScheduleEmbed(existingEvent));
-
-                            scheduleRepository.save(existingEvent);
-                        }
+        updateScheduleCommand.setOnAction(event -> commandRunner.run(event, "updateschedule", actionEvent -> {
+            Server server = actionEvent.getChannel().get().asServerTextChannel().get().getServer();
+
+            long defaultChannelId = Long.parseLong(scheduleChannelId);
+            // an admin re-runs this right after fixing the sheet, so read it as it is now
+            List<ScheduledEvent> events = sheetsManager.refreshWeeklyEvents();
+            List<ScheduledEvent> changedEvents = new ArrayList<>();
+            List<CompletableFuture<Void>> edits = new ArrayList<>();
+            Map<String, UserMapping> talentByName = getTalentByName();
+            TalentDigest digest = new TalentDigest();
+            for (ScheduledEvent singleEvent : events) {
+                CommandRunner.checkTimedOut();
+                ScheduledEvent existingEvent = findStoredEvent(singleEvent);
+
+                if (existingEvent == null) {
+                    errorReporter.report(errorChannelId, "schedule.missing_event", String.format(
+                            "Saved Event for %s cannot be found. Please clear and reimport schedule.", singleEvent.getSeriesName()));
+                    continue;
+                }
+
+                List<UserMapping> users = getUserMappingsForEvent(singleEvent);
+                if (hasTalentChanged(existingEvent, singleEvent)) {
+                    logger.info("{} has had talent updates", existingEvent.getSeriesName());
+                    updateTalent(existingEvent, singleEvent, talentByName, server, digest);
+                }
+                boolean startChanged = !Objects.equals(existingEvent.getStartsAt(), singleEvent.getStartsAt());
+                applySheetValues(existingEvent, singleEvent);
+
+                String tagMessage = getMentionStringFromMappings(server, users);
+                String imageUrl = getImageUrl(existingEvent);
+                String renderHash = getRenderHash(existingEvent, tagMessage, imageUrl);
+                if (renderHash.equals(existingEvent.getRenderHash())) {
+                    if (startChanged) {
+                        // nothing to edit on Discord, but the stored start drives reminders and queries
+                        changedEvents.add(existingEvent);
                     }
-                    event.getResponder().respondNow()
-                            .setContent(String.format("Schedule Updated!"))
-                            .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                            .respond();
-                } catch (Exception ex) {
-                    logger.error(ex.getMessage());
-                    ex.printStackTrace();
-                    ServerTextChannel
-                            channel = api.getServerTextChannelById(errorChannelId).get();
-                    event.getResponder().respondNow()
-                            .setContent(String.format("Error while updating schedule: %s", ex.getMessage()))
-                            .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                            .respond();
-                    sendStackTraceToChannel(
-                            "Error when updating schedule",
-                            channel,
-                            ex);
+                    continue;
                 }
-            });
-        });
+
+                logger.info("Editing message with id {} for {}",
+                        existingEvent.getdMessageId(), existingEvent.getSeriesName());
+                // the stored hash only moves on once Discord has the new content
+                edits.add(outboundQueue.edit(
+                                SendPriority.SCHEDULE,
+                                existingEvent.getdChannelId() != null ? existingEvent.getdChannelId() : defaultChannelId,
+                                existingEvent.getdMessageId(),
+                                tagMessage,
+                                constructScheduleEmbed(existingEvent, imageUrl))
+                        .thenRun(() -> existingEvent.setRenderHash(renderHash)));
+                changedEvents.add(existingEvent);
+            }
+            int editCount = edits.size();
+            awaitEdits(edits);
+            reportParseErrors(server);
+            for (ScheduledEvent saved : scheduleRepository.saveAll(changedEvents)) {
+                scheduleIndex.put(saved);
+                reminderService.schedule(saved);
+            }
+            sendTalentDigest(digest, server, talentByName);
+            sendAvailabilitySuggestions(availabilityPool.suggest(scheduleIndex.getEvents()));
+            logger.info("Schedule update edited {} of {} messages", editCount, events.size());
+            return "Schedule Updated!";
+        }));
 
         return updateScheduleCommand;
     }
@@ -169,160 +217,350 @@ public class ScheduleCommands {
     public Command postSchedule() {
         SlashCommand postScheduleCommand = new SlashCommand("postschedule", "Post Weekly Schedule");
 
-        postScheduleCommand.setOnAction(event -> {
-            event.getResponder().respondLater().thenAccept(updater -> {
-                updater.setContent("Posting schedule").update();
-            });
-
-            try {
-                Server server = event.getChannel().get().asServerTextChannel().get().getServer();
-
-                ServerTextChannel channel = server.getTextChannelById(scheduleChannelId).get();
-                List<ScheduledEvent> events = sheetsManager.getWeeklyEvents();
-                for (ScheduledEvent singleEvent : events) {
-                    List<UserMapping> users = getUserMappingsForEvent(singleEvent);
-                    String tagMessage = getMentionStringFromMappings(server, users);
-                    new MessageBuilder()
-                            .append(tagMessage)
-                            .setEmbed(constructScheduleEmbed(singleEvent))
-                            .send(channel)
-                            .thenAcceptAsync(sentMessage -> {
-                                singleEvent.setdMessageId(sentMessage.getId());
-                                scheduleRepository.save(singleEvent);
-                                sentMessage.addReactionAddListener(new ReactionAddListener() {
-                                       @Override
-                                       public void onReactionAdd(ReactionAddEvent reaction) {
-                                           ScheduledEvent event =
-                                                   scheduleRepository.findBydMessageId(reaction.getMessageId());
-                                           UserMapping mapping = userRepository.findBydUserId(reaction.getUserId());
-                                           try {
-                                               if (isUserOnEvent(event, mapping) && reaction.getEmoji()
-                                                       .equalsEmoji("\uD83C\uDDFE")) {
-                                                   // check user is on schedule list, confirm attendance if present
-                                                   sheetsManager
-                                                           .updateAttendance(event, true, mapping.getTalentName());
-                                                   logger.info("yes");
-                                               } else if (isUserOnEvent(event, mapping) && reaction.getEmoji()
-                                                       .equalsEmoji("\uD83C\uDDF3")) {
-                                                   // check if user is on schedule list, mark down absent if present
-                                                   sheetsManager
-                                                           .updateAttendance(event, false, mapping.getTalentName());
-                                                   logger.info("no");
-                                               } else if (reaction.getEmoji().equalsEmoji("\uD83C\uDD93")) {
-                                                   // add to free list
-                                                   logger.info("free");
-                                               }
-                                           } catch (Exception ex) {
-                                               logger.info(ex.getMessage());
-                                               ex.printStackTrace();
-                                           }
-                                       }
-                                   }
-                                ).removeAfter(5, TimeUnit.DAYS);
-                            });
-                }
-                event.getResponder().respondNow()
-                        .setContent(String.format("Schedule Posted!"))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-            } catch (Exception ex) {
-                logger.error(ex.getMessage());
-                ex.printStackTrace();
-                ServerTextChannel
-                        channel = api.getServerTextChannelById(errorChannelId).get();
-                event.getResponder().respondNow()
-                        .setContent(String.format("Error while posting schedule: %s", ex.getMessage()))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                sendStackTraceToChannel(
-                        "Error when posting schedule",
-                        channel,
-                        ex);
+        postScheduleCommand.setOnAction(event -> commandRunner.run(event, "postschedule", actionEvent -> {
+            Server server = actionEvent.getChannel().get().asServerTextChannel().get().getServer();
+
+            ServerTextChannel channel = server.getTextChannelById(scheduleChannelId).get();
+            // posting starts a new week, so read the sheet as it is now
+            List<ScheduledEvent> events = sheetsManager.refreshWeeklyEvents();
+            reportParseErrors(server);
+            // saving each posted message is blocking work, so it runs on the command lane too
+            Executor commandLane = workExecutor.executor(Workload.COMMAND);
+            for (ScheduledEvent singleEvent : events) {
+                CommandRunner.checkTimedOut();
+                List<UserMapping> users = getUserMappingsForEvent(singleEvent);
+                String tagMessage = getMentionStringFromMappings(server, users);
+                String imageUrl = getImageUrl(singleEvent);
+                outboundQueue.send(
+                                SendPriority.SCHEDULE,
+                                channel,
+                                new MessageBuilder()
+                                        .append(tagMessage)
+                                        .setEmbed(constructScheduleEmbed(singleEvent, imageUrl)))
+                        .thenAcceptAsync(sentMessage -> {
+                            singleEvent.setdMessageId(sentMessage.getId());
+                            singleEvent.setdChannelId(sentMessage.getChannel().getId());
+                            singleEvent.setRenderHash(getRenderHash(singleEvent, tagMessage, imageUrl));
+                            singleEvent.setCreatedAt(Instant.now());
+                            ScheduledEvent saved = scheduleRepository.save(singleEvent);
+                            scheduleIndex.put(saved);
+                            reminderService.schedule(saved);
+                            sentMessage.addReactionAddListener(reaction -> {
+                                try (LogContext ignored = LogContext.begin("reaction")) {
+                                    workExecutor.execute(Workload.REACTION, () -> handleScheduleReaction(reaction))
+                                            .exceptionally(ex -> {
+                                                logger.warn("Dropped reaction on message {}: {}",
+                                                        reaction.getMessageId(), ex.getMessage());
+                                                return null;
+                                            });
+                                }
+                            }).removeAfter(5, TimeUnit.DAYS);
+                        }, commandLane)
+                        .exceptionally(ex -> {
+                            logger.error("Unable to record schedule message for {}: {}",
+                                    singleEvent.getSeriesName(), ex.getMessage());
+                            return null;
+                        });
             }
-        });
+            return "Schedule Posted!";
+        }));
 
         return postScheduleCommand;
     }
 
-    private List<String> getTalentNotificationMessages(
-            final ScheduledEvent existingEvent,
-            final ScheduledEvent singleEvent,
-            final Server server,
-            final List<UserMapping> users) {
-        List<String> messages = new ArrayList<>();
-        if (users.size() == 0) {
-            return messages;
-        }
-        if(!existingEvent.getProducer().equalsIgnoreCase(singleEvent.getProducer())) {
-            Optional<UserMapping> mapping = users.stream().filter((m) -> m.getTalentName()
-                    .equalsIgnoreCase(singleEvent.getProducer())).findFirst();
+    public Command mySchedule() {
+        SlashCommand myScheduleCommand = new SlashCommand("myschedule", "List the events you are on this week");
 
-            if(mapping.isPresent()) {
-                Optional<User> userOptional = server.getMemberById(mapping.get().getdUserId());
-                userOptional.ifPresent(user -> messages.add(getUpdateMessageForTalent("Producer", singleEvent, user)));;
+        myScheduleCommand.setOnAction(event -> commandRunner.run(event, "myschedule", actionEvent -> {
+            User sender = actionEvent.getSender();
+            if (!scheduleIndex.isTalent(sender.getId())) {
+                return String.format("No talent registered for %s", sender.getDiscriminatedName());
             }
-        }
-        if(!existingEvent.getLeadCommentator().equalsIgnoreCase(singleEvent.getLeadCommentator())) {
-            Optional<UserMapping> mapping = users.stream().filter((m) -> m.getTalentName()
-                    .equalsIgnoreCase(singleEvent.getLeadCommentator())).findFirst();
-
-            if(mapping.isPresent()) {
-                Optional<User> userOptional = server.getMemberById(mapping.get().getdUserId());
-                userOptional.ifPresent(user -> messages.add(getUpdateMessageForTalent("Lead Commentator", singleEvent, user)));;
+            List<ScheduleIndex.Assignment> assignments = scheduleIndex.findAssignments(sender.getId());
+            if (assignments.isEmpty()) {
+                return "You are not on any scheduled events";
             }
-        }
+            StringBuilder builder = new StringBuilder("Your events:\n");
+            for (ScheduleIndex.Assignment assignment : assignments) {
+                builder.append(String.format("%s as %s\n", describe(assignment.getEvent()), assignment.getRole()));
+            }
+            return builder.toString();
+        }));
 
-        if(StringUtils.isNotEmpty(singleEvent.getColourOne()) && !singleEvent.getColourOne().equalsIgnoreCase(existingEvent.getColourOne())) {
-            Optional<UserMapping> mapping = users.stream().filter((m) -> m.getTalentName()
-                    .equalsIgnoreCase(singleEvent.getColourOne())).findFirst();
+        return myScheduleCommand;
+    }
 
-            if(mapping.isPresent()) {
-                Optional<User> userOptional = server.getMemberById(mapping.get().getdUserId());
-                userOptional.ifPresent(user -> messages.add(getUpdateMessageForTalent("Color Commentator", singleEvent, user)));;
+    public Command findEvent() {
+        SlashCommand findEventCommand = new SlashCommand("findevent", "Find scheduled events by series or date");
+
+        ValueArgument queryArgument = new ValueArgument("query", "Series name and/or date, e.g. \"gt3\" or \"06/09\"", SlashCommandOptionType.STRING);
+
+        findEventCommand.addArgument(queryArgument);
+        findEventCommand.setOnAction(event -> commandRunner.run(event, "findevent", actionEvent -> {
+            String query = actionEvent.getArguments()[0].get();
+            List<ScheduledEvent> events = scheduleIndex.find(query);
+            StringBuilder builder = new StringBuilder();
+            if (events.isEmpty()) {
+                // rows added to the sheet since the last post; a snapshot up to a TTL old will do
+                events = ScheduleIndex.over(sheetsManager.getWeeklyEvents()).find(query);
+                if (events.isEmpty()) {
+                    return String.format("No scheduled events match \"%s\"", query);
+                }
+                builder.append("Not posted yet:\n");
             }
-        }
+            for (ScheduledEvent scheduledEvent : events) {
+                builder.append(String.format("%s | Producer: %s | Commentators: %s\n",
+                        describe(scheduledEvent),
+                        StringUtils.defaultIfEmpty(scheduledEvent.getProducer(), "TBD"),
+                        getCommentatorString(scheduledEvent)));
+            }
+            return builder.toString();
+        }));
 
-        if(StringUtils.isNotEmpty(singleEvent.getColourTwo()) && !singleEvent.getColourTwo().equalsIgnoreCase(existingEvent.getColourTwo())) {
-            Optional<UserMapping> mapping = users.stream().filter((m) -> m.getTalentName()
-                    .equalsIgnoreCase(singleEvent.getColourTwo())).findFirst();
+        return findEventCommand;
+    }
 
-            if(mapping.isPresent()) {
-                Optional<User> userOptional = server.getMemberById(mapping.get().getdUserId());
-                userOptional.ifPresent(user -> messages.add(getUpdateMessageForTalent("Color Commentator", singleEvent, user)));;
+    private ScheduledEvent findStoredEvent(final ScheduledEvent singleEvent) {
+        ScheduledEvent existingEvent = scheduleRepository.findBySourceGidAndIndex(singleEvent.getSourceGid(), singleEvent.getIndex());
+        if (existingEvent == null) {
+            // posted before rows were tagged with their tab; adopt it into the tab it came from
+            existingEvent = scheduleRepository.findFirstBySourceGidIsNullAndIndex(singleEvent.getIndex());
+            if (existingEvent != null) {
+                existingEvent.setSourceGid(singleEvent.getSourceGid());
             }
         }
+        return existingEvent;
+    }
 
-        return messages;
+    /**
+     * Waits for the schedule edits to finish. A failed edit keeps its event's old render hash,
+     * so the next update sees the difference and tries the edit again.
+     */
+    private void awaitEdits(final List<CompletableFuture<Void>> edits) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(edits.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException ex) {
+            long failed = edits.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+            logger.warn("{} of {} schedule edits failed and will be retried on the next update: {}",
+                    failed, edits.size(), ex.getCause().getMessage());
+        }
     }
 
-    private String getUpdateMessageForTalent(
-            final String talentRole,
-            final ScheduledEvent singleEvent,
-            User user) {
-        return String.format("%s : You have been assigned to %s as a %s", user.getMentionTag(), singleEvent.getSeriesName(), talentRole);
+    private void reportParseErrors(final Server server) {
+        List<String> errors = sheetsManager.getLastParseErrors();
+        if (errors.isEmpty()) {
+            return;
+        }
+        server.getTextChannelById(errorChannelId).ifPresent(channel -> outboundQueue.send(
+                SendPriority.DIAGNOSTIC,
+                channel,
+                new MessageBuilder().append(StringUtils.abbreviate(
+                        "Schedule rows without a readable start (no reminders or time queries for these):\n"
+                                + String.join("\n", errors),
+                        MAX_MESSAGE_LENGTH))));
+    }
+
+    private void handleScheduleReaction(final ReactionAddEvent reaction) {
+        if (!leaderElection.isLeaderForServer(reaction.getServer().map(Server::getId))) {
+            return;
+        }
+        ScheduledEvent event = scheduleRepository.findBydMessageId(reaction.getMessageId());
+        UserMapping mapping = userRepository.findBydUserId(reaction.getUserId());
+        if (event == null || mapping == null) {
+            return;
+        }
+        try {
+            if (isUserOnEvent(event, mapping) && reaction.getEmoji()
+                    .equalsEmoji("\uD83C\uDDFE")) {
+                // check user is on schedule list, confirm attendance if present
+                sheetsManager
+                        .updateAttendance(event, true, mapping.getTalentName());
+                logger.info("{} confirmed for {}", mapping.getTalentName(), event.getSeriesName());
+            } else if (isUserOnEvent(event, mapping) && reaction.getEmoji()
+                    .equalsEmoji("\uD83C\uDDF3")) {
+                // check if user is on schedule list, mark down absent if present
+                sheetsManager
+                        .updateAttendance(event, false, mapping.getTalentName());
+                logger.info("{} marked absent for {}", mapping.getTalentName(), event.getSeriesName());
+            } else if (reaction.getEmoji().equalsEmoji("\uD83C\uDD93")) {
+                if (availabilityPool.markFree(mapping, event)) {
+                    sendAvailabilitySuggestions(availabilityPool.suggest(scheduleIndex.getEvents()));
+                }
+            }
+        } catch (Exception ex) {
+            logger.warn("Unable to handle reaction on message {}", reaction.getMessageId(), ex);
+        }
     }
 
     private void updateTalent(
             final ScheduledEvent existingEvent,
             final ScheduledEvent singleEvent,
-            final List<UserMapping> users,
-            final Server server) {
+            final Map<String, UserMapping> talentByName,
+            final Server server,
+            final TalentDigest digest) {
 
-        List<String> updateMessages = getTalentNotificationMessages(existingEvent, singleEvent, server, users);
+        recordTalentChange(digest, server, talentByName, existingEvent, singleEvent, "Producer",
+                existingEvent.getProducer(), singleEvent.getProducer());
+        recordTalentChange(digest, server, talentByName, existingEvent, singleEvent, "Lead Commentator",
+                existingEvent.getLeadCommentator(), singleEvent.getLeadCommentator());
+        recordTalentChange(digest, server, talentByName, existingEvent, singleEvent, "Color Commentator",
+                existingEvent.getColourOne(), singleEvent.getColourOne());
+        recordTalentChange(digest, server, talentByName, existingEvent, singleEvent, "Color Commentator",
+                existingEvent.getColourTwo(), singleEvent.getColourTwo());
 
         existingEvent.setProducer(singleEvent.getProducer());
         existingEvent.setLeadCommentator(singleEvent.getLeadCommentator());
         existingEvent.setColourOne(singleEvent.getColourOne());
         existingEvent.setColourTwo(singleEvent.getColourTwo());
+    }
 
-        if (updateMessages.size() > 0) {
-            ServerTextChannel talentChannel = server.getTextChannelById(talentChannelId).get();
-            for(String message : updateMessages) {
-                new MessageBuilder()
-                        .append(message)
-                        .send(talentChannel);
+    private void recordTalentChange(
+            final TalentDigest digest,
+            final Server server,
+            final Map<String, UserMapping> talentByName,
+            final ScheduledEvent existingEvent,
+            final ScheduledEvent singleEvent,
+            final String talentRole,
+            final String previousTalent,
+            final String newTalent) {
+        if (StringUtils.equalsIgnoreCase(StringUtils.defaultString(previousTalent), StringUtils.defaultString(newTalent))) {
+            return;
+        }
+        // the row may hold another event than before when rows shifted, so a removal is described
+        // by the event that was stored and an assignment by the one now on the sheet
+        UserMapping added = StringUtils.isEmpty(newTalent) ? null : talentByName.get(newTalent.toLowerCase());
+        if (added != null) {
+            String description = describeAssignment(singleEvent, talentRole);
+            digest.assigned(added.getdUserId(), getDisplayName(server, added), description, description);
+        }
+        UserMapping removed = StringUtils.isEmpty(previousTalent) ? null : talentByName.get(previousTalent.toLowerCase());
+        if (removed != null) {
+            String description = describeAssignment(existingEvent, talentRole);
+            digest.removed(removed.getdUserId(), getDisplayName(server, removed), description, description);
+        }
+    }
+
+    private static String describeAssignment(final ScheduledEvent event, final String talentRole) {
+        return String.format("%s (%s %s) as %s", event.getSeriesName(), event.getDate(), event.getTime(), talentRole);
+    }
+
+    private String getDisplayName(final Server server, final UserMapping mapping) {
+        return server.getMemberById(mapping.getdUserId())
+                .map(User::getMentionTag)
+                .orElse(mapping.getTalentName());
+    }
+
+    private void sendTalentDigest(
+            final TalentDigest digest,
+            final Server server,
+            final Map<String, UserMapping> talentByName) {
+        if (digest.isEmpty()) {
+            return;
+        }
+
+        ServerTextChannel talentChannel = server.getTextChannelById(talentChannelId).get();
+        List<String> messages = digest.render(MAX_MESSAGE_LENGTH);
+        for (String message : messages) {
+            outboundQueue.send(
+                    SendPriority.SCHEDULE,
+                    talentChannel,
+                    new MessageBuilder().append(message));
+        }
+        logger.info("Sent talent digest for {} talent in {} messages",
+                digest.getUserCount(), messages.size());
+
+        Set<Long> optedIn = new HashSet<>();
+        for (UserMapping mapping : talentByName.values()) {
+            if (mapping.isDmOptIn()) {
+                optedIn.add(mapping.getdUserId());
+            }
+        }
+        for (Long userId : digest.getUserIds()) {
+            if (!optedIn.contains(userId)) {
+                continue;
+            }
+            server.getMemberById(userId).ifPresent(user -> outboundQueue.send(
+                            SendPriority.SCHEDULE,
+                            user,
+                            "user:" + userId,
+                            new MessageBuilder().append(StringUtils.abbreviate(digest.renderForUser(userId), MAX_MESSAGE_LENGTH)))
+                    .exceptionally(ex -> {
+                        logger.warn("Unable to DM talent digest to {}: {}",
+                                user.getDiscriminatedName(), ex.getMessage());
+                        return null;
+                    }));
+        }
+    }
+
+    private void sendAvailabilitySuggestions(final List<AvailabilityPool.Suggestion> suggestions) {
+        if (suggestions.isEmpty()) {
+            return;
+        }
+        Optional<ServerTextChannel> adminChannel = api.getServerTextChannelById(adminChannelId);
+        if (!adminChannel.isPresent()) {
+            logger.warn("Admin channel {} not found, dropped {} talent suggestions", adminChannelId, suggestions.size());
+            return;
+        }
+        List<String> messages = new ArrayList<>();
+        StringBuilder current = new StringBuilder("Free talent for open roles:\n");
+        for (AvailabilityPool.Suggestion suggestion : suggestions) {
+            String line = StringUtils.abbreviate(String.format("%s needs a %s: %s is free",
+                    describe(suggestion.getEvent()), suggestion.getRole(), String.join(", ", suggestion.getTalent())),
+                    MAX_MESSAGE_LENGTH - 1);
+            if (current.length() + line.length() + 1 > MAX_MESSAGE_LENGTH) {
+                messages.add(current.toString());
+                current.setLength(0);
             }
+            current.append(line).append('\n');
         }
+        messages.add(current.toString());
+        for (String message : messages) {
+            outboundQueue.send(SendPriority.SCHEDULE, adminChannel.get(), new MessageBuilder().append(message));
+        }
+        logger.info("Sent {} talent suggestions in {} messages", suggestions.size(), messages.size());
+    }
+
+    private Map<String, UserMapping> getTalentByName() {
+        Map<String, UserMapping> talentByName = new HashMap<>();
+        for (UserMapping mapping : userRepository.findAll()) {
+            talentByName.put(mapping.getTalentName().toLowerCase(), mapping);
+        }
+        return talentByName;
+    }
+
+    private void applySheetValues(final ScheduledEvent existingEvent, final ScheduledEvent singleEvent) {
+        existingEvent.setDate(singleEvent.getDate());
+        existingEvent.setTime(singleEvent.getTime());
+        existingEvent.setStartsAt(singleEvent.getStartsAt());
+        existingEvent.setPublic(singleEvent.isPublic());
+        existingEvent.setSeriesName(singleEvent.getSeriesName());
+        existingEvent.setDescription(singleEvent.getDescription());
+        existingEvent.setStreamLocation(singleEvent.getStreamLocation());
+        existingEvent.setWebcam(singleEvent.isWebcam());
+        existingEvent.setNotes(singleEvent.getNotes());
+        existingEvent.setRed(singleEvent.getRed());
+        existingEvent.setGreen(singleEvent.getGreen());
+        existingEvent.setBlue(singleEvent.getBlue());
+    }
+
+    private String getRenderHash(
+            final ScheduledEvent scheduledEvent,
+            final String tagMessage,
+            final String imageUrl) {
+        // mirrors every value constructScheduleEmbed puts on the message
+        StringJoiner rendered = new StringJoiner("\u0000");
+        rendered.add(tagMessage)
+                .add(scheduledEvent.getSeriesName())
+                .add(scheduledEvent.getDate())
+                .add(scheduledEvent.getTime())
+                .add(String.format("%s,%s,%s", scheduledEvent.getRed(), scheduledEvent.getGreen(), scheduledEvent.getBlue()))
+                .add(imageUrl)
+                .add(String.valueOf(scheduledEvent.getStreamLocation()))
+                .add(String.valueOf(scheduledEvent.getDescription()))
+                .add(String.valueOf(scheduledEvent.getProducer()))
+                .add(getCommentatorString(scheduledEvent))
+                .add(String.valueOf(scheduledEvent.getNotes()));
+        return DigestUtils.md5DigestAsHex(rendered.toString().getBytes(StandardCharsets.UTF_8));
     }
 
     private boolean hasTalentChanged(final ScheduledEvent existingEvent, final ScheduledEvent singleEvent) {
@@ -364,12 +602,12 @@ public class ScheduleCommands {
         return userRepository.findByTalentNameIn(talentNames);
     }
 
-    private EmbedBuilder constructScheduleEmbed(ScheduledEvent scheduledEvent) {
+    private EmbedBuilder constructScheduleEmbed(ScheduledEvent scheduledEvent, String imageUrl) {
         EmbedBuilder builder = new EmbedBuilder()
                 .setTitle(String.format("%s \n%s | %s", scheduledEvent.getSeriesName(), scheduledEvent.getDate(), scheduledEvent.getTime()))
                 //.setDescription(String.format("%s | %s", scheduledEvent.getDate(), scheduledEvent.getTime()))
                 .setColor(new Color(scheduledEvent.getRed(), scheduledEvent.getGreen(), scheduledEvent.getBlue()))
-                .setThumbnail(getImageUrl(scheduledEvent))
+                .setThumbnail(imageUrl)
                 .setFooter(scheduledEvent.getStreamLocation(), RACESPOT_DISCORD_IMAGE);
 
         if (StringUtils.isNotEmpty(scheduledEvent.getDescription())) {
@@ -401,6 +639,10 @@ public class ScheduleCommands {
         return joiner.toString();
     }
 
+    private String describe(final ScheduledEvent scheduledEvent) {
+        return String.format("%s (%s %s)", scheduledEvent.getSeriesName(), scheduledEvent.getDate(), scheduledEvent.getTime());
+    }
+
     private String getImageUrl(ScheduledEvent event) {
         SeriesLogo logo = seriesLogoRepository.findBySeriesNameIgnoreCase(event.getSeriesName());
         if (logo == null) {
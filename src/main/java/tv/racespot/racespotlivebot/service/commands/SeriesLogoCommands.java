@@ -4,19 +4,14 @@ import me.s3ns3iw00.jcommands.Command;
 import me.s3ns3iw00.jcommands.argument.ArgumentResult;
 import me.s3ns3iw00.jcommands.argument.type.ValueArgument;
 import me.s3ns3iw00.jcommands.type.SlashCommand;
-import org.javacord.api.entity.channel.TextChannel;
 import org.javacord.api.entity.message.MessageFlag;
 import org.javacord.api.interaction.SlashCommandOptionType;
-import org.javacord.api.interaction.callback.InteractionCallbackDataFlag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import tv.racespot.racespotlivebot.data.SeriesLogo;
 import tv.racespot.racespotlivebot.data.SeriesLogoRepository;
-
-import java.util.List;
-
-import static tv.racespot.racespotlivebot.util.TableFormatter.printSeries;
+import tv.racespot.racespotlivebot.service.commands.ListingPager.Listing;
 
 public class SeriesLogoCommands {
 
@@ -27,9 +22,16 @@ public class SeriesLogoCommands {
 
     private final SeriesLogoRepository seriesLogoRepository;
 
+    private final CommandRunner commandRunner;
+    private final ListingPager listingPager;
+
     public SeriesLogoCommands(
-            final SeriesLogoRepository seriesLogoRepository) {
+            final SeriesLogoRepository seriesLogoRepository,
+            final CommandRunner commandRunner,
+            final ListingPager listingPager) {
         this.seriesLogoRepository = seriesLogoRepository;
+        this.commandRunner = commandRunner;
+        this.listingPager = listingPager;
 
         this.logger = LoggerFactory.getLogger(SeriesLogoCommands.class);
     }
@@ -42,19 +44,15 @@ public class SeriesLogoCommands {
         ValueArgument imageUrlArgument = new ValueArgument("imageUrl", "Image URL", SlashCommandOptionType.STRING);
 
         addSeriesCommand.addArgument(seriesNameArgument, imageUrlArgument);
-        addSeriesCommand.setOnAction(event -> {
-            ArgumentResult[] args = event.getArguments();
+        addSeriesCommand.setOnAction(event -> commandRunner.run(event, "addseries", actionEvent -> {
+            ArgumentResult[] args = actionEvent.getArguments();
 
             String seriesName = args[0].get();
             String imageUrl = args[1].get();
 
             SeriesLogo existingLogo = seriesLogoRepository.findBySeriesNameIgnoreCase(seriesName);
             if (existingLogo != null) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Series already exists with name %s", seriesName))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Series already exists with name %s", seriesName);
             }
 
             SeriesLogo mapping = new SeriesLogo();
@@ -62,30 +60,19 @@ public class SeriesLogoCommands {
             mapping.setThumbnailUrl(imageUrl);
             seriesLogoRepository.save(mapping);
 
-            event.getResponder().respondNow()
-                    .setContent("Series added")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+            return "Series added";
+        }));
 
         return addSeriesCommand;
     }
 
     public Command listSeries() {
-        SlashCommand listSeriesCommand = new SlashCommand("listseries", "List series in cache.");
-
-        listSeriesCommand.setOnAction(event -> {
-            TextChannel channel = event.getChannel().get();
-
-            List<SeriesLogo> logos = seriesLogoRepository.findAll();
-            printSeries(logos, channel);
-            event.getResponder().respondNow()
-                    .setContent("Series posted")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
-
-        return listSeriesCommand;
+        return listingPager.listing("listseries", "List series in cache.", new Listing(
+                "Series",
+                "No registered series found",
+                new String[] {"Series", "URL"},
+                pageable -> seriesLogoRepository.findSeriesSummaries(pageable)
+                        .map(row -> new String[] {row.getSeriesName(), row.getThumbnailUrl()})));
     }
 
     public Command removeSeries() {
@@ -95,27 +82,20 @@ public class SeriesLogoCommands {
         ValueArgument seriesNameArgument = new ValueArgument("seriesName", "Series Name", SlashCommandOptionType.STRING);
 
         removeSeriesCommand.addArgument(seriesNameArgument);
-        removeSeriesCommand.setOnAction(event -> {
-            ArgumentResult[] args = event.getArguments();
+        removeSeriesCommand.setOnAction(event -> commandRunner.run(event, "removeseries", actionEvent -> {
+            ArgumentResult[] args = actionEvent.getArguments();
 
             String seriesName = args[0].get();
 
             SeriesLogo existingLogo = seriesLogoRepository.findBySeriesNameIgnoreCase(seriesName);
             if(existingLogo == null) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Series does not exist with name %s", seriesName))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Series does not exist with name %s", seriesName);
             }
 
             seriesLogoRepository.delete(existingLogo);
 
-            event.getResponder().respondNow()
-                    .setContent("Series deleted")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+            return "Series deleted";
+        }));
 
         return removeSeriesCommand;
     }
@@ -4,21 +4,21 @@ import me.s3ns3iw00.jcommands.Command;
 import me.s3ns3iw00.jcommands.argument.ArgumentResult;
 import me.s3ns3iw00.jcommands.argument.type.ValueArgument;
 import me.s3ns3iw00.jcommands.type.SlashCommand;
-import org.javacord.api.DiscordApi;
+import org.apache.commons.lang3.StringUtils;
 import org.javacord.api.entity.message.MessageFlag;
 import org.javacord.api.entity.server.Server;
 import org.javacord.api.interaction.SlashCommandOptionType;
-import org.javacord.api.interaction.callback.InteractionCallbackDataFlag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import tv.racespot.racespotlivebot.data.DServer;
 import tv.racespot.racespotlivebot.data.DServerRepository;
+import tv.racespot.racespotlivebot.service.commands.ListingPager.Listing;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
 
 import java.util.List;
 import java.util.Optional;
 
-import static tv.racespot.racespotlivebot.util.TableFormatter.printServers;
 
 public class ServerCommands {
 
@@ -27,15 +27,22 @@ public class ServerCommands {
 
     private final DServerRepository serverRepository;
 
+    private final CommandRunner commandRunner;
+    private final ListingPager listingPager;
+
     private final Logger logger;
 
-    private DiscordApi api;
+    private final ShardManager shardManager;
 
     public ServerCommands(
             final DServerRepository serverRepository,
-            final DiscordApi api) {
+            final ShardManager shardManager,
+            final CommandRunner commandRunner,
+            final ListingPager listingPager) {
         this.serverRepository = serverRepository;
-        this.api = api;
+        this.shardManager = shardManager;
+        this.commandRunner = commandRunner;
+        this.listingPager = listingPager;
 
         this.logger = LoggerFactory.getLogger(ServerCommands.class);
     }
@@ -48,38 +55,33 @@ public class ServerCommands {
         ValueArgument channelIdArgument = new ValueArgument("channelId", "Channel Id", SlashCommandOptionType.LONG);
 
         addServerCommand.addArgument(serverIdArgument, channelIdArgument);
-        addServerCommand.setOnAction(event -> {
+        addServerCommand.setOnAction(event -> commandRunner.run(event, "addserver", actionEvent -> {
             // Get the arguments from the event
-            ArgumentResult[] args = event.getArguments();
+            ArgumentResult[] args = actionEvent.getArguments();
 
             String serverId = args[0].get();
             String channelId = args[1].get();
 
             List<DServer> dServers = serverRepository.findBydServerId(serverId);
             if(dServers.size() > 0) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Server with id %s already exists", serverId))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Server with id %s already exists", serverId);
+            }
+
+            if(StringUtils.isNumeric(serverId) && !shardManager.getApiForServer(Long.parseLong(serverId)).isPresent()) {
+                // only the process running the guild's shard can see whether the bot is in it
+                return String.format("Server with id %s is on shard %d, which this process does not run. "
+                        + "Please add it from a process that runs that shard.",
+                        serverId, shardManager.getShardId(Long.parseLong(serverId)));
             }
 
-            Optional<Server> optionalServer = api.getServerById(serverId);
+            Optional<Server> optionalServer = shardManager.getServerById(serverId);
             if(!optionalServer.isPresent()) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Bot is not in server with id %s", serverId))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Bot is not in server with id %s", serverId);
             }
 
             Server newServer = optionalServer.get();
             if(!newServer.getChannelById(channelId).isPresent()) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Server does not contain channel with id %s", channelId))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Server does not contain channel with id %s", channelId);
             }
 
             DServer dServer = new DServer();
@@ -89,30 +91,19 @@ public class ServerCommands {
 
             serverRepository.save(dServer);
 
-            event.getResponder().respondNow()
-                    .setContent("Server added")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+            return "Server added";
+        }));
 
         return addServerCommand;
     }
 
     public Command listServer() {
-        SlashCommand listServerCommand = new SlashCommand("listservers", "List servers in cache.");
-
-        listServerCommand.setOnAction(event -> {
-
-            List<DServer> dServers = serverRepository.findAll();
-            printServers(dServers, event.getChannel().get());
-
-            event.getResponder().respondNow()
-                    .setContent("Servers printed")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
-
-        return listServerCommand;
+        return listingPager.listing("listservers", "List servers in cache.", new Listing(
+                "Servers",
+                "No servers found",
+                new String[] {"Server", "Discord ID"},
+                pageable -> serverRepository.findServerSummaries(pageable)
+                        .map(row -> new String[] {row.getName(), row.getServerId()})));
     }
 
 }
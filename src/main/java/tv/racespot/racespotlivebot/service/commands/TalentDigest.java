@@ -0,0 +1,129 @@
+package tv.racespot.racespotlivebot.service.commands;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the talent assignment changes of one schedule sync so they can be sent as a few
+ * combined messages, grouped per user. Changes are keyed by event and role rather than by row,
+ * so when a user is removed from and assigned to the same role on the same event within one sync
+ * (e.g. the two colour commentators swapped, or the event's row moved) both cancel out instead
+ * of being announced.
+ */
+public class TalentDigest {
+
+    private final Map<Long, UserChanges> changesByUser = new LinkedHashMap<>();
+
+    public void assigned(
+            final long userId,
+            final String displayName,
+            final String assignmentKey,
+            final String description) {
+        record(userId, displayName, assignmentKey, description, true);
+    }
+
+    public void removed(
+            final long userId,
+            final String displayName,
+            final String assignmentKey,
+            final String description) {
+        record(userId, displayName, assignmentKey, description, false);
+    }
+
+    public boolean isEmpty() {
+        return changesByUser.isEmpty();
+    }
+
+    public int getUserCount() {
+        return changesByUser.size();
+    }
+
+    public List<Long> getUserIds() {
+        return new ArrayList<>(changesByUser.keySet());
+    }
+
+    public String renderForUser(final long userId) {
+        UserChanges changes = changesByUser.get(userId);
+        if (changes == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder("Your schedule has changed:\n");
+        for (Change change : changes.changes.values()) {
+            builder.append(change.render()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Renders every user's block, packing as many blocks into one message as fit in
+     * {@code maxLength}. A block longer than the limit on its own is split on line boundaries.
+     */
+    public List<String> render(final int maxLength) {
+        List<String> messages = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (UserChanges changes : changesByUser.values()) {
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format("%s :", changes.displayName));
+            for (Change change : changes.changes.values()) {
+                lines.add(change.render());
+            }
+            for (String line : lines) {
+                String clipped = line.length() >= maxLength ? line.substring(0, maxLength - 1) : line;
+                if (current.length() + clipped.length() + 1 > maxLength) {
+                    messages.add(current.toString());
+                    current.setLength(0);
+                }
+                current.append(clipped).append('\n');
+            }
+        }
+        if (current.length() > 0) {
+            messages.add(current.toString());
+        }
+        return messages;
+    }
+
+    private void record(
+            final long userId,
+            final String displayName,
+            final String assignmentKey,
+            final String description,
+            final boolean assigned) {
+        UserChanges changes = changesByUser.computeIfAbsent(userId, id -> new UserChanges(displayName));
+        Change previous = changes.changes.get(assignmentKey);
+        if (previous != null && previous.assigned != assigned) {
+            changes.changes.remove(assignmentKey);
+            if (changes.changes.isEmpty()) {
+                changesByUser.remove(userId);
+            }
+            return;
+        }
+        changes.changes.put(assignmentKey, new Change(description, assigned));
+    }
+
+    private static class UserChanges {
+
+        private final String displayName;
+        private final Map<String, Change> changes = new LinkedHashMap<>();
+
+        private UserChanges(final String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    private static class Change {
+
+        private final String description;
+        private final boolean assigned;
+
+        private Change(final String description, final boolean assigned) {
+            this.description = description;
+            this.assigned = assigned;
+        }
+
+        private String render() {
+            return String.format("%s %s", assigned ? "+ Assigned to" : "- Removed from", description);
+        }
+    }
+}
@@ -14,10 +14,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import tv.racespot.racespotlivebot.data.UserMapping;
 import tv.racespot.racespotlivebot.data.UserMappingRepository;
+import tv.racespot.racespotlivebot.service.ScheduleIndex;
+import tv.racespot.racespotlivebot.service.commands.ListingPager.Listing;
 
-import java.util.List;
-
-import static tv.racespot.racespotlivebot.util.TableFormatter.printTalent;
 
 public class UserMappingCommands {
 
@@ -27,10 +26,20 @@ public class UserMappingCommands {
     private final Logger logger;
 
     private final UserMappingRepository userRepository;
+    private final ScheduleIndex scheduleIndex;
+
+    private final CommandRunner commandRunner;
+    private final ListingPager listingPager;
 
     public UserMappingCommands(
-            final UserMappingRepository userMappingRepository) {
+            final UserMappingRepository userMappingRepository,
+            final ScheduleIndex scheduleIndex,
+            final CommandRunner commandRunner,
+            final ListingPager listingPager) {
         this.userRepository = userMappingRepository;
+        this.scheduleIndex = scheduleIndex;
+        this.commandRunner = commandRunner;
+        this.listingPager = listingPager;
 
         this.logger = LoggerFactory.getLogger(UserMappingCommands.class);
     }
@@ -53,60 +62,67 @@ public class UserMappingCommands {
         MentionArgument mentionArgument = new MentionArgument("discorduser", "user to add");
 
         addTalent.addArgument(nameArgument, mentionArgument);
-        addTalent.setOnAction(event -> {
+        addTalent.setOnAction(event -> commandRunner.run(event, "addtalent", actionEvent -> {
             // Get the arguments from the event
-            ArgumentResult[] args = event.getArguments();
+            ArgumentResult[] args = actionEvent.getArguments();
 
             String name = args[0].get();
             User discordUser = args[1].get();
 
             UserMapping existingUser = userRepository.findByTalentNameIgnoreCase(name);
             if (existingUser != null) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Talent already exists with name %s", args[0]))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Talent already exists with name %s", args[0]);
             }
 
             existingUser = userRepository.findBydUserId(discordUser.getId());
             if (existingUser != null) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Talent already exists with username %s", discordUser.getDiscriminatedName()))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Talent already exists with username %s", discordUser.getDiscriminatedName());
             }
 
             UserMapping mapping = new UserMapping();
             mapping.setTalentName(name);
             mapping.setdUserId(discordUser.getId());
             userRepository.save(mapping);
+            scheduleIndex.putMapping(mapping);
 
-            event.getResponder().respondNow()
-                    .setContent("Talent added")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+            return "Talent added";
+        }));
 
         return addTalent;
     }
 
     public Command listTalent() {
-        SlashCommand listTalent = new SlashCommand("listtalent", "List broadcast talent in cache.");
+        return listingPager.listing("listtalent", "List broadcast talent in cache.", new Listing(
+                "Talent",
+                "No registered talent found",
+                new String[] {"Talent", "Discord ID"},
+                pageable -> userRepository.findTalentSummaries(pageable)
+                        .map(row -> new String[] {row.getTalentName(), Long.toString(row.getUserId())})));
+    }
 
-        listTalent.setOnAction(event -> {
+    public Command talentDirectMessages() {
+        SlashCommand talentDm = new SlashCommand("talentdm", "Receive your schedule changes as a direct message.");
 
-            List<UserMapping> mappings = userRepository.findAll();
-            printTalent(mappings, event.getChannel().get());
+        ValueArgument enabledArgument = new ValueArgument("enabled", "Send schedule changes by DM", SlashCommandOptionType.BOOLEAN);
 
-            event.getResponder().respondNow()
-                    .setContent("Talent printed")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+        talentDm.addArgument(enabledArgument);
+        talentDm.setOnAction(event -> commandRunner.run(event, "talentdm", actionEvent -> {
+            ArgumentResult[] args = actionEvent.getArguments();
 
-        return listTalent;
+            boolean enabled = args[0].get();
+            User sender = actionEvent.getSender();
+
+            UserMapping mapping = userRepository.findBydUserId(sender.getId());
+            if (mapping == null) {
+                return String.format("No talent registered for %s", sender.getDiscriminatedName());
+            }
+            mapping.setDmOptIn(enabled);
+            userRepository.save(mapping);
+
+            return enabled ? "Schedule changes will be sent to you by DM" : "Schedule change DMs turned off";
+        }));
+
+        return talentDm;
     }
 
     public Command removeTalent() {
@@ -125,27 +141,21 @@ public class UserMappingCommands {
         });
 
         removeTalent.addArgument(nameArgument);
-        removeTalent.setOnAction(event -> {
+        removeTalent.setOnAction(event -> commandRunner.run(event, "removetalent", actionEvent -> {
             // Get the arguments from the event
-            ArgumentResult[] args = event.getArguments();
+            ArgumentResult[] args = actionEvent.getArguments();
 
             String name = args[0].get();
 
             UserMapping mapping = userRepository.findByTalentNameIgnoreCase(name);
             if (mapping == null) {
-                event.getResponder().respondNow()
-                        .setContent(String.format("Talent does not exist with name %s", args[0]))
-                        .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                        .respond();
-                return;
+                return String.format("Talent does not exist with name %s", args[0]);
             }
             userRepository.delete(mapping);
+            scheduleIndex.removeMapping(mapping);
 
-            event.getResponder().respondNow()
-                    .setContent("Talent removed")
-                    .setFlags(InteractionCallbackDataFlag.EPHEMERAL)
-                    .respond();
-        });
+            return "Talent removed";
+        }));
 
         return removeTalent;
     }
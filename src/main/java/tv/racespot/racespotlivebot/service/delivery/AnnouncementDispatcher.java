@@ -0,0 +1,365 @@
+package tv.racespot.racespotlivebot.service.delivery;
+
+import java.awt.Color;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.MessageBuilder;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.data.AnnouncementDelivery;
+import tv.racespot.racespotlivebot.data.AnnouncementDeliveryRepository;
+import tv.racespot.racespotlivebot.data.DServer;
+import tv.racespot.racespotlivebot.data.DServerRepository;
+import tv.racespot.racespotlivebot.data.DeliveryStatus;
+import tv.racespot.racespotlivebot.data.Event;
+import tv.racespot.racespotlivebot.data.EventRepository;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.errors.ErrorReporter;
+import tv.racespot.racespotlivebot.service.exec.WorkExecutor;
+import tv.racespot.racespotlivebot.service.exec.Workload;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.SendPriority;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+/**
+ * Sends live announcements from the delivery ledger. Every (event, server) pair gets a row
+ * before anything is sent; rows without a message id are retried with exponential backoff and a
+ * row that has one is never sent again. A retry after an attempt whose outcome was never recorded
+ * first looks for the announcement in the channel, so a crash mid-send does not post it twice.
+ * Each process only delivers to the servers on the shards it leads, as no other shard's
+ * channels are visible to it.
+ */
+public class AnnouncementDispatcher {
+
+    private static final List<DeliveryStatus> RETRYABLE = Arrays.asList(DeliveryStatus.PENDING, DeliveryStatus.FAILED);
+    private static final int RECONCILE_HISTORY = 50;
+    private static final int MAX_ERROR_LENGTH = 250;
+
+    @Value("${discord.notification.admin_channel_id}")
+    private String adminChannelId;
+    @Value("${announcements.retry_base_seconds:15}")
+    private long retryBaseSeconds;
+    @Value("${announcements.retry_max_seconds:1800}")
+    private long retryMaxSeconds;
+    @Value("${announcements.max_attempts:8}")
+    private int maxAttempts;
+    @Value("${announcements.batch_size:100}")
+    private int batchSize;
+
+    private final AnnouncementDeliveryRepository deliveryRepository;
+    private final EventRepository eventRepository;
+    private final DServerRepository serverRepository;
+    private final ShardManager shardManager;
+    private final OutboundMessageQueue outboundQueue;
+    private final ErrorReporter errorReporter;
+    private final WorkExecutor workExecutor;
+    private final LeaderElection leaderElection;
+
+    private final Object dispatchLock = new Object();
+    private final AtomicBoolean retryInFlight = new AtomicBoolean();
+    // rows whose send has not finished, however long the outbound queue holds them
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final Logger logger;
+
+    public AnnouncementDispatcher(
+            final AnnouncementDeliveryRepository deliveryRepository,
+            final EventRepository eventRepository,
+            final DServerRepository serverRepository,
+            final ShardManager shardManager,
+            final OutboundMessageQueue outboundQueue,
+            final ErrorReporter errorReporter,
+            final WorkExecutor workExecutor,
+            final LeaderElection leaderElection) {
+        this.deliveryRepository = deliveryRepository;
+        this.eventRepository = eventRepository;
+        this.serverRepository = serverRepository;
+        this.shardManager = shardManager;
+        this.outboundQueue = outboundQueue;
+        this.errorReporter = errorReporter;
+        this.workExecutor = workExecutor;
+        this.leaderElection = leaderElection;
+
+        this.logger = LoggerFactory.getLogger(AnnouncementDispatcher.class);
+    }
+
+    /**
+     * Adds a pending row for every registered server that has none for this event yet.
+     */
+    public int enqueue(final Event event) {
+        int created = 0;
+        for (DServer server : serverRepository.findAll()) {
+            if (deliveryRepository.existsByEventIdAndServerId(event.getId(), server.getDServerId())) {
+                continue;
+            }
+            try {
+                deliveryRepository.save(new AnnouncementDelivery(event.getId(), server.getDServerId(), server.getDChannelId()));
+                created++;
+            } catch (DataIntegrityViolationException ex) {
+                // already recorded by an earlier run
+            }
+        }
+        return created;
+    }
+
+    @Scheduled(fixedDelayString = "${announcements.retry_poll_millis:10000}", initialDelay = 20000)
+    public void retryDue() {
+        try (LogContext ignored = LogContext.begin("announcements.retry")) {
+            if (leaderElection.getLedShards().isEmpty() || !retryInFlight.compareAndSet(false, true)) {
+                return;
+            }
+            workExecutor.execute(Workload.SCHEDULED, this::deliverDue)
+                    .whenComplete((result, ex) -> {
+                        retryInFlight.set(false);
+                        if (ex != null) {
+                            logger.error("Announcement retry failed: {}", ex.getMessage());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Claims every due row on the shards this process leads and hands it to the outbound queue.
+     * A claim pushes the row's next attempt out by its backoff before sending, and rows whose send
+     * has not completed yet are skipped even once that has passed.
+     */
+    public void deliverDue() {
+        synchronized (dispatchLock) {
+            List<Integer> shards = leaderElection.getLedShards();
+            if (shards.isEmpty()) {
+                return;
+            }
+            List<AnnouncementDelivery> due = findDueOnShards(new HashSet<>(shards));
+            if (due.isEmpty()) {
+                return;
+            }
+            Map<String, Event> events = eventRepository
+                    .findAllById(due.stream().map(AnnouncementDelivery::getEventId).distinct().collect(Collectors.toList()))
+                    .stream()
+                    .collect(Collectors.toMap(Event::getId, Function.identity()));
+            for (AnnouncementDelivery delivery : due) {
+                if (!inFlight.add(delivery.getId())) {
+                    continue;
+                }
+                try {
+                    deliver(delivery, events.get(delivery.getEventId()));
+                } catch (RuntimeException ex) {
+                    inFlight.remove(delivery.getId());
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Up to a batch of due rows whose server is on one of {@code shards}, turning pages of due
+     * rows until the batch is full or none are left.
+     */
+    private List<AnnouncementDelivery> findDueOnShards(final Set<Integer> shards) {
+        Instant now = Instant.now();
+        List<AnnouncementDelivery> due = new ArrayList<>();
+        for (int page = 0; due.size() < batchSize; page++) {
+            List<AnnouncementDelivery> rows = deliveryRepository.findDue(RETRYABLE, now, PageRequest.of(page, batchSize));
+            for (AnnouncementDelivery row : rows) {
+                if (due.size() < batchSize && shards.contains(shardManager.getShardId(Long.parseLong(row.getServerId())))) {
+                    due.add(row);
+                }
+            }
+            if (rows.size() < batchSize) {
+                break;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Deletes events together with their ledger rows. The rows do not reference the event table,
+     * so rows left behind would be retried and given up on as "event no longer exists".
+     */
+    public int deleteEvents(final Collection<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+        deliveryRepository.deleteByEventIdIn(eventIds);
+        return eventRepository.deleteByIdIn(eventIds);
+    }
+
+    public DeliveryStats getStats() {
+        return new DeliveryStats(
+                deliveryRepository.countByStatus(DeliveryStatus.PENDING),
+                deliveryRepository.countByStatus(DeliveryStatus.SENT),
+                deliveryRepository.countByStatus(DeliveryStatus.FAILED));
+    }
+
+    private void deliver(final AnnouncementDelivery delivery, final Event event) {
+        if (event == null) {
+            giveUp(delivery, "event no longer exists");
+            inFlight.remove(delivery.getId());
+            return;
+        }
+        boolean outcomeUnknown = delivery.getAttempts() > 0;
+        int attempt = delivery.getAttempts() + 1;
+        Instant now = Instant.now();
+        delivery.setAttempts(attempt);
+        delivery.setLastAttemptAt(now);
+        delivery.setNextAttemptAt(now.plus(getBackoff(attempt)));
+        deliveryRepository.save(delivery);
+
+        Optional<ServerTextChannel> channel = shardManager.getServerTextChannel(delivery.getServerId(), delivery.getChannelId());
+        if (!channel.isPresent()) {
+            recordFailure(delivery, String.format("channel %s is not visible to this process's shards", delivery.getChannelId()));
+            inFlight.remove(delivery.getId());
+            return;
+        }
+
+        CompletableFuture<Optional<Message>> existing = outcomeUnknown
+                ? findExistingAnnouncement(channel.get(), event)
+                : CompletableFuture.completedFuture(Optional.empty());
+        existing
+                .thenCompose(found -> found.isPresent()
+                        ? CompletableFuture.completedFuture(found.get())
+                        : outboundQueue.send(
+                                SendPriority.LIVE,
+                                channel.get(),
+                                new MessageBuilder().setEmbed(constructEmbed(event))))
+                .whenCompleteAsync((message, ex) -> {
+                    try {
+                        if (ex != null) {
+                            recordFailure(delivery, ex.getMessage());
+                            return;
+                        }
+                        delivery.setMessageId(message.getId());
+                        delivery.setStatus(DeliveryStatus.SENT);
+                        delivery.setSentAt(Instant.now());
+                        delivery.setNextAttemptAt(null);
+                        delivery.setLastError(null);
+                        deliveryRepository.save(delivery);
+                    } finally {
+                        inFlight.remove(delivery.getId());
+                    }
+                }, workExecutor.executor(Workload.SCHEDULED))
+                .exceptionally(ex -> {
+                    if (ex.getCause() instanceof RejectedExecutionException) {
+                        // the claim stays on the row, so the next retry reconciles it with the channel
+                        inFlight.remove(delivery.getId());
+                        logger.error("Unable to record delivery {}: {}", delivery.getId(), ex.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Optional<Message>> findExistingAnnouncement(final ServerTextChannel channel, final Event event) {
+        String url = getVideoUrl(event);
+        return channel.getMessages(RECONCILE_HISTORY)
+                .thenApply(messages -> messages.stream()
+                        .filter(message -> message.getAuthor().isYourself())
+                        .filter(message -> message.getEmbeds().stream()
+                                .anyMatch(embed -> embed.getUrl().map(link -> url.equals(link.toString())).orElse(false)))
+                        .findFirst())
+                .thenApply(found -> {
+                    found.ifPresent(message -> logger.info(
+                            "Announcement of {} already in channel {}, recording it instead of resending",
+                            event.getYoutubeLink(), channel.getId()));
+                    return found;
+                })
+                .exceptionally(ex -> {
+                    // without history access a missed announcement is worse than a possible repeat
+                    logger.warn("Unable to read history of channel {}, sending again: {}",
+                            channel.getId(), ex.getMessage());
+                    return Optional.empty();
+                });
+    }
+
+    private void recordFailure(final AnnouncementDelivery delivery, final String error) {
+        if (delivery.getAttempts() >= maxAttempts) {
+            giveUp(delivery, error);
+            return;
+        }
+        delivery.setStatus(DeliveryStatus.FAILED);
+        delivery.setLastError(StringUtils.abbreviate(error, MAX_ERROR_LENGTH));
+        deliveryRepository.save(delivery);
+        logger.warn("Announcement of event {} to server {} failed (attempt {}), retrying after {}: {}",
+                delivery.getEventId(), delivery.getServerId(), delivery.getAttempts(), delivery.getNextAttemptAt(), error);
+    }
+
+    private void giveUp(final AnnouncementDelivery delivery, final String error) {
+        delivery.setStatus(DeliveryStatus.FAILED);
+        delivery.setNextAttemptAt(null);
+        delivery.setLastError(StringUtils.abbreviate(error, MAX_ERROR_LENGTH));
+        deliveryRepository.save(delivery);
+        logger.error("Giving up on announcement of event {} to server {} after {} attempts: {}",
+                delivery.getEventId(), delivery.getServerId(), delivery.getAttempts(), error);
+        errorReporter.report(adminChannelId, "announcement.gave_up", String.format(
+                "Gave up on live announcement for server %s after %d attempts: %s",
+                delivery.getServerId(), delivery.getAttempts(), error));
+    }
+
+    private Duration getBackoff(final int attempt) {
+        long seconds = retryBaseSeconds << Math.min(attempt - 1, 20);
+        return Duration.ofSeconds(Math.min(retryMaxSeconds, seconds));
+    }
+
+    private static String getVideoUrl(final Event event) {
+        return String.format("https://www.youtube.com/watch?v=%s", event.getYoutubeLink());
+    }
+
+    private static EmbedBuilder constructEmbed(final Event event) {
+        return new EmbedBuilder()
+                .setAuthor(event.getChannelTitle())
+                .setTitle(event.getTitle())
+                .setDescription("Stream has just gone live!")
+                .setColor(Color.YELLOW)
+                .setThumbnail(event.getChannelAvatarUrl())
+                .setImage(event.getImageUrl())
+                .setUrl(getVideoUrl(event));
+    }
+
+    public static class DeliveryStats {
+
+        private final long pending;
+        private final long sent;
+        private final long failed;
+
+        public DeliveryStats(final long pending, final long sent, final long failed) {
+            this.pending = pending;
+            this.sent = sent;
+            this.failed = failed;
+        }
+
+        public long getPending() {
+            return pending;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+    }
+}
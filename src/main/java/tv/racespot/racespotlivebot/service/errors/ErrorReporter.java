@@ -0,0 +1,213 @@
+package tv.racespot.racespotlivebot.service.errors;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.MessageBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.SendPriority;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.TokenBucket;
+
+import static tv.racespot.racespotlivebot.util.MessageUtil.buildStackTraceMessage;
+
+/**
+ * Front door for failure messages to the admin and error channels. Failures are grouped by
+ * fingerprint: the exception type and its top stack frames, or a caller-chosen key for failures
+ * without an exception. The first of a group in each summary window is sent as it happens, if
+ * the group's token bucket allows; repeats are only counted and go out as one summary line per
+ * group when the window closes. During an outage this turns hundreds of identical messages into a
+ * handful, and no single group can spend the channel's rate limit.
+ */
+public class ErrorReporter {
+
+    private static final int FINGERPRINT_FRAMES = 3;
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+    private static final int MAX_SUMMARY_LINE_LENGTH = 300;
+    private static final int IDLE_WINDOWS_KEPT = 12;
+
+    @Value("${errors.bucket_capacity:3}")
+    private int bucketCapacity;
+    @Value("${errors.bucket_refill_seconds:600}")
+    private long bucketRefillSeconds;
+    @Value("${errors.summary_interval_millis:300000}")
+    private long summaryIntervalMillis;
+
+    private final ShardManager shardManager;
+    private final OutboundMessageQueue outboundQueue;
+
+    private final Map<String, ErrorGroup> groups = new ConcurrentHashMap<>();
+    private final AtomicLong reported = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    private final Logger logger;
+
+    public ErrorReporter(final ShardManager shardManager, final OutboundMessageQueue outboundQueue) {
+        this.shardManager = shardManager;
+        this.outboundQueue = outboundQueue;
+
+        this.logger = LoggerFactory.getLogger(ErrorReporter.class);
+    }
+
+    /**
+     * Reports an exception with its stack trace, grouped by type and top frames.
+     */
+    public void report(final String channelId, final String message, final Throwable error) {
+        Throwable cause = unwrap(error);
+        report(channelId, fingerprint(cause), String.format("%s: %s", message, cause.getMessage()),
+            () -> buildStackTraceMessage(message, cause));
+    }
+
+    /**
+     * Reports a failure that has no exception. {@code key} names the kind of failure, so repeats
+     * with different details still count as one group.
+     */
+    public void report(final String channelId, final String key, final String message) {
+        report(channelId, key, message, () -> new MessageBuilder().append(StringUtils.abbreviate(message, MAX_MESSAGE_LENGTH)));
+    }
+
+    /**
+     * Closes the window: sends one summary per channel for the groups that had repeats held back,
+     * and forgets groups that have been quiet for a while.
+     */
+    @Scheduled(fixedRateString = "${errors.summary_interval_millis:300000}", initialDelayString = "${errors.summary_interval_millis:300000}")
+    public void flush() {
+        try (LogContext ignored = LogContext.begin("errors.flush")) {
+            Map<String, List<String>> linesByChannel = new LinkedHashMap<>();
+            Iterator<ErrorGroup> iterator = groups.values().iterator();
+            while (iterator.hasNext()) {
+                ErrorGroup group = iterator.next();
+                synchronized (group) {
+                    if (group.heldBack > 0) {
+                        linesByChannel.computeIfAbsent(group.channelId, key -> new ArrayList<>()).add(StringUtils.abbreviate(
+                            String.format("%dx %s", group.heldBack, group.lastMessage), MAX_SUMMARY_LINE_LENGTH));
+                    }
+                    group.idleWindows = group.inWindow == 0 ? group.idleWindows + 1 : 0;
+                    group.inWindow = 0;
+                    group.heldBack = 0;
+                    // a group that keeps recurring keeps its bucket, a quiet one starts over
+                    if (group.idleWindows > IDLE_WINDOWS_KEPT) {
+                        iterator.remove();
+                    }
+                }
+            }
+
+            for (Map.Entry<String, List<String>> channelLines : linesByChannel.entrySet()) {
+                String header = String.format("Repeated errors in the last %d min, not sent individually:",
+                    TimeUnit.MILLISECONDS.toMinutes(summaryIntervalMillis));
+                StringJoiner current = new StringJoiner("\n");
+                current.add(header);
+                for (String line : channelLines.getValue()) {
+                    if (current.length() + line.length() + 1 > MAX_MESSAGE_LENGTH) {
+                        send(channelLines.getKey(), new MessageBuilder().append(current.toString()));
+                        current = new StringJoiner("\n");
+                    }
+                    current.add(line);
+                }
+                send(channelLines.getKey(), new MessageBuilder().append(current.toString()));
+            }
+        }
+    }
+
+    public long getReported() {
+        return reported.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    private void report(
+        final String channelId,
+        final String fingerprint,
+        final String summary,
+        final Supplier<MessageBuilder> message) {
+        reported.incrementAndGet();
+        ErrorGroup group = groups.computeIfAbsent(channelId + "|" + fingerprint,
+            key -> new ErrorGroup(channelId, new TokenBucket(bucketCapacity, 1.0 / bucketRefillSeconds)));
+        boolean sendNow;
+        synchronized (group) {
+            group.lastMessage = summary;
+            sendNow = group.inWindow++ == 0 && group.bucket.tryConsume();
+            if (!sendNow) {
+                group.heldBack++;
+            }
+        }
+        if (sendNow) {
+            sent.incrementAndGet();
+            send(channelId, message.get());
+        } else {
+            suppressed.incrementAndGet();
+            logger.debug("Held back repeated error {}", fingerprint);
+        }
+    }
+
+    private void send(final String channelId, final MessageBuilder message) {
+        ServerTextChannel channel = shardManager.getServerTextChannelById(channelId).orElse(null);
+        if (channel == null) {
+            logger.warn("Channel {} not found, dropped error report", channelId);
+            return;
+        }
+        outboundQueue.send(SendPriority.DIAGNOSTIC, channel, message);
+    }
+
+    static String fingerprint(final Throwable error) {
+        StringJoiner fingerprint = new StringJoiner("<");
+        fingerprint.add(error.getClass().getName());
+        StackTraceElement[] frames = error.getStackTrace();
+        for (int i = 0; i < Math.min(FINGERPRINT_FRAMES, frames.length); i++) {
+            // line numbers keep two throws in the same method apart
+            fingerprint.add(String.format("%s.%s:%d", frames[i].getClassName(), frames[i].getMethodName(), frames[i].getLineNumber()));
+        }
+        return fingerprint.toString();
+    }
+
+    private static Throwable unwrap(final Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static class ErrorGroup {
+
+        private final String channelId;
+        private final TokenBucket bucket;
+        private String lastMessage;
+        private int inWindow;
+        private int heldBack;
+        private int idleWindows;
+
+        private ErrorGroup(final String channelId, final TokenBucket bucket) {
+            this.channelId = channelId;
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package tv.racespot.racespotlivebot.service.exec;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.util.LatencyRecorder;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Tracer;
+
+/**
+ * Runs blocking command, reaction and scheduled work off the Javacord listener threads. Every
+ * workload has its own lane with a fixed number of workers and a bounded queue; once a lane is
+ * full, new work is rejected with a {@link RejectedExecutionException} rather than queued.
+ */
+public class WorkExecutor {
+
+    @Value("${executor.mode:platform}")
+    private String mode;
+
+    @Value("${executor.command.threads:4}")
+    private int commandThreads;
+    @Value("${executor.command.queue_capacity:50}")
+    private int commandQueueCapacity;
+    @Value("${executor.reaction.threads:2}")
+    private int reactionThreads;
+    @Value("${executor.reaction.queue_capacity:200}")
+    private int reactionQueueCapacity;
+    @Value("${executor.scheduled.threads:2}")
+    private int scheduledThreads;
+    @Value("${executor.scheduled.queue_capacity:10}")
+    private int scheduledQueueCapacity;
+
+    private final Map<Workload, Lane> lanes = new EnumMap<>(Workload.class);
+
+    private final Logger logger;
+
+    private boolean virtualThreads;
+
+    public WorkExecutor() {
+        this.logger = LoggerFactory.getLogger(WorkExecutor.class);
+    }
+
+    @PostConstruct
+    void start() {
+        virtualThreads = "virtual".equalsIgnoreCase(mode) && supportsVirtualThreads();
+        if ("virtual".equalsIgnoreCase(mode) && !virtualThreads) {
+            logger.warn("Virtual threads requested but not supported by this JDK, using platform threads");
+        }
+        lanes.put(Workload.COMMAND, createLane(Workload.COMMAND, commandThreads, commandQueueCapacity));
+        lanes.put(Workload.REACTION, createLane(Workload.REACTION, reactionThreads, reactionQueueCapacity));
+        lanes.put(Workload.SCHEDULED, createLane(Workload.SCHEDULED, scheduledThreads, scheduledQueueCapacity));
+        logger.info("Started work executor with {} threads", virtualThreads ? "virtual" : "platform");
+    }
+
+    public void shutdown() {
+        for (Lane lane : lanes.values()) {
+            lane.executor.shutdown();
+        }
+    }
+
+    public CompletableFuture<Void> execute(final Workload workload, final Runnable task) {
+        return submit(workload, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Completing the returned future before the task is done (cancelling it, or a timeout from
+     * {@link CompletableFuture#orTimeout}) interrupts the worker running the task, or skips the
+     * task if it has not started yet.
+     */
+    public <T> CompletableFuture<T> submit(final Workload workload, final Callable<T> task) {
+        Lane lane = lanes.get(workload);
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        if (!lane.admission.tryAcquire()) {
+            lane.rejected.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException(
+                    String.format("%s queue is full (%d queued)", workload, lane.queued.get())));
+            return future;
+        }
+
+        long enqueuedAt = System.nanoTime();
+        lane.submitted.incrementAndGet();
+        lane.queued.incrementAndGet();
+        Span queued = Tracer.current().child(lane.spanPrefix + ".queued");
+        try {
+            Map<String, String> logContext = MDC.getCopyOfContextMap();
+            lane.executor.execute(() -> run(lane, enqueuedAt, task, future, logContext, queued));
+        } catch (RejectedExecutionException ex) {
+            lane.queued.decrementAndGet();
+            lane.admission.release();
+            lane.rejected.incrementAndGet();
+            queued.markFailed().end();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * The lane as an {@link Executor} for async stages, e.g. blocking work that follows a Discord
+     * send. The caller's log context and span are taken now, as the stage is usually submitted
+     * from whichever thread completes the future. A full lane throws
+     * {@link RejectedExecutionException}, which fails the stage.
+     */
+    public Executor executor(final Workload workload) {
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        Span span = Tracer.current();
+        return task -> {
+            Map<String, String> previousLogContext = LogContext.swap(logContext);
+            Span previousSpan = Tracer.activate(span);
+            try {
+                CompletableFuture<Void> result = execute(workload, task);
+                if (result.isCompletedExceptionally()) {
+                    // a rejection fails the future before it is returned
+                    try {
+                        result.join();
+                    } catch (CompletionException ex) {
+                        if (ex.getCause() instanceof RejectedExecutionException) {
+                            throw (RejectedExecutionException) ex.getCause();
+                        }
+                    }
+                }
+            } finally {
+                Tracer.activate(previousSpan);
+                LogContext.swap(previousLogContext);
+            }
+        };
+    }
+
+    public List<WorkloadStats> getStats() {
+        List<WorkloadStats> stats = new ArrayList<>();
+        for (Lane lane : lanes.values()) {
+            stats.add(new WorkloadStats(
+                    lane.workload,
+                    lane.queued.get(),
+                    lane.active.get(),
+                    lane.submitted.get(),
+                    lane.rejected.get(),
+                    lane.failed.get(),
+                    lane.waitTimes.percentile(50),
+                    lane.waitTimes.percentile(95),
+                    lane.waitTimes.getMax()));
+        }
+        return stats;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @Scheduled(fixedRate = 300000, initialDelay = 300000)
+    public void logStats() {
+        try (LogContext ignored = LogContext.begin("executor.stats")) {
+            for (WorkloadStats stats : getStats()) {
+                if (stats.getSubmitted() == 0) {
+                    continue;
+                }
+                logger.info(
+                        "{} lane: queued={} active={} submitted={} rejected={} failed={} wait p50={}ms p95={}ms max={}ms",
+                        stats.getWorkload(), stats.getQueued(), stats.getActive(), stats.getSubmitted(),
+                        stats.getRejected(), stats.getFailed(), stats.getWaitP50Millis(), stats.getWaitP95Millis(),
+                        stats.getWaitMaxMillis());
+            }
+        }
+    }
+
+    private <T> void run(
+            Lane lane,
+            long enqueuedAt,
+            Callable<T> task,
+            CompletableFuture<T> future,
+            Map<String, String> logContext,
+            Span queued) {
+        // the submitter's correlation id also covers stages that run when the future completes
+        Map<String, String> previousLogContext = LogContext.swap(logContext);
+        Span previousSpan = Tracer.activate(queued.getParent());
+        boolean permitted = false;
+        try {
+            if (lane.concurrency != null) {
+                lane.concurrency.acquire();
+                permitted = true;
+            }
+            lane.queued.decrementAndGet();
+            lane.waitTimes.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt));
+            if (future.isDone()) {
+                // timed out or cancelled while waiting for a worker
+                queued.markFailed().end();
+                return;
+            }
+            lane.active.incrementAndGet();
+            Worker worker = new Worker(Thread.currentThread());
+            future.whenComplete((result, ex) -> {
+                if (ex != null) {
+                    worker.interrupt();
+                }
+            });
+            // started before the wait span ends so the trace never looks finished in between
+            try (Span span = Tracer.startSpan(lane.spanPrefix + ".run")) {
+                queued.end();
+                try {
+                    future.complete(task.call());
+                } catch (Throwable ex) {
+                    lane.failed.incrementAndGet();
+                    span.markFailed();
+                    future.completeExceptionally(ex);
+                }
+            } finally {
+                worker.release();
+                lane.active.decrementAndGet();
+            }
+        } catch (InterruptedException ex) {
+            lane.queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+            queued.markFailed().end();
+            future.completeExceptionally(ex);
+        } finally {
+            if (permitted) {
+                lane.concurrency.release();
+            }
+            lane.admission.release();
+            Tracer.activate(previousSpan);
+            LogContext.swap(previousLogContext);
+        }
+    }
+
+    private Lane createLane(final Workload workload, final int threads, final int queueCapacity) {
+        ExecutorService executor;
+        Semaphore concurrency = null;
+        if (virtualThreads) {
+            executor = createVirtualThreadExecutor();
+            concurrency = new Semaphore(threads);
+        } else {
+            executor = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new NamedThreadFactory(workload));
+        }
+        return new Lane(workload, executor, new Semaphore(threads + queueCapacity), concurrency);
+    }
+
+    private static boolean supportsVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Unable to create virtual thread executor", ex);
+        }
+    }
+
+    private static class Lane {
+
+        private final Workload workload;
+        private final String spanPrefix;
+        private final ExecutorService executor;
+        private final Semaphore admission;
+        private final Semaphore concurrency;
+
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final LatencyRecorder waitTimes = new LatencyRecorder(512);
+
+        private Lane(
+                final Workload workload,
+                final ExecutorService executor,
+                final Semaphore admission,
+                final Semaphore concurrency) {
+            this.workload = workload;
+            this.spanPrefix = workload.name().toLowerCase();
+            this.executor = executor;
+            this.admission = admission;
+            this.concurrency = concurrency;
+        }
+    }
+
+    /**
+     * The thread running a task, for as long as it runs it. Interrupting and releasing share a
+     * lock so that an interrupt meant for the task never reaches the next one on the thread.
+     */
+    private static class Worker {
+
+        private Thread thread;
+
+        private Worker(final Thread thread) {
+            this.thread = thread;
+        }
+
+        private synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        private synchronized void release() {
+            thread = null;
+            Thread.interrupted();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private NamedThreadFactory(final Workload workload) {
+            this.prefix = "work-" + workload.name().toLowerCase() + "-";
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static class WorkloadStats {
+
+        private final Workload workload;
+        private final int queued;
+        private final int active;
+        private final long submitted;
+        private final long rejected;
+        private final long failed;
+        private final long waitP50Millis;
+        private final long waitP95Millis;
+        private final long waitMaxMillis;
+
+        public WorkloadStats(
+                final Workload workload,
+                final int queued,
+                final int active,
+                final long submitted,
+                final long rejected,
+                final long failed,
+                final long waitP50Millis,
+                final long waitP95Millis,
+                final long waitMaxMillis) {
+            this.workload = workload;
+            this.queued = queued;
+            this.active = active;
+            this.submitted = submitted;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.waitP50Millis = waitP50Millis;
+            this.waitP95Millis = waitP95Millis;
+            this.waitMaxMillis = waitMaxMillis;
+        }
+
+        public Workload getWorkload() {
+            return workload;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getWaitP50Millis() {
+            return waitP50Millis;
+        }
+
+        public long getWaitP95Millis() {
+            return waitP95Millis;
+        }
+
+        public long getWaitMaxMillis() {
+            return waitMaxMillis;
+        }
+    }
+}
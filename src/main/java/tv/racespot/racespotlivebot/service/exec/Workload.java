@@ -0,0 +1,8 @@
+package tv.racespot.racespotlivebot.service.exec;
+
+public enum Workload {
+
+    COMMAND,
+    REACTION,
+    SCHEDULED
+}
@@ -0,0 +1,218 @@
+package tv.racespot.racespotlivebot.service.gateway;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.javacord.api.DiscordApi;
+import org.javacord.api.DiscordApiBuilder;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+/**
+ * Owns the gateway connections of this process. Unsharded it is a single {@link DiscordApi};
+ * sharded it logs in one connection per shard in the configured range, using Discord's
+ * recommended shard count unless a total is given. Guild lookups are routed to the owning shard
+ * with {@code (guildId >> 22) % totalShards}.
+ */
+public class ShardManager {
+
+    private final String token;
+    private final boolean sharded;
+    private final int configuredTotal;
+    private final int firstShard;
+    private final int shardCount;
+
+    private final Map<Integer, DiscordApi> shards = new TreeMap<>();
+    private int totalShards = 1;
+
+    private final Logger logger;
+
+    public ShardManager(
+            final String token,
+            final boolean sharded,
+            final int configuredTotal,
+            final int firstShard,
+            final int shardCount) {
+        this.token = token;
+        this.sharded = sharded;
+        this.configuredTotal = configuredTotal;
+        this.firstShard = firstShard;
+        this.shardCount = shardCount;
+
+        this.logger = LoggerFactory.getLogger(ShardManager.class);
+    }
+
+    public void start() {
+        DiscordApiBuilder builder = new DiscordApiBuilder()
+            .setToken(token)
+            .setAllIntents();
+        if (!sharded) {
+            DiscordApi api = builder.login().join();
+            shards.put(0, api);
+            return;
+        }
+
+        if (configuredTotal > 0) {
+            builder.setTotalShards(configuredTotal);
+        } else {
+            builder = builder.setRecommendedTotalShards().join();
+        }
+        totalShards = builder.getTotalShards();
+        int lastShard = shardCount > 0 ? Math.min(totalShards, firstShard + shardCount) : totalShards;
+        if (firstShard >= lastShard) {
+            throw new IllegalStateException(String.format("Shard range starting at %d is empty, Discord has %d shards",
+                firstShard, totalShards));
+        }
+        logger.info("Logging in shards {}-{} of {}", firstShard, lastShard - 1, totalShards);
+
+        Collection<CompletableFuture<DiscordApi>> logins =
+            builder.loginShards(shard -> shard >= firstShard && shard < lastShard);
+        for (CompletableFuture<DiscordApi> login : logins) {
+            DiscordApi api = login.join();
+            shards.put(api.getCurrentShard(), api);
+            logger.info("Shard {} connected with {} servers", api.getCurrentShard(), api.getServers().size());
+        }
+    }
+
+    public void shutdown() {
+        for (DiscordApi api : shards.values()) {
+            api.disconnect();
+        }
+    }
+
+    /**
+     * The connection used for slash commands and anything that is not tied to one guild: the
+     * shard that can see {@code anchorChannelId} (the staff guild), else the lowest local shard.
+     */
+    public DiscordApi getPrimaryApi(final String anchorChannelId) {
+        long channelId = NumberUtils.toLong(anchorChannelId);
+        for (DiscordApi api : shards.values()) {
+            if (channelId != 0 && api.getServerTextChannelById(channelId).isPresent()) {
+                return api;
+            }
+        }
+        return shards.values().iterator().next();
+    }
+
+    public Collection<DiscordApi> getLocalShards() {
+        return Collections.unmodifiableCollection(shards.values());
+    }
+
+    public Set<Integer> getLocalShardIds() {
+        return Collections.unmodifiableSet(shards.keySet());
+    }
+
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    public int getShardId(final long serverId) {
+        return (int) ((serverId >> 22) % totalShards);
+    }
+
+    public Optional<DiscordApi> getApiForServer(final long serverId) {
+        int shardId = getShardId(serverId);
+        DiscordApi api = shards.get(shardId);
+        if (api == null) {
+            logger.debug("Server {} is on shard {}, which this process does not run", serverId, shardId);
+        }
+        return Optional.ofNullable(api);
+    }
+
+    public Optional<Server> getServerById(final long serverId) {
+        return getApiForServer(serverId).flatMap(api -> api.getServerById(serverId));
+    }
+
+    public Optional<Server> getServerById(final String serverId) {
+        return StringUtils.isNumeric(serverId) ? getServerById(Long.parseLong(serverId)) : Optional.empty();
+    }
+
+    /**
+     * Looks the channel up on the shard that owns {@code serverId}.
+     */
+    public Optional<ServerTextChannel> getServerTextChannel(final String serverId, final String channelId) {
+        if (!StringUtils.isNumeric(serverId)) {
+            return getServerTextChannelById(channelId);
+        }
+        return getApiForServer(Long.parseLong(serverId)).flatMap(api -> api.getServerTextChannelById(channelId));
+    }
+
+    /**
+     * Channel ids carry no guild, so this asks every local shard. Meant for the few configured
+     * staff channels, not for per-guild traffic.
+     */
+    public Optional<ServerTextChannel> getServerTextChannelById(final String channelId) {
+        return findOnAnyShard(api -> api.getServerTextChannelById(channelId));
+    }
+
+    public List<ShardStats> getShardStats() {
+        List<ShardStats> stats = new ArrayList<>();
+        for (Map.Entry<Integer, DiscordApi> entry : shards.entrySet()) {
+            DiscordApi api = entry.getValue();
+            stats.add(new ShardStats(
+                entry.getKey(),
+                api.getServers().size(),
+                api.getLatestGatewayLatency().toMillis()));
+        }
+        return stats;
+    }
+
+    @Scheduled(fixedRate = 300000, initialDelay = 300000)
+    public void logShardStats() {
+        try (LogContext ignored = LogContext.begin("shards.stats")) {
+            for (ShardStats stats : getShardStats()) {
+                logger.info("Shard {}/{}: {} servers, gateway latency {} ms",
+                    stats.getShardId(), totalShards, stats.getServers(), stats.getGatewayLatencyMillis());
+            }
+        }
+    }
+
+    private <T> Optional<T> findOnAnyShard(final Function<DiscordApi, Optional<T>> lookup) {
+        for (DiscordApi api : shards.values()) {
+            Optional<T> found = lookup.apply(api);
+            if (found.isPresent()) {
+                return found;
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static class ShardStats {
+
+        private final int shardId;
+        private final int servers;
+        private final long gatewayLatencyMillis;
+
+        public ShardStats(final int shardId, final int servers, final long gatewayLatencyMillis) {
+            this.shardId = shardId;
+            this.servers = servers;
+            this.gatewayLatencyMillis = gatewayLatencyMillis;
+        }
+
+        public int getShardId() {
+            return shardId;
+        }
+
+        public int getServers() {
+            return servers;
+        }
+
+        public long getGatewayLatencyMillis() {
+            return gatewayLatencyMillis;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package tv.racespot.racespotlivebot.service.outbound;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.javacord.api.DiscordApi;
+import org.javacord.api.entity.channel.TextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.MessageBuilder;
+import org.javacord.api.entity.message.Messageable;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.util.LatencyRecorder;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.TokenBucket;
+import tv.racespot.racespotlivebot.util.Tracer;
+
+/**
+ * Single path for every message the bot sends or edits. Work is drained highest priority first,
+ * each route (channel or DM) is held to its own token bucket so one busy channel cannot delay
+ * the rest, and queued edits of the same message collapse into one edit with the latest content.
+ */
+public class OutboundMessageQueue {
+
+    @Value("${outbound.route.burst:5}")
+    private double routeBurst;
+    @Value("${outbound.route.per_second:1}")
+    private double routePerSecond;
+    @Value("${outbound.global.per_second:40}")
+    private double globalPerSecond;
+    @Value("${outbound.max_queued_per_priority:500}")
+    private int maxQueuedPerPriority;
+
+    private final DiscordApi api;
+
+    private final Object lock = new Object();
+    private final Map<SendPriority, Deque<Outbound>> queues = new EnumMap<>(SendPriority.class);
+    private final Map<Long, Outbound> pendingEdits = new HashMap<>();
+    private final Map<String, TokenBucket> routeBuckets = new HashMap<>();
+    private TokenBucket globalBucket;
+
+    private final Map<SendPriority, LatencyRecorder> waitTimes = new EnumMap<>(SendPriority.class);
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final Logger logger;
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public OutboundMessageQueue(final DiscordApi api) {
+        this.api = api;
+        for (SendPriority priority : SendPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            waitTimes.put(priority, new LatencyRecorder(512));
+        }
+
+        this.logger = LoggerFactory.getLogger(OutboundMessageQueue.class);
+    }
+
+    @PostConstruct
+    void start() {
+        globalBucket = new TokenBucket(globalPerSecond, globalPerSecond);
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "outbound-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public void shutdown() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    public CompletableFuture<Message> send(
+            final SendPriority priority,
+            final TextChannel channel,
+            final MessageBuilder message) {
+        return send(priority, channel, "channel:" + channel.getId(), message);
+    }
+
+    public CompletableFuture<Message> send(
+            final SendPriority priority,
+            final Messageable target,
+            final String route,
+            final MessageBuilder message) {
+        return Tracer.traceFuture("discord.send", enqueue(new Outbound(priority, route, null, () -> message.send(target))));
+    }
+
+    public CompletableFuture<Message> edit(
+            final SendPriority priority,
+            final long channelId,
+            final long messageId,
+            final String content,
+            final EmbedBuilder embed) {
+        CompletableFuture<Message> result;
+        // looked up and queued under one lock, so two edits of the same message cannot both miss
+        synchronized (lock) {
+            Outbound pending = pendingEdits.get(messageId);
+            if (pending != null) {
+                pending.content = content;
+                pending.embed = embed;
+                Deque<Outbound> raised = queues.get(priority);
+                // a full queue keeps the edit where it is rather than rejecting it
+                if (priority.compareTo(pending.priority) < 0 && raised.size() < maxQueuedPerPriority) {
+                    queues.get(pending.priority).remove(pending);
+                    pending.priority = priority;
+                    raised.addLast(pending);
+                    lock.notifyAll();
+                }
+                coalesced.incrementAndGet();
+                result = pending.future;
+            } else {
+                Outbound edit = new Outbound(priority, "channel:" + channelId, messageId, null);
+                edit.content = content;
+                edit.embed = embed;
+                edit.action = () -> edit.embed == null
+                        ? Message.edit(api, channelId, messageId, edit.content)
+                        : Message.edit(api, channelId, messageId, edit.content, edit.embed);
+                result = enqueue(edit);
+            }
+        }
+        return Tracer.traceFuture("discord.edit", result);
+    }
+
+    public OutboundStats getStats() {
+        Map<SendPriority, Integer> depths = new EnumMap<>(SendPriority.class);
+        synchronized (lock) {
+            for (Map.Entry<SendPriority, Deque<Outbound>> entry : queues.entrySet()) {
+                depths.put(entry.getKey(), entry.getValue().size());
+            }
+        }
+        Map<SendPriority, Long> p95Waits = new EnumMap<>(SendPriority.class);
+        for (Map.Entry<SendPriority, LatencyRecorder> entry : waitTimes.entrySet()) {
+            p95Waits.put(entry.getKey(), entry.getValue().percentile(95));
+        }
+        return new OutboundStats(depths, p95Waits, sent.get(), failed.get(), coalesced.get(), rejected.get());
+    }
+
+    @Scheduled(fixedRate = 300000, initialDelay = 300000)
+    public void logStats() {
+        try (LogContext ignored = LogContext.begin("outbound.stats")) {
+            OutboundStats stats = getStats();
+            if (stats.getSent() == 0 && stats.getBacklog() == 0) {
+                return;
+            }
+            logger.info("Outbound queue: depth={} p95 wait={} sent={} failed={} coalesced={} rejected={}",
+                    stats.getDepths(), stats.getP95WaitMillis(), stats.getSent(), stats.getFailed(),
+                    stats.getCoalesced(), stats.getRejected());
+        }
+    }
+
+    /**
+     * Drops the buckets of routes that have been quiet long enough to refill, which a new bucket
+     * would match anyway. Otherwise every user ever DM'd would keep one.
+     */
+    @Scheduled(fixedRate = 60000, initialDelay = 60000)
+    public void evictIdleRoutes() {
+        synchronized (lock) {
+            routeBuckets.values().removeIf(TokenBucket::isFull);
+        }
+    }
+
+    private CompletableFuture<Message> enqueue(final Outbound outbound) {
+        synchronized (lock) {
+            Deque<Outbound> queue = queues.get(outbound.priority);
+            if (queue.size() >= maxQueuedPerPriority) {
+                rejected.incrementAndGet();
+                outbound.future.completeExceptionally(new RejectedExecutionException(
+                        String.format("Outbound %s queue is full", outbound.priority)));
+                return outbound.future;
+            }
+            queue.addLast(outbound);
+            if (outbound.messageId != null) {
+                pendingEdits.put(outbound.messageId, outbound);
+            }
+            lock.notifyAll();
+        }
+        return outbound.future;
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Outbound next;
+            try {
+                synchronized (lock) {
+                    next = pollReady();
+                    if (next == null) {
+                        long waitMillis = millisUntilReady();
+                        if (waitMillis < 0) {
+                            lock.wait();
+                        } else {
+                            lock.wait(Math.max(1, waitMillis));
+                        }
+                        continue;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            dispatch(next);
+        }
+    }
+
+    private Outbound pollReady() {
+        if (!globalBucket.hasToken()) {
+            return null;
+        }
+        for (Deque<Outbound> queue : queues.values()) {
+            Iterator<Outbound> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Outbound candidate = iterator.next();
+                if (bucketFor(candidate.route).tryConsume()) {
+                    globalBucket.tryConsume();
+                    iterator.remove();
+                    if (candidate.messageId != null) {
+                        pendingEdits.remove(candidate.messageId);
+                    }
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private long millisUntilReady() {
+        long waitNanos = Long.MAX_VALUE;
+        for (Deque<Outbound> queue : queues.values()) {
+            for (Outbound outbound : queue) {
+                waitNanos = Math.min(waitNanos, bucketFor(outbound.route).nanosUntilAvailable());
+            }
+        }
+        if (waitNanos == Long.MAX_VALUE) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(waitNanos, globalBucket.nanosUntilAvailable()));
+    }
+
+    private TokenBucket bucketFor(final String route) {
+        return routeBuckets.computeIfAbsent(route, key -> new TokenBucket(routeBurst, routePerSecond));
+    }
+
+    private void dispatch(final Outbound outbound) {
+        waitTimes.get(outbound.priority).record(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - outbound.enqueuedAt));
+        CompletableFuture<Message> result;
+        try {
+            result = outbound.action.get();
+        } catch (RuntimeException ex) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+        }
+        result.whenComplete((message, ex) -> {
+            if (ex != null) {
+                failed.incrementAndGet();
+                logger.warn("Outbound {} message to {} failed: {}",
+                        outbound.priority, outbound.route, ex.getMessage());
+                outbound.future.completeExceptionally(ex);
+            } else {
+                sent.incrementAndGet();
+                outbound.future.complete(message);
+            }
+        });
+    }
+
+    private static class Outbound {
+
+        private final String route;
+        private final Long messageId;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        private SendPriority priority;
+        private Supplier<CompletableFuture<Message>> action;
+        private volatile String content;
+        private volatile EmbedBuilder embed;
+
+        private Outbound(
+                final SendPriority priority,
+                final String route,
+                final Long messageId,
+                final Supplier<CompletableFuture<Message>> action) {
+            this.priority = priority;
+            this.route = route;
+            this.messageId = messageId;
+            this.action = action;
+        }
+    }
+
+    public static class OutboundStats {
+
+        private final Map<SendPriority, Integer> depths;
+        private final Map<SendPriority, Long> p95WaitMillis;
+        private final long sent;
+        private final long failed;
+        private final long coalesced;
+        private final long rejected;
+
+        public OutboundStats(
+                final Map<SendPriority, Integer> depths,
+                final Map<SendPriority, Long> p95WaitMillis,
+                final long sent,
+                final long failed,
+                final long coalesced,
+                final long rejected) {
+            this.depths = depths;
+            this.p95WaitMillis = p95WaitMillis;
+            this.sent = sent;
+            this.failed = failed;
+            this.coalesced = coalesced;
+            this.rejected = rejected;
+        }
+
+        public Map<SendPriority, Integer> getDepths() {
+            return depths;
+        }
+
+        public int getBacklog() {
+            return depths.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        public Map<SendPriority, Long> getP95WaitMillis() {
+            return p95WaitMillis;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package tv.racespot.racespotlivebot.service.outbound;
+
+public enum SendPriority {
+
+    LIVE,
+    INTERACTIVE,
+    SCHEDULE,
+    DIAGNOSTIC
+}
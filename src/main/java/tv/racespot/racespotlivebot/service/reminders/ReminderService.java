@@ -0,0 +1,210 @@
+package tv.racespot.racespotlivebot.service.reminders;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.javacord.api.entity.channel.ServerTextChannel;
+import org.javacord.api.entity.message.MessageBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.data.ScheduledEvent;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.service.ScheduleIndex;
+import tv.racespot.racespotlivebot.service.gateway.ShardManager;
+import tv.racespot.racespotlivebot.service.outbound.OutboundMessageQueue;
+import tv.racespot.racespotlivebot.service.outbound.SendPriority;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.ScheduleTimes;
+import tv.racespot.racespotlivebot.util.TimingWheel;
+import tv.racespot.racespotlivebot.util.TimingWheel.Timeout;
+
+/**
+ * Reminds talent ahead of their shows. Every scheduled event gets one timeout per configured
+ * offset on a hashed timing wheel; rescheduling an event cancels its timeouts and adds new ones.
+ * Who is on the event is looked up when a reminder fires, so a talent swap needs no
+ * rescheduling. Reminders that come due on the same tick go out together in as few messages
+ * as fit.
+ */
+public class ReminderService {
+
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+    private static final int WHEEL_SLOTS = 4096;
+
+    @Value("${discord.notification.talent_channel_id}")
+    private String talentChannelId;
+
+    private final List<Duration> offsets;
+    private final ScheduleIndex scheduleIndex;
+    private final ShardManager shardManager;
+    private final OutboundMessageQueue outboundQueue;
+    private final LeaderElection leaderElection;
+
+    private final TimingWheel<Reminder> wheel;
+    private final Map<String, List<Timeout<Reminder>>> timeoutsByEvent = new HashMap<>();
+
+    private final Logger logger;
+
+    public ReminderService(
+            final List<Duration> offsets,
+            final long tickMillis,
+            final ScheduleIndex scheduleIndex,
+            final ShardManager shardManager,
+            final OutboundMessageQueue outboundQueue,
+            final LeaderElection leaderElection) {
+        this.offsets = new ArrayList<>(offsets);
+        this.scheduleIndex = scheduleIndex;
+        this.shardManager = shardManager;
+        this.outboundQueue = outboundQueue;
+        this.leaderElection = leaderElection;
+        this.wheel = new TimingWheel<>(tickMillis, WHEEL_SLOTS, System.currentTimeMillis());
+
+        this.logger = LoggerFactory.getLogger(ReminderService.class);
+    }
+
+    /**
+     * Re-creates every pending reminder from the indexed schedule.
+     */
+    public synchronized void rebuild() {
+        wheel.clear(System.currentTimeMillis());
+        timeoutsByEvent.clear();
+        for (ScheduledEvent event : scheduleIndex.getEvents()) {
+            schedule(event);
+        }
+        logger.info("Reminder wheel rebuilt with {} pending reminders", wheel.size());
+    }
+
+    /**
+     * Replaces the event's reminders with ones for its current start time. Offsets that are
+     * already in the past are skipped rather than sent late.
+     */
+    public synchronized void schedule(final ScheduledEvent event) {
+        cancel(event.getId());
+        // rows stored before the start was parsed at ingest still carry only the sheet text
+        Optional<Instant> start = event.getStartsAt() != null
+                ? Optional.of(event.getStartsAt())
+                : ScheduleTimes.parseStart(event.getDate(), event.getTime(), Instant.now());
+        if (!start.isPresent()) {
+            logger.debug("No reminders for {}, start '{} {}' is unreadable",
+                    event.getSeriesName(), event.getDate(), event.getTime());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Timeout<Reminder>> timeouts = new ArrayList<>();
+        for (Duration offset : offsets) {
+            long fireAt = start.get().minus(offset).toEpochMilli();
+            if (fireAt > now) {
+                timeouts.add(wheel.add(fireAt, new Reminder(event.getId(), offset)));
+            }
+        }
+        if (!timeouts.isEmpty()) {
+            timeoutsByEvent.put(event.getId(), timeouts);
+        }
+    }
+
+    public synchronized void cancel(final String eventId) {
+        List<Timeout<Reminder>> timeouts = timeoutsByEvent.remove(eventId);
+        if (timeouts != null) {
+            timeouts.forEach(wheel::cancel);
+        }
+    }
+
+    public synchronized void cancelAll() {
+        wheel.clear(System.currentTimeMillis());
+        timeoutsByEvent.clear();
+    }
+
+    public synchronized int getPending() {
+        return wheel.size();
+    }
+
+    @Scheduled(fixedRateString = "${reminders.tick_millis:30000}")
+    public void tick() {
+        try (LogContext ignored = LogContext.begin("reminders.tick")) {
+            // a takeover reloads the index and this wheel through the leadership listener
+            boolean leader = leaderElection.isLeader();
+
+            List<Reminder> due;
+            synchronized (this) {
+                due = wheel.advance(System.currentTimeMillis());
+                for (Reminder reminder : due) {
+                    List<Timeout<Reminder>> timeouts = timeoutsByEvent.get(reminder.eventId);
+                    if (timeouts != null) {
+                        timeouts.removeIf(timeout -> timeout.getPayload() == reminder);
+                        if (timeouts.isEmpty()) {
+                            timeoutsByEvent.remove(reminder.eventId);
+                        }
+                    }
+                }
+            }
+            if (leader && !due.isEmpty()) {
+                send(due);
+            }
+        }
+    }
+
+    private void send(final List<Reminder> due) {
+        Optional<ServerTextChannel> channel = shardManager.getServerTextChannelById(talentChannelId);
+        if (!channel.isPresent()) {
+            logger.warn("Talent channel {} not found, dropped {} reminders", talentChannelId, due.size());
+            return;
+        }
+        List<String> messages = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (Reminder reminder : due) {
+            Optional<ScheduledEvent> event = scheduleIndex.getEvent(reminder.eventId);
+            if (!event.isPresent()) {
+                continue;
+            }
+            String line = StringUtils.abbreviate(render(event.get(), reminder.offset), MAX_MESSAGE_LENGTH - 1);
+            if (current.length() + line.length() + 1 > MAX_MESSAGE_LENGTH) {
+                messages.add(current.toString());
+                current.setLength(0);
+            }
+            current.append(line).append('\n');
+        }
+        if (current.length() > 0) {
+            messages.add(current.toString());
+        }
+        for (String message : messages) {
+            outboundQueue.send(SendPriority.SCHEDULE, channel.get(), new MessageBuilder().append(message));
+        }
+        logger.info("Sent {} reminders in {} messages", due.size(), messages.size());
+    }
+
+    private String render(final ScheduledEvent event, final Duration offset) {
+        Set<String> talent = new LinkedHashSet<>();
+        for (String name : new String[] {event.getProducer(), event.getLeadCommentator(),
+                event.getColourOne(), event.getColourTwo()}) {
+            if (StringUtils.isNotBlank(name)) {
+                talent.add(scheduleIndex.findUserId(name).map(id -> String.format("<@%d>", id)).orElse(name));
+            }
+        }
+        String starts = offset.toMinutes() % 60 == 0
+                ? String.format("%d h", offset.toHours())
+                : String.format("%d min", offset.toMinutes());
+        return String.format("%s: %s (%s %s) starts in %s",
+                talent.isEmpty() ? "TBD" : String.join(", ", talent),
+                event.getSeriesName(), event.getDate(), event.getTime(), starts);
+    }
+
+    private static class Reminder {
+
+        private final String eventId;
+        private final Duration offset;
+
+        private Reminder(final String eventId, final Duration offset) {
+            this.eventId = eventId;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.util.LatencyRecorder;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Tracer;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpRequestInitializer;
+
+/**
+ * Wraps every call to one Google API with a timeout and a circuit breaker. Idempotent reads that
+ * are still running after the operation's p95 get a second, hedged request and the first answer
+ * wins. The latency of the primary request alone is kept next to the observed latency, so the
+ * stats show the tail both with and without hedging. The request that loses is cancelled, and a
+ * request can register the response it reads with {@link #closeOnCancel(Closeable)} so that
+ * cancelling it also cuts the connection.
+ */
+public class ApiGuard {
+
+    private static final int MIN_SAMPLES_FOR_HEDGE = 20;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    private static final ThreadLocal<Attempt> CURRENT_ATTEMPT = new ThreadLocal<>();
+
+    private final String name;
+    private final long timeoutMillis;
+    private final boolean hedgingEnabled;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final ExecutorService executor;
+
+    private final Map<String, LatencyRecorder> primaryLatencyByOperation = new ConcurrentHashMap<>();
+    private final LatencyRecorder observedLatency = new LatencyRecorder(1024);
+    private final LatencyRecorder unhedgedLatency = new LatencyRecorder(1024);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private final Object breakerLock = new Object();
+    private BreakerState state = BreakerState.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilMillis;
+    private boolean trialInFlight;
+
+    private volatile Consumer<String> degradedListener = message -> { };
+
+    private final Logger logger;
+
+    public ApiGuard(
+            final String name,
+            final long timeoutMillis,
+            final boolean hedgingEnabled,
+            final int failureThreshold,
+            final long openMillis) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.hedgingEnabled = hedgingEnabled;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-api-%d", name, threads.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.logger = LoggerFactory.getLogger(ApiGuard.class);
+    }
+
+    public void setDegradedListener(final Consumer<String> degradedListener) {
+        this.degradedListener = degradedListener;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Socket level timeouts for the Google client, so a hung connection is also cut off below the
+     * overall call timeout.
+     */
+    public HttpRequestInitializer withTimeouts(final HttpRequestInitializer delegate) {
+        return request -> {
+            if (delegate != null) {
+                delegate.initialize(request);
+            }
+            request.setConnectTimeout((int) timeoutMillis);
+            request.setReadTimeout((int) timeoutMillis);
+        };
+    }
+
+    public <T> T call(final String operation, final boolean idempotent, final Callable<T> request) throws IOException {
+        boolean trial = acquirePermission();
+        calls.incrementAndGet();
+        long start = System.nanoTime();
+        LatencyRecorder primaryLatency = primaryLatencyByOperation.computeIfAbsent(operation, key -> new LatencyRecorder(256));
+        Span span = Tracer.startSpan(operation);
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Attempt primary = submit(request, result, start, primaryLatency);
+        Attempt hedge = null;
+        try {
+            long hedgeDelay = getHedgeDelayMillis(primaryLatency);
+            if (idempotent && hedgingEnabled && hedgeDelay > 0 && hedgeDelay < timeoutMillis) {
+                try {
+                    T value = result.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                    return succeeded(start, value);
+                } catch (TimeoutException ex) {
+                    hedges.incrementAndGet();
+                    span.setDetail("hedged");
+                    hedge = submit(request, result, System.nanoTime(), null);
+                }
+            }
+            long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            T value = result.get(Math.max(1, remaining), TimeUnit.MILLISECONDS);
+            return succeeded(start, value);
+        } catch (TimeoutException ex) {
+            timeouts.incrementAndGet();
+            span.markFailed();
+            observedLatency.record(timeoutMillis);
+            recordFailure();
+            throw new IOException(String.format("%s %s timed out after %d ms", name, operation, timeoutMillis));
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            span.markFailed();
+            observedLatency.record(elapsedMillis(start));
+            if (isServerSideFailure(cause)) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(String.format("%s %s failed: %s", name, operation, cause.getMessage()), cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("%s %s interrupted", name, operation), ex);
+        } finally {
+            // whichever request lost (or both, on a timeout) stops holding a thread and a connection
+            primary.cancel();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+            if (trial) {
+                // a trial that ended without a verdict (e.g. interrupted) must not hold the breaker half open
+                releaseTrial();
+            }
+            span.close();
+        }
+    }
+
+    /**
+     * Closes {@code resource} if the request running on this thread is cancelled before it
+     * finishes, e.g. because its hedge answered first. Does nothing outside a guarded request.
+     */
+    public static void closeOnCancel(final Closeable resource) {
+        Attempt attempt = CURRENT_ATTEMPT.get();
+        if (attempt != null) {
+            attempt.register(resource);
+        }
+    }
+
+    public ApiStats getStats() {
+        BreakerState currentState;
+        synchronized (breakerLock) {
+            currentState = state;
+        }
+        return new ApiStats(
+                name,
+                currentState,
+                hedgingEnabled,
+                calls.get(),
+                failures.get(),
+                timeouts.get(),
+                shortCircuited.get(),
+                hedges.get(),
+                hedgeWins.get(),
+                observedLatency.summary(),
+                observedLatency.percentile(99),
+                unhedgedLatency.summary(),
+                unhedgedLatency.percentile(99));
+    }
+
+    @Scheduled(fixedRate = 300000, initialDelay = 300000)
+    public void logStats() {
+        try (LogContext ignored = LogContext.begin("apiguard.stats")) {
+            ApiStats stats = getStats();
+            if (stats.getCalls() == 0) {
+                return;
+            }
+            logger.info(
+                    "{} API {}: calls={} failures={} timeouts={} short-circuited={} hedges={} hedge wins={}, hedging on: {} p99={}ms, hedging off: {} p99={}ms",
+                    name, stats.getState(), stats.getCalls(), stats.getFailures(), stats.getTimeouts(),
+                    stats.getShortCircuited(), stats.getHedges(), stats.getHedgeWins(),
+                    stats.getObservedSummary(), stats.getObservedP99Millis(),
+                    stats.getUnhedgedSummary(), stats.getUnhedgedP99Millis());
+        }
+    }
+
+    private <T> Attempt submit(
+            final Callable<T> request,
+            final CompletableFuture<T> result,
+            final long start,
+            final LatencyRecorder primaryLatency) {
+        boolean isHedge = primaryLatency == null;
+        Attempt attempt = new Attempt();
+        attempt.future = executor.submit(() -> {
+            CURRENT_ATTEMPT.set(attempt);
+            try {
+                T value = request.call();
+                if (result.complete(value) && isHedge) {
+                    hedgeWins.incrementAndGet();
+                }
+            } catch (Throwable ex) {
+                // a failed hedge leaves the primary to answer
+                if (!isHedge) {
+                    result.completeExceptionally(ex);
+                }
+            } finally {
+                CURRENT_ATTEMPT.remove();
+                attempt.finish();
+                if (!isHedge) {
+                    // how long the call takes on its own; for a primary cut off by its hedge this
+                    // is a lower bound, but still one above the hedge delay it was measured against
+                    long millis = elapsedMillis(start);
+                    primaryLatency.record(millis);
+                    unhedgedLatency.record(millis);
+                }
+            }
+        });
+        return attempt;
+    }
+
+    private <T> T succeeded(final long start, final T value) {
+        observedLatency.record(elapsedMillis(start));
+        recordSuccess();
+        return value;
+    }
+
+    private long getHedgeDelayMillis(final LatencyRecorder primaryLatency) {
+        if (primaryLatency.getCount() < MIN_SAMPLES_FOR_HEDGE) {
+            return 0;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, primaryLatency.percentile(95));
+    }
+
+    /**
+     * Returns true when the call is the half-open trial.
+     */
+    private boolean acquirePermission() throws IOException {
+        synchronized (breakerLock) {
+            if (state == BreakerState.CLOSED) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (state == BreakerState.OPEN && now >= openUntilMillis) {
+                state = BreakerState.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == BreakerState.HALF_OPEN && !trialInFlight) {
+                trialInFlight = true;
+                return true;
+            }
+            shortCircuited.incrementAndGet();
+            throw new ApiUnavailableException(String.format(
+                    "The %s API is degraded, calls are paused for another %d s",
+                    name, Math.max(1, (openUntilMillis - now) / 1000)));
+        }
+    }
+
+    private void releaseTrial() {
+        synchronized (breakerLock) {
+            if (state == BreakerState.HALF_OPEN) {
+                trialInFlight = false;
+            }
+        }
+    }
+
+    private void recordSuccess() {
+        boolean recovered;
+        synchronized (breakerLock) {
+            recovered = state != BreakerState.CLOSED;
+            state = BreakerState.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+        if (recovered) {
+            logger.info("{} API recovered, circuit closed", name);
+            degradedListener.accept(String.format("The %s API has recovered.", name));
+        }
+    }
+
+    private void recordFailure() {
+        failures.incrementAndGet();
+        boolean opened = false;
+        synchronized (breakerLock) {
+            consecutiveFailures++;
+            if (state == BreakerState.HALF_OPEN
+                    || (state == BreakerState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                opened = state == BreakerState.CLOSED;
+                state = BreakerState.OPEN;
+                openUntilMillis = System.currentTimeMillis() + openMillis;
+                trialInFlight = false;
+            }
+        }
+        if (opened) {
+            String message = String.format(
+                    "The %s API failed %d times in a row, pausing calls for %d s. Commands that need it will fail fast until it recovers.",
+                    name, failureThreshold, openMillis / 1000);
+            logger.error(message);
+            degradedListener.accept(message);
+        }
+    }
+
+    private static boolean isServerSideFailure(final Throwable error) {
+        if (error instanceof GoogleJsonResponseException) {
+            int status = ((GoogleJsonResponseException) error).getStatusCode();
+            return status >= 500 || status == 429;
+        }
+        return error instanceof IOException;
+    }
+
+    private static long elapsedMillis(final long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    public enum BreakerState {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * One submitted request, with the responses it asked to have closed if it is cancelled.
+     */
+    private static final class Attempt {
+
+        private final List<Closeable> resources = new ArrayList<>();
+        private Future<?> future;
+        private boolean finished;
+        private boolean cancelled;
+
+        void register(final Closeable resource) {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                if (!cancelled) {
+                    resources.add(resource);
+                    return;
+                }
+            }
+            closeQuietly(resource);
+        }
+
+        synchronized void finish() {
+            finished = true;
+            resources.clear();
+        }
+
+        void cancel() {
+            future.cancel(true);
+            List<Closeable> open;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                cancelled = true;
+                open = new ArrayList<>(resources);
+                resources.clear();
+            }
+            // interrupting alone does not stop a blocking socket read
+            open.forEach(Attempt::closeQuietly);
+        }
+
+        private static void closeQuietly(final Closeable resource) {
+            try {
+                resource.close();
+            } catch (IOException ex) {
+                // the request fails on its own thread, which is all that is wanted here
+            }
+        }
+    }
+
+    public static class ApiUnavailableException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ApiUnavailableException(final String message) {
+            super(message);
+        }
+    }
+
+    public static class ApiStats {
+
+        private final String name;
+        private final BreakerState state;
+        private final boolean hedgingEnabled;
+        private final long calls;
+        private final long failures;
+        private final long timeouts;
+        private final long shortCircuited;
+        private final long hedges;
+        private final long hedgeWins;
+        private final String observedSummary;
+        private final long observedP99Millis;
+        private final String unhedgedSummary;
+        private final long unhedgedP99Millis;
+
+        public ApiStats(
+                final String name,
+                final BreakerState state,
+                final boolean hedgingEnabled,
+                final long calls,
+                final long failures,
+                final long timeouts,
+                final long shortCircuited,
+                final long hedges,
+                final long hedgeWins,
+                final String observedSummary,
+                final long observedP99Millis,
+                final String unhedgedSummary,
+                final long unhedgedP99Millis) {
+            this.name = name;
+            this.state = state;
+            this.hedgingEnabled = hedgingEnabled;
+            this.calls = calls;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.shortCircuited = shortCircuited;
+            this.hedges = hedges;
+            this.hedgeWins = hedgeWins;
+            this.observedSummary = observedSummary;
+            this.observedP99Millis = observedP99Millis;
+            this.unhedgedSummary = unhedgedSummary;
+            this.unhedgedP99Millis = unhedgedP99Millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BreakerState getState() {
+            return state;
+        }
+
+        public boolean isHedgingEnabled() {
+            return hedgingEnabled;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getShortCircuited() {
+            return shortCircuited;
+        }
+
+        public long getHedges() {
+            return hedges;
+        }
+
+        public long getHedgeWins() {
+            return hedgeWins;
+        }
+
+        public String getObservedSummary() {
+            return observedSummary;
+        }
+
+        public long getObservedP99Millis() {
+            return observedP99Millis;
+        }
+
+        public String getUnhedgedSummary() {
+            return unhedgedSummary;
+        }
+
+        public long getUnhedgedP99Millis() {
+            return unhedgedP99Millis;
+        }
+    }
+}
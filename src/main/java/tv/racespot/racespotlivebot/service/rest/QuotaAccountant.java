@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+/**
+ * Charges every YouTube call its unit cost against a pool of API keys and plans the poll
+ * interval so the projected daily spend stays inside the budget. Quota resets at midnight
+ * Pacific time, matching the YouTube Data API.
+ */
+public class QuotaAccountant {
+
+    private static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+    private static final int MAX_IDS_PER_CALL = 50;
+
+    @Value("${youtube.quota.daily_units_per_key:10000}")
+    private long dailyUnitsPerKey;
+    @Value("${youtube.quota.reserve_fraction:0.2}")
+    private double reserveFraction;
+    @Value("${youtube.poll_interval_millis:300000}")
+    private long minPollIntervalMillis;
+    @Value("${youtube.poll_max_interval_millis:3600000}")
+    private long maxPollIntervalMillis;
+
+    private final List<String> apiKeys;
+
+    private final Map<String, Long> usedByKey = new LinkedHashMap<>();
+    private final Set<String> exhaustedKeys = new HashSet<>();
+    private final Map<YouTubeOperation, Long> usedByOperation = new EnumMap<>(YouTubeOperation.class);
+    private LocalDate quotaDay;
+    private long plannedIntervalMillis;
+    private int trackedEvents;
+
+    private final Logger logger;
+
+    public QuotaAccountant(final List<String> apiKeys) {
+        if (apiKeys.isEmpty()) {
+            throw new IllegalArgumentException("At least one YouTube API key is required");
+        }
+        this.apiKeys = new ArrayList<>(apiKeys);
+        for (String key : apiKeys) {
+            usedByKey.put(key, 0L);
+        }
+        this.quotaDay = LocalDate.now(QUOTA_ZONE);
+
+        this.logger = LoggerFactory.getLogger(QuotaAccountant.class);
+    }
+
+    /**
+     * Picks the key with the most budget left and charges it. Returns null when every key is
+     * spent for the day.
+     */
+    public synchronized String charge(final YouTubeOperation operation) {
+        rollOverIfNewDay();
+        String bestKey = null;
+        long bestRemaining = 0;
+        for (String key : apiKeys) {
+            long remaining = exhaustedKeys.contains(key) ? 0 : dailyUnitsPerKey - usedByKey.get(key);
+            if (remaining >= operation.getCost() && remaining > bestRemaining) {
+                bestKey = key;
+                bestRemaining = remaining;
+            }
+        }
+        if (bestKey == null) {
+            logger.warn("No YouTube quota left for {}", operation);
+            return null;
+        }
+        usedByKey.merge(bestKey, (long) operation.getCost(), Long::sum);
+        usedByOperation.merge(operation, (long) operation.getCost(), Long::sum);
+        return bestKey;
+    }
+
+    /**
+     * Charges a key that has already been handed out, for a repeat of the same request.
+     */
+    public synchronized void chargeKey(final String key, final YouTubeOperation operation) {
+        rollOverIfNewDay();
+        usedByKey.merge(key, (long) operation.getCost(), Long::sum);
+        usedByOperation.merge(operation, (long) operation.getCost(), Long::sum);
+    }
+
+    /**
+     * Called when YouTube reports a key over quota even though our own count says otherwise.
+     */
+    public synchronized void markExhausted(final String key) {
+        exhaustedKeys.add(key);
+        logger.warn("YouTube key ending {} reported quota exceeded", mask(key));
+    }
+
+    /**
+     * Returns how long to wait before the next poll of {@code trackedEvents} scheduled events.
+     * Spreads the spendable budget left today (minus the reserve kept for commands and push
+     * checks) evenly over the time left until reset.
+     */
+    public synchronized long planPollInterval(final int trackedEvents) {
+        rollOverIfNewDay();
+        this.trackedEvents = trackedEvents;
+        if (trackedEvents == 0) {
+            plannedIntervalMillis = minPollIntervalMillis;
+            return plannedIntervalMillis;
+        }
+        long costPerPoll = getCostPerPoll(trackedEvents);
+        long spendable = getRemainingUnits() - Math.round(getTotalBudget() * reserveFraction);
+        long millisToReset = getMillisUntilReset();
+
+        long interval;
+        if (spendable < costPerPoll) {
+            interval = maxPollIntervalMillis;
+        } else {
+            long affordablePolls = spendable / costPerPoll;
+            interval = millisToReset / affordablePolls;
+        }
+        plannedIntervalMillis = Math.max(minPollIntervalMillis, Math.min(maxPollIntervalMillis, interval));
+        return plannedIntervalMillis;
+    }
+
+    public synchronized QuotaSnapshot getSnapshot() {
+        rollOverIfNewDay();
+        long used = getUsedUnits();
+        long interval = plannedIntervalMillis > 0 ? plannedIntervalMillis : minPollIntervalMillis;
+        long projected = used + getCostPerPoll(trackedEvents) * (getMillisUntilReset() / interval);
+        return new QuotaSnapshot(
+            used,
+            getTotalBudget(),
+            projected,
+            interval,
+            apiKeys.size() - exhaustedKeys.size(),
+            new EnumMap<>(usedByOperation));
+    }
+
+    @Scheduled(fixedRate = 1800000, initialDelay = 1800000)
+    public void logBudget() {
+        try (LogContext ignored = LogContext.begin("quota.stats")) {
+            QuotaSnapshot snapshot = getSnapshot();
+            logger.info("YouTube quota: {}/{} units used, {} remaining, {} projected by reset, poll interval {} s, {}/{} keys usable, by call {}",
+                snapshot.getUsedUnits(), snapshot.getBudgetUnits(), snapshot.getRemainingUnits(), snapshot.getProjectedUnits(),
+                snapshot.getPollIntervalMillis() / 1000, snapshot.getUsableKeys(), apiKeys.size(), snapshot.getUsedByOperation());
+        }
+    }
+
+    private long getCostPerPoll(final int trackedEvents) {
+        long videoCalls = (trackedEvents + MAX_IDS_PER_CALL - 1) / MAX_IDS_PER_CALL;
+        return videoCalls * YouTubeOperation.VIDEOS_LIST.getCost();
+    }
+
+    private long getUsedUnits() {
+        return usedByKey.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private long getTotalBudget() {
+        return dailyUnitsPerKey * apiKeys.size();
+    }
+
+    private long getRemainingUnits() {
+        long remaining = 0;
+        for (String key : apiKeys) {
+            if (!exhaustedKeys.contains(key)) {
+                remaining += Math.max(0, dailyUnitsPerKey - usedByKey.get(key));
+            }
+        }
+        return remaining;
+    }
+
+    private long getMillisUntilReset() {
+        Instant reset = quotaDay.plusDays(1).atStartOfDay(QUOTA_ZONE).toInstant();
+        return Math.max(1, Duration.between(Instant.now(), reset).toMillis());
+    }
+
+    private void rollOverIfNewDay() {
+        LocalDate today = LocalDate.now(QUOTA_ZONE);
+        if (today.equals(quotaDay)) {
+            return;
+        }
+        logger.info("YouTube quota day {} closed with {} units used", quotaDay, getUsedUnits());
+        quotaDay = today;
+        usedByKey.replaceAll((key, used) -> 0L);
+        usedByOperation.clear();
+        exhaustedKeys.clear();
+    }
+
+    private static String mask(final String key) {
+        return key.length() <= 4 ? "****" : key.substring(key.length() - 4);
+    }
+
+    public static class QuotaSnapshot {
+
+        private final long usedUnits;
+        private final long budgetUnits;
+        private final long projectedUnits;
+        private final long pollIntervalMillis;
+        private final int usableKeys;
+        private final Map<YouTubeOperation, Long> usedByOperation;
+
+        public QuotaSnapshot(
+            final long usedUnits,
+            final long budgetUnits,
+            final long projectedUnits,
+            final long pollIntervalMillis,
+            final int usableKeys,
+            final Map<YouTubeOperation, Long> usedByOperation) {
+            this.usedUnits = usedUnits;
+            this.budgetUnits = budgetUnits;
+            this.projectedUnits = projectedUnits;
+            this.pollIntervalMillis = pollIntervalMillis;
+            this.usableKeys = usableKeys;
+            this.usedByOperation = usedByOperation;
+        }
+
+        public long getUsedUnits() {
+            return usedUnits;
+        }
+
+        public long getBudgetUnits() {
+            return budgetUnits;
+        }
+
+        public long getRemainingUnits() {
+            return Math.max(0, budgetUnits - usedUnits);
+        }
+
+        public long getProjectedUnits() {
+            return projectedUnits;
+        }
+
+        public long getPollIntervalMillis() {
+            return pollIntervalMillis;
+        }
+
+        public int getUsableKeys() {
+            return usableKeys;
+        }
+
+        public Map<YouTubeOperation, Long> getUsedByOperation() {
+            return usedByOperation;
+        }
+    }
+}
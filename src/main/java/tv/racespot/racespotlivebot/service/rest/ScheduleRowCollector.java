@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import tv.racespot.racespotlivebot.data.ScheduledEvent;
+import tv.racespot.racespotlivebot.util.MasterScheduleCSVInputs;
+import tv.racespot.racespotlivebot.util.ScheduleTimes;
+
+/**
+ * Turns the rows of one fetched range into {@link ScheduledEvent}s. The first row is the header.
+ * Rows with fewer than 14 cells are skipped without using up an index, matching how the
+ * attendance writes locate rows; rows without a series use up an index but produce no event.
+ */
+class ScheduleRowCollector {
+
+    static final int MIN_CELLS = 14;
+
+    private final int gid;
+    private final String title;
+    private final Instant now;
+
+    private final List<ScheduledEvent> entries = new ArrayList<>();
+    private final List<ScheduledEvent> unreadable = new ArrayList<>();
+    private final List<Integer> unreadableRows = new ArrayList<>();
+
+    private boolean headerSeen;
+    private int index;
+    private int rowNumber;
+
+    ScheduleRowCollector(final int gid, final String title, final int startRow, final Instant now) {
+        this.gid = gid;
+        this.title = title;
+        this.now = now;
+        this.index = startRow + 1;
+        this.rowNumber = startRow + 1;
+    }
+
+    /**
+     * Whether a row with this series value produces an event; lets a decoder stop reading the
+     * rest of a row that does not.
+     */
+    static boolean isSeriesRow(final String seriesName) {
+        return StringUtils.isNotEmpty(seriesName);
+    }
+
+    void accept(final SheetRow row) {
+        if (!headerSeen) {
+            headerSeen = true;
+            return;
+        }
+        rowNumber++;
+        if (row.getCellCount() < MIN_CELLS) {
+            return;
+        }
+        if (!isSeriesRow(row.get(MasterScheduleCSVInputs.SERIES_REF))) {
+            index++;
+            return;
+        }
+
+        ScheduledEvent event = new ScheduledEvent();
+        event.setDate(row.get(MasterScheduleCSVInputs.DATE_REF));
+        event.setTime(row.get(MasterScheduleCSVInputs.UTC_REF));
+        event.setPublic("yes".equalsIgnoreCase(row.get(MasterScheduleCSVInputs.PUBLIC_REF)));
+        event.setSeriesName(row.get(MasterScheduleCSVInputs.SERIES_REF));
+        event.setDescription(StringUtils.defaultString(row.get(MasterScheduleCSVInputs.DESCRIPTION_REF)));
+        event.setProducer(row.get(MasterScheduleCSVInputs.PROD_REF));
+        event.setLeadCommentator(row.get(MasterScheduleCSVInputs.COMM_1_REF));
+        event.setColourOne(row.get(MasterScheduleCSVInputs.COMM_2_REF));
+        event.setColourTwo(row.get(MasterScheduleCSVInputs.COMM_3_REF));
+        event.setStreamLocation(row.get(MasterScheduleCSVInputs.STREAMED_AT_REF));
+        event.setWebcam("yes".equalsIgnoreCase(row.get(MasterScheduleCSVInputs.ZOOM_REF)));
+        event.setNotes(row.get(MasterScheduleCSVInputs.NOTES_REF));
+        event.setIndex(index);
+        event.setSourceGid(gid);
+        event.setRed(row.getRed());
+        event.setGreen(row.getGreen());
+        event.setBlue(row.getBlue());
+
+        event.setStartsAt(ScheduleTimes.parseStart(event.getDate(), event.getTime(), now).orElse(null));
+        if (event.getStartsAt() == null) {
+            unreadable.add(event);
+            unreadableRows.add(rowNumber);
+        }
+        entries.add(event);
+        index++;
+    }
+
+    List<ScheduledEvent> getEntries() {
+        return entries;
+    }
+
+    List<String> getParseErrors() {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < unreadable.size(); i++) {
+            ScheduledEvent event = unreadable.get(i);
+            errors.add(String.format("%s row %d (%s): unreadable date '%s' or time '%s'",
+                title, unreadableRows.get(i), event.getSeriesName(), event.getDate(), event.getTime()));
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import tv.racespot.racespotlivebot.data.ScheduledEvent;
+
+/**
+ * One parsed read of the weekly schedule. The parsed rows are never handed out directly;
+ * callers get their own copies, since the commands go on to fill in and save them.
+ */
+public class ScheduleSnapshot {
+
+    private final long version;
+    private final Instant fetchedAt;
+    private final List<ScheduledEvent> events;
+    private final List<String> parseErrors;
+
+    public ScheduleSnapshot(
+        final long version,
+        final Instant fetchedAt,
+        final List<ScheduledEvent> events,
+        final List<String> parseErrors) {
+        this.version = version;
+        this.fetchedAt = fetchedAt;
+        this.events = Collections.unmodifiableList(copy(events));
+        this.parseErrors = Collections.unmodifiableList(new ArrayList<>(parseErrors));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * One line per row whose date or time cell could not be read.
+     */
+    public List<String> getParseErrors() {
+        return parseErrors;
+    }
+
+    public boolean isOlderThan(final Duration ttl) {
+        return fetchedAt.plus(ttl).isBefore(Instant.now());
+    }
+
+    public List<ScheduledEvent> getEvents() {
+        return copy(events);
+    }
+
+    private static List<ScheduledEvent> copy(final List<ScheduledEvent> events) {
+        return events.stream().map(ScheduledEvent::new).collect(Collectors.toList());
+    }
+}
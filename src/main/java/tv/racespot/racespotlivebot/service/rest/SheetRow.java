@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.util.Arrays;
+
+import tv.racespot.racespotlivebot.util.MasterScheduleCSVInputs;
+
+/**
+ * The parts of one sheet row the schedule parser reads: the displayed value of each column up
+ * to {@link MasterScheduleCSVInputs#LAST_REF}, how many cells the row had, and the series cell's
+ * background colour. Decoders refill a single instance row after row and copy the rows they
+ * need to keep.
+ */
+class SheetRow {
+
+    private final String[] values = new String[MasterScheduleCSVInputs.LAST_REF + 1];
+    private int cellCount;
+    private float red;
+    private float green;
+    private float blue;
+
+    void reset() {
+        Arrays.fill(values, null);
+        cellCount = 0;
+        red = 0f;
+        green = 0f;
+        blue = 0f;
+    }
+
+    SheetRow copy() {
+        SheetRow copy = new SheetRow();
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        copy.cellCount = cellCount;
+        copy.red = red;
+        copy.green = green;
+        copy.blue = blue;
+        return copy;
+    }
+
+    String get(final int column) {
+        return values[column];
+    }
+
+    void set(final int column, final String value) {
+        if (column < values.length) {
+            values[column] = value;
+        }
+    }
+
+    int getCellCount() {
+        return cellCount;
+    }
+
+    void setCellCount(final int cellCount) {
+        this.cellCount = cellCount;
+    }
+
+    float getRed() {
+        return red;
+    }
+
+    float getGreen() {
+        return green;
+    }
+
+    float getBlue() {
+        return blue;
+    }
+
+    void setColor(final Float red, final Float green, final Float blue) {
+        this.red = red != null ? red : 0f;
+        this.green = green != null ? green : 0f;
+        this.blue = blue != null ? blue : 0f;
+    }
+}
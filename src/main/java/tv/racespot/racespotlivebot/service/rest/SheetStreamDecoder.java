@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import tv.racespot.racespotlivebot.util.MasterScheduleCSVInputs;
+
+/**
+ * Decodes a {@code spreadsheets.get} response token by token instead of building the whole
+ * Spreadsheet object graph. Cells are read into a single reused {@link SheetRow}; once a row's
+ * series cell turns out empty the remaining cells are only counted, and only rows that will
+ * become events are kept as copies, so memory stays bounded by the events kept. Rows are
+ * parsed once the response has been read, in parallel per grid, which also means a grid whose
+ * tab properties or startRow arrive after its rows needs no correcting. A decoder keeps no state
+ * between calls, so a hedged request can decode its own copy of the response alongside the
+ * primary.
+ */
+class SheetStreamDecoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // stand-ins for rows that produce no event, which only count towards the row numbers
+    private static final SheetRow SHORT_ROW = new SheetRow();
+    private static final SheetRow SERIESLESS_ROW = new SheetRow();
+
+    static {
+        SERIESLESS_ROW.setCellCount(ScheduleRowCollector.MIN_CELLS);
+    }
+
+    DecodedSheet decode(final InputStream content) throws IOException {
+        List<RawGrid> grids = new ArrayList<>();
+        try (JsonParser parser = JSON.createParser(content)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("sheets".equals(field)) {
+                    readSheets(parser, grids);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new DecodedSheet(grids, parser.getCurrentLocation().getByteOffset());
+        }
+    }
+
+    private void readSheets(final JsonParser parser, final List<RawGrid> grids) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int gid = 0;
+            String title = null;
+            List<RawGrid> tabGrids = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("properties".equals(field)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String property = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("sheetId".equals(property)) {
+                            gid = parser.getIntValue();
+                        } else if ("title".equals(property)) {
+                            title = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    for (RawGrid grid : tabGrids) {
+                        grid.gid = gid;
+                        grid.title = title;
+                    }
+                } else if ("data".equals(field)) {
+                    expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readGrid(parser, new RawGrid(gid, title), tabGrids);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            grids.addAll(tabGrids);
+        }
+    }
+
+    private void readGrid(final JsonParser parser, final RawGrid grid, final List<RawGrid> grids) throws IOException {
+        boolean hasRows = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("startRow".equals(field)) {
+                grid.startRow = parser.getIntValue();
+            } else if ("rowData".equals(field)) {
+                expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+                hasRows = true;
+                SheetRow row = new SheetRow();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readRow(parser, row);
+                    grid.rows.add(keep(row));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (hasRows) {
+            grids.add(grid);
+        }
+    }
+
+    private static SheetRow keep(final SheetRow row) {
+        if (row.getCellCount() < ScheduleRowCollector.MIN_CELLS) {
+            return SHORT_ROW;
+        }
+        if (!ScheduleRowCollector.isSeriesRow(row.get(MasterScheduleCSVInputs.SERIES_REF))) {
+            return SERIESLESS_ROW;
+        }
+        return row.copy();
+    }
+
+    private void readRow(final JsonParser parser, final SheetRow row) throws IOException {
+        row.reset();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"values".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+            int column = 0;
+            boolean seriesMissing = false;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (seriesMissing || column > MasterScheduleCSVInputs.LAST_REF) {
+                    parser.skipChildren();
+                } else {
+                    readCell(parser, row, column);
+                    if (column == MasterScheduleCSVInputs.SERIES_REF
+                        && !ScheduleRowCollector.isSeriesRow(row.get(column))) {
+                        // the row yields no event, only its length still matters
+                        seriesMissing = true;
+                    }
+                }
+                column++;
+            }
+            row.setCellCount(column);
+        }
+    }
+
+    private void readCell(final JsonParser parser, final SheetRow row, final int column) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("formattedValue".equals(field)) {
+                row.set(column, parser.getText());
+            } else if ("userEnteredFormat".equals(field) && column == MasterScheduleCSVInputs.SERIES_REF) {
+                readSeriesFormat(parser, row);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readSeriesFormat(final JsonParser parser, final SheetRow row) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"backgroundColor".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            Float red = null;
+            Float green = null;
+            Float blue = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String channel = parser.getCurrentName();
+                parser.nextToken();
+                if ("red".equals(channel)) {
+                    red = parser.getFloatValue();
+                } else if ("green".equals(channel)) {
+                    green = parser.getFloatValue();
+                } else if ("blue".equals(channel)) {
+                    blue = parser.getFloatValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            row.setColor(red, green, blue);
+        }
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException(String.format("Unexpected %s in Sheets response at %s, expected %s",
+                actual, parser.getCurrentLocation(), expected));
+        }
+    }
+
+    /**
+     * The rows of one grid as read, parsed only once its tab and start row are known.
+     */
+    private static class RawGrid {
+
+        private int gid;
+        private String title;
+        private int startRow;
+        private final List<SheetRow> rows = new ArrayList<>();
+
+        RawGrid(final int gid, final String title) {
+            this.gid = gid;
+            this.title = title;
+        }
+
+        ScheduleRowCollector collect(final Instant now) {
+            ScheduleRowCollector collector = new ScheduleRowCollector(gid, title, startRow, now);
+            rows.forEach(collector::accept);
+            return collector;
+        }
+    }
+
+    static class DecodedSheet {
+
+        private final List<RawGrid> grids;
+        private final long bytesRead;
+
+        DecodedSheet(final List<RawGrid> grids, final long bytesRead) {
+            this.grids = grids;
+            this.bytesRead = bytesRead;
+        }
+
+        /**
+         * Parses every grid into events, one grid per thread.
+         */
+        List<ScheduleRowCollector> parse(final Instant now) {
+            return grids.parallelStream()
+                .map(grid -> grid.collect(now))
+                .collect(Collectors.toList());
+        }
+
+        long getBytesRead() {
+            return bytesRead;
+        }
+    }
+}
@@ -4,6 +4,7 @@
  */
 package tv.racespot.racespotlivebot.service.rest;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -11,16 +12,29 @@ import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import tv.racespot.racespotlivebot.data.ScheduledEvent;
 import tv.racespot.racespotlivebot.util.MasterScheduleCSVInputs;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Tracer;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -35,6 +49,7 @@ import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
@@ -50,16 +65,38 @@ import com.google.api.services.sheets.v4.model.GridRange;
 import com.google.api.services.sheets.v4.model.RepeatCellRequest;
 import com.google.api.services.sheets.v4.model.Request;
 import com.google.api.services.sheets.v4.model.RowData;
+import com.google.api.services.sheets.v4.model.Sheet;
 import com.google.api.services.sheets.v4.model.Spreadsheet;
 import com.google.api.services.sheets.v4.model.ValueRange;
 
 public class SheetsManager {
 
+    /**
+     * The only parts of the spreadsheet the parser reads: tab ids and titles, where each grid
+     * starts, and per cell the displayed value and background colour.
+     */
+    static final String SCHEDULE_FIELDS =
+        "sheets(properties(sheetId,title),data(startRow,rowData.values(formattedValue,userEnteredFormat.backgroundColor)))";
+
+    private static final Pattern A1_RANGE = Pattern.compile("^(.*!)?([A-Za-z]+)(\\d*):([A-Za-z]+)(\\d*)$");
+
     private Logger logger;
 
     private final String spreadsheetId;
     private final int gid;
-    private final String defaultRange;
+    private final List<String> ranges;
+    private final ApiGuard apiGuard;
+    private final Duration snapshotTtl;
+    private final boolean fieldMaskEnabled;
+    private final boolean streamingDecodeEnabled;
+
+    private final AtomicReference<ScheduleSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<ScheduleSnapshot>> inFlight = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicLong snapshotHits = new AtomicLong();
+    private final AtomicLong snapshotMisses = new AtomicLong();
+    private final ExecutorService refreshExecutor;
+    private volatile FetchStats lastFetchStats;
 
     private Credential credential;
 
@@ -68,10 +105,25 @@ public class SheetsManager {
     public SheetsManager(
         final String spreadsheetId,
         final int gid,
-        final String defaultRange) {
+        final List<String> ranges,
+        final ApiGuard apiGuard,
+        final long snapshotTtlSeconds,
+        final boolean fieldMaskEnabled,
+        final boolean streamingDecodeEnabled) {
         this.spreadsheetId = spreadsheetId;
         this.gid = gid;
-        this.defaultRange = defaultRange;
+        this.fieldMaskEnabled = fieldMaskEnabled;
+        this.streamingDecodeEnabled = streamingDecodeEnabled;
+        this.ranges = fieldMaskEnabled
+            ? ranges.stream().map(SheetsManager::clipToReadColumns).collect(Collectors.toList())
+            : new ArrayList<>(ranges);
+        this.apiGuard = apiGuard;
+        this.snapshotTtl = Duration.ofSeconds(snapshotTtlSeconds);
+        this.refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sheets-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         this.logger = LoggerFactory.getLogger(SheetsManager.class);
 
@@ -105,7 +157,7 @@ public class SheetsManager {
             final Sheets.Spreadsheets.BatchUpdate batchUpdate = getSheetService().
                 spreadsheets().batchUpdate(spreadsheetId, batchUpdateSpreadsheetRequest);
 
-            batchUpdate.execute();
+            apiGuard.call("spreadsheets.batchUpdate", false, batchUpdate::execute);
         }
     }
 
@@ -117,7 +169,8 @@ public class SheetsManager {
         cellData.setUserEnteredFormat(backgroundColor);
 
         GridRange gridRange = new GridRange();
-        gridRange.setSheetId(gid);
+        // rows stored before tabs were tracked all came from the single configured tab
+        gridRange.setSheetId(event.getSourceGid() != null ? event.getSourceGid() : gid);
         gridRange.setStartRowIndex(event.getIndex());
         gridRange.setEndRowIndex(event.getIndex() + 1);
         gridRange.setStartColumnIndex(colIndex);
@@ -142,92 +195,247 @@ public class SheetsManager {
         return color;
     }
 
+    /**
+     * The weekly events of the last snapshot. Only the very first call waits for the sheet; after
+     * that a stale snapshot is still returned straight away while a refresh runs in the
+     * background, with concurrent callers sharing that one fetch.
+     */
     public List<ScheduledEvent> getWeeklyEvents() throws IOException, GeneralSecurityException {
+        ScheduleSnapshot current = snapshot.get();
+        if (current == null) {
+            snapshotMisses.incrementAndGet();
+            return await(refresh()).getEvents();
+        }
+        if (current.isOlderThan(snapshotTtl)) {
+            snapshotMisses.incrementAndGet();
+            refresh();
+        } else {
+            snapshotHits.incrementAndGet();
+        }
+        return current.getEvents();
+    }
 
-        logger.info("Updating weekly schedule");
-        Sheets service = getSheetService();
+    /**
+     * The weekly events straight from the sheet, for when a copy up to a TTL old is not good enough.
+     */
+    public List<ScheduledEvent> refreshWeeklyEvents() throws IOException, GeneralSecurityException {
+        return await(forceRefresh()).getEvents();
+    }
 
-        Spreadsheet sheet = service.spreadsheets().get(spreadsheetId)
-            .setIncludeGridData(true).setRanges(Collections.singletonList(defaultRange)).execute();
-        GridData gridData = sheet.getSheets().get(0).getData().get(0);
-        List<RowData> rowData = gridData.getRowData();
+    public long getSnapshotHits() {
+        return snapshotHits.get();
+    }
 
-        /*ValueRange response = service.spreadsheets().values()
-            .get(spreadsheetId, defaultRange)
-            .execute();*/
+    public long getSnapshotMisses() {
+        return snapshotMisses.get();
+    }
 
-        List<ScheduledEvent> entries = getEntriesFromSheetResponse(rowData);
+    /**
+     * The last snapshot (null before the first load), without starting a refresh.
+     */
+    public ScheduleSnapshot peekSnapshot() {
+        return snapshot.get();
+    }
 
-        long lastUpdated = System.currentTimeMillis();
-        logger.info(String.format("Updated schedule at %d", lastUpdated));
-        return entries;
+    /**
+     * Starts a fetch unless one is already running, in which case that one is shared.
+     */
+    public CompletableFuture<ScheduleSnapshot> refresh() {
+        while (true) {
+            CompletableFuture<ScheduleSnapshot> running = inFlight.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<ScheduleSnapshot> fetch = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, fetch)) {
+                // a shared fetch shows up in the trace of whoever started it
+                Span fetchSpan = Tracer.current().child("sheets.fetch");
+                refreshExecutor.execute(() -> {
+                    Span previousSpan = Tracer.activate(fetchSpan);
+                    try {
+                        ScheduleSnapshot loaded = fetchSnapshot();
+                        snapshot.set(loaded);
+                        fetchSpan.setDetail(String.format("%d events, %d KB",
+                            loaded.getEvents().size(), lastFetchStats.getPayloadBytes() / 1024));
+                        fetch.complete(loaded);
+                    } catch (Throwable ex) {
+                        fetchSpan.markFailed();
+                        fetch.completeExceptionally(ex);
+                    } finally {
+                        inFlight.compareAndSet(fetch, null);
+                        fetchSpan.end();
+                        Tracer.activate(previousSpan);
+                    }
+                });
+                return fetch;
+            }
+        }
     }
 
-    private List<ScheduledEvent> getEntriesFromSheetResponse(final List<RowData> response) throws IOException {
+    /**
+     * Like {@link #refresh()}, but never joins a fetch that was already running, as that one may
+     * have read the sheet before the edit the caller wants to see. The new fetch is queued behind it.
+     */
+    public CompletableFuture<ScheduleSnapshot> forceRefresh() {
+        CompletableFuture<ScheduleSnapshot> running = inFlight.get();
+        if (running == null) {
+            return refresh();
+        }
+        // runs on the refresh thread once the running fetch has finished and cleared inFlight
+        return running.handleAsync((loaded, ex) -> null, refreshExecutor)
+            .thenCompose(ignored -> refresh());
+    }
 
-        List<ScheduledEvent> entries = new ArrayList<>();
-        int index = 1;
+    private ScheduleSnapshot await(final CompletableFuture<ScheduleSnapshot> fetch)
+        throws IOException, GeneralSecurityException {
+        try (Span ignored = Tracer.startSpan("sheets.wait")) {
+            return fetch.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the schedule", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) ex.getCause();
+            }
+            throw new IOException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
 
-        for (RowData data : response.subList(1, response.size())) {
-            List<CellData> cells = data.getValues();
+    /**
+     * Sizes and timings of the last sheet fetch, null before the first one.
+     */
+    public FetchStats getLastFetchStats() {
+        return lastFetchStats;
+    }
 
-            if(cells == null || cells.size() < 14) {
-                continue;
-            }
-            ScheduledEvent event = new ScheduledEvent();
-            event.setDate(cells.get(MasterScheduleCSVInputs.DATE_REF).getFormattedValue());
-            event.setTime(cells.get(MasterScheduleCSVInputs.UTC_REF).getFormattedValue());
-            event.setPublic("yes".equalsIgnoreCase(cells.get(MasterScheduleCSVInputs.PUBLIC_REF).getFormattedValue()));
-            event.setSeriesName(cells.get(MasterScheduleCSVInputs.SERIES_REF).getFormattedValue());
-            event.setDescription(getFormattedValueOrDefault(cells, MasterScheduleCSVInputs.DESCRIPTION_REF));
-            event.setProducer(cells.get(MasterScheduleCSVInputs.PROD_REF).getFormattedValue());
-            event.setLeadCommentator(cells.get(MasterScheduleCSVInputs.COMM_1_REF).getFormattedValue());
-            event.setColourOne(cells.get(MasterScheduleCSVInputs.COMM_2_REF).getFormattedValue());
-            event.setColourTwo(cells.get(MasterScheduleCSVInputs.COMM_3_REF).getFormattedValue());
-            event.setStreamLocation(cells.get(MasterScheduleCSVInputs.STREAMED_AT_REF).getFormattedValue());
-            event.setWebcam("yes".equalsIgnoreCase(cells.get(MasterScheduleCSVInputs.ZOOM_REF).getFormattedValue()));
-            event.setNotes(cells.get(MasterScheduleCSVInputs.NOTES_REF).getFormattedValue());
-            event.setIndex(index);
-
-            Color color = cells.get(MasterScheduleCSVInputs.SERIES_REF).getUserEnteredFormat().getBackgroundColor();
-            if(color == null || color.size() == 0) {
-                event.setRed(0f);
-                event.setBlue(0f);
-                event.setGreen(0f);
-            } else {
-                if (color.getBlue() == null) {
-                    event.setBlue(0f);
-                } else {
-                    event.setBlue(color.getBlue());
+    /**
+     * Rows of the latest snapshot whose date or time could not be read, for reporting.
+     */
+    public List<String> getLastParseErrors() {
+        ScheduleSnapshot current = snapshot.get();
+        return current == null ? Collections.emptyList() : current.getParseErrors();
+    }
+
+    private ScheduleSnapshot fetchSnapshot() throws IOException, GeneralSecurityException {
+
+        logger.info("Updating weekly schedule");
+        Sheets service = getSheetService();
+
+        long fetchStarted = System.nanoTime();
+        Instant fetchedAt = Instant.now();
+        List<ScheduleRowCollector> collected;
+        long payloadBytes;
+        long decodeStarted;
+        long parseStarted;
+        if (streamingDecodeEnabled) {
+            // only rows that become events are kept while the body is read
+            // a request and decoder per attempt, as the primary and a hedge may both be reading
+            SheetStreamDecoder.DecodedSheet decoded = apiGuard.call("spreadsheets.get", true, () -> {
+                HttpResponse response = buildScheduleGet(service).executeUnparsed();
+                ApiGuard.closeOnCancel(response::disconnect);
+                try (InputStream content = response.getContent()) {
+                    return new SheetStreamDecoder().decode(content);
+                } finally {
+                    response.disconnect();
                 }
-                if (color.getRed() == null) {
-                    event.setRed(0f);
-                } else {
-                    event.setRed(color.getRed());
+            });
+            payloadBytes = decoded.getBytesRead();
+            decodeStarted = System.nanoTime();
+            parseStarted = decodeStarted;
+            collected = decoded.parse(fetchedAt);
+        } else {
+            byte[] payload = apiGuard.call("spreadsheets.get", true, () -> {
+                HttpResponse response = buildScheduleGet(service).executeUnparsed();
+                ApiGuard.closeOnCancel(response::disconnect);
+                try (InputStream content = response.getContent()) {
+                    return content.readAllBytes();
+                } finally {
+                    response.disconnect();
                 }
-                if (color.getGreen() == null) {
-                    event.setGreen(0f);
-                } else {
-                    event.setGreen(color.getGreen());
+            });
+            payloadBytes = payload.length;
+            decodeStarted = System.nanoTime();
+            Spreadsheet sheet = JSON_FACTORY.fromInputStream(new ByteArrayInputStream(payload), Spreadsheet.class);
+            parseStarted = System.nanoTime();
+
+            List<SourceRange> sources = new ArrayList<>();
+            for (Sheet tab : sheet.getSheets()) {
+                for (GridData gridData : tab.getData()) {
+                    if (gridData.getRowData() != null && !gridData.getRowData().isEmpty()) {
+                        sources.add(new SourceRange(tab.getProperties().getSheetId(), tab.getProperties().getTitle(), gridData));
+                    }
                 }
             }
+            collected = sources.parallelStream()
+                .map(source -> getEntriesFromSheetResponse(source, fetchedAt))
+                .collect(Collectors.toList());
+        }
 
-            if(StringUtils.isNotEmpty(event.getSeriesName())) {
-                entries.add(event);
-            }
-            index++;
+        List<ScheduledEvent> entries = new ArrayList<>();
+        List<String> parseErrors = new ArrayList<>();
+        for (ScheduleRowCollector range : collected) {
+            entries.addAll(range.getEntries());
+            parseErrors.addAll(range.getParseErrors());
         }
+        parseErrors.forEach(logger::warn);
+
+        FetchStats stats = new FetchStats(
+            fieldMaskEnabled,
+            streamingDecodeEnabled,
+            payloadBytes,
+            TimeUnit.NANOSECONDS.toMillis(decodeStarted - fetchStarted),
+            TimeUnit.NANOSECONDS.toMillis(parseStarted - decodeStarted),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStarted));
+        lastFetchStats = stats;
+        logger.info("Updated weekly schedule with {} events from {} ranges, {} with an unreadable start "
+                + "({}, {}: {} KB in {} ms, decoded in {} ms, rows parsed in {} ms)",
+            entries.size(), collected.size(), parseErrors.size(), fieldMaskEnabled ? "field mask" : "full grid",
+            streamingDecodeEnabled ? "streamed" : "object model", stats.getPayloadBytes() / 1024,
+            stats.getFetchMillis(), stats.getDecodeMillis(), stats.getParseMillis());
+        return new ScheduleSnapshot(versions.incrementAndGet(), fetchedAt, entries, parseErrors);
+    }
 
-        return entries;
+    /**
+     * One call for every range; values.batchGet would be cheaper but drops the series colour.
+     * Built anew for every attempt, as the client's request objects are not thread-safe and a
+     * hedge runs alongside the original.
+     */
+    private Sheets.Spreadsheets.Get buildScheduleGet(final Sheets service) throws IOException {
+        Sheets.Spreadsheets.Get get = service.spreadsheets().get(spreadsheetId)
+            .setIncludeGridData(true).setRanges(ranges);
+        if (fieldMaskEnabled) {
+            get.setFields(SCHEDULE_FIELDS);
+        }
+        return get;
     }
 
-    private String getFormattedValueOrDefault(List<CellData> cells, int csvHeader) {
-        String returnData = cells.get(csvHeader).getFormattedValue();
+    static ScheduleRowCollector getEntriesFromSheetResponse(final SourceRange source, final Instant now) {
 
-        if(StringUtils.isEmpty(returnData)) {
-            return "";
+        int startRow = source.gridData.getStartRow() != null ? source.gridData.getStartRow() : 0;
+        ScheduleRowCollector collector = new ScheduleRowCollector(source.gid, source.title, startRow, now);
+        SheetRow row = new SheetRow();
+        for (RowData data : source.gridData.getRowData()) {
+            row.reset();
+            List<CellData> cells = data.getValues();
+            if (cells != null) {
+                row.setCellCount(cells.size());
+                for (int column = 0; column < cells.size() && column <= MasterScheduleCSVInputs.LAST_REF; column++) {
+                    row.set(column, cells.get(column).getFormattedValue());
+                }
+                if (cells.size() > MasterScheduleCSVInputs.SERIES_REF) {
+                    CellFormat seriesFormat = cells.get(MasterScheduleCSVInputs.SERIES_REF).getUserEnteredFormat();
+                    Color color = seriesFormat != null ? seriesFormat.getBackgroundColor() : null;
+                    if (color != null) {
+                        row.setColor(color.getRed(), color.getGreen(), color.getBlue());
+                    }
+                }
+            }
+            collector.accept(row);
         }
-        return returnData;
+        return collector;
     }
 
     private void connectAndCacheToken() {
@@ -244,7 +452,7 @@ public class SheetsManager {
 
         final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
 
-        return new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, credential)
+        return new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, apiGuard.withTimeouts(credential))
             .setApplicationName("RaceSpotTV Live Bot")
             .build();
     }
@@ -269,4 +477,98 @@ public class SheetsManager {
         LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(8888).build();
         return new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
     }
-}
\ No newline at end of file
+
+    /**
+     * Narrows an A1 range such as {@code Schedule!A1:Z200} to end at the last column the parser
+     * reads. Ranges that are not a plain column span are returned unchanged.
+     */
+    static String clipToReadColumns(final String range) {
+        Matcher matcher = A1_RANGE.matcher(range.trim());
+        if (!matcher.matches()) {
+            return range;
+        }
+        String lastColumn = columnName(MasterScheduleCSVInputs.LAST_REF);
+        String endColumn = matcher.group(4).toUpperCase();
+        if (endColumn.length() < lastColumn.length()
+            || (endColumn.length() == lastColumn.length() && endColumn.compareTo(lastColumn) <= 0)) {
+            return range;
+        }
+        return String.format("%s%s%s:%s%s", StringUtils.defaultString(matcher.group(1)), matcher.group(2),
+            matcher.group(3), lastColumn, matcher.group(5));
+    }
+
+    private static String columnName(final int index) {
+        StringBuilder name = new StringBuilder();
+        for (int remaining = index + 1; remaining > 0; remaining = (remaining - 1) / 26) {
+            name.insert(0, (char) ('A' + (remaining - 1) % 26));
+        }
+        return name.toString();
+    }
+
+    public static class FetchStats {
+
+        private final boolean fieldMask;
+        private final boolean streamed;
+        private final long payloadBytes;
+        private final long fetchMillis;
+        private final long decodeMillis;
+        private final long parseMillis;
+
+        public FetchStats(
+            final boolean fieldMask,
+            final boolean streamed,
+            final long payloadBytes,
+            final long fetchMillis,
+            final long decodeMillis,
+            final long parseMillis) {
+            this.fieldMask = fieldMask;
+            this.streamed = streamed;
+            this.payloadBytes = payloadBytes;
+            this.fetchMillis = fetchMillis;
+            this.decodeMillis = decodeMillis;
+            this.parseMillis = parseMillis;
+        }
+
+        public boolean isFieldMask() {
+            return fieldMask;
+        }
+
+        /**
+         * Streamed fetches decode the body while it downloads, so decoding is counted in the
+         * fetch time and the decode time is zero. Their rows are parsed once the download is
+         * complete, which is counted as parse time like for the other fetches.
+         */
+        public boolean isStreamed() {
+            return streamed;
+        }
+
+        public long getPayloadBytes() {
+            return payloadBytes;
+        }
+
+        public long getFetchMillis() {
+            return fetchMillis;
+        }
+
+        public long getDecodeMillis() {
+            return decodeMillis;
+        }
+
+        public long getParseMillis() {
+            return parseMillis;
+        }
+    }
+
+    static class SourceRange {
+
+        private final int gid;
+        private final String title;
+        private final GridData gridData;
+
+        SourceRange(final int gid, final String title, final GridData gridData) {
+            this.gid = gid;
+            this.title = title;
+            this.gridData = gridData;
+        }
+    }
+}
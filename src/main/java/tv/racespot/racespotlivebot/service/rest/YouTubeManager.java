@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.YouTubeRequest;
+import com.google.api.services.youtube.model.Channel;
+import com.google.api.services.youtube.model.ChannelListResponse;
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoListResponse;
+
+public class YouTubeManager {
+
+    private static final String DEFAULT_AVATAR =
+        "https://cdn.discordapp.com/icons/291983345133289476/4737f24e20bbe4e78104819daffe0bb1.png?size=256";
+
+    private static final int MAX_IDS_PER_CALL = 50;
+
+    private final Logger logger;
+
+    private final QuotaAccountant quotaAccountant;
+    private final ApiGuard apiGuard;
+
+    private final YouTube youtubeClient;
+
+    public YouTubeManager(final QuotaAccountant quotaAccountant, final ApiGuard apiGuard) {
+        this.quotaAccountant = quotaAccountant;
+        this.apiGuard = apiGuard;
+
+        this.youtubeClient = new YouTube.Builder(new NetHttpTransport(), new JacksonFactory(), apiGuard.withTimeouts(null))
+            .setApplicationName("racespot-tv-live-bot").build();
+
+        this.logger = LoggerFactory.getLogger(YouTubeManager.class);
+    }
+
+    public List<Video> getVideos(final List<String> videoIds) throws IOException {
+        List<Video> videos = new ArrayList<>();
+        for (int start = 0; start < videoIds.size(); start += MAX_IDS_PER_CALL) {
+            List<String> ids = videoIds.subList(start, Math.min(videoIds.size(), start + MAX_IDS_PER_CALL));
+
+            VideoListResponse searchResponse = execute(YouTubeOperation.VIDEOS_LIST,
+                () -> youtubeClient.videos().list(Arrays.asList("id", "snippet")).setId(ids));
+            if (searchResponse.getItems() != null) {
+                videos.addAll(searchResponse.getItems());
+            }
+        }
+        logger.debug("videos.list for {} ids returned {} videos", videoIds.size(), videos.size());
+        return videos;
+    }
+
+    public Video getVideoWithStreamingDetails(final String videoId) throws IOException {
+        VideoListResponse searchResponse = execute(YouTubeOperation.VIDEOS_LIST,
+            () -> youtubeClient.videos().list(Arrays.asList("id", "snippet", "liveStreamingDetails"))
+                .setId(Collections.singletonList(videoId)));
+        List<Video> videos = searchResponse.getItems();
+        if (videos == null || videos.size() != 1) {
+            return null;
+        }
+        return videos.get(0);
+    }
+
+    public Map<String, String> getChannelAvatarMap(final List<String> channelIds) throws IOException {
+        ChannelListResponse searchResponse = execute(YouTubeOperation.CHANNELS_LIST,
+            () -> youtubeClient.channels().list(Arrays.asList("id", "snippet")).setId(channelIds));
+        List<Channel> channels = searchResponse.getItems();
+        Map<String, String> idToUrlMap = new HashMap<>();
+        if (channels == null) {
+            return idToUrlMap;
+        }
+        for (Channel channel : channels) {
+            if (StringUtils.isNotEmpty(channel.getSnippet().getThumbnails().getDefault().getUrl())) {
+                idToUrlMap.put(channel.getId(), channel.getSnippet().getThumbnails().getDefault().getUrl());
+            } else {
+                idToUrlMap.put(channel.getId(), DEFAULT_AVATAR);
+            }
+        }
+        return idToUrlMap;
+    }
+
+    /**
+     * Builds a new request for every attempt, as a hedged copy runs alongside the original and the
+     * client's request objects are not thread-safe.
+     */
+    private <T> T execute(final YouTubeOperation operation, final RequestFactory<T> requests) throws IOException {
+        // one retry on another key when YouTube says a key is spent before our own count does
+        for (int attempt = 0; ; attempt++) {
+            AtomicReference<String> chargedKey = new AtomicReference<>();
+            try {
+                return apiGuard.call(operation.name(), true, () -> {
+                    YouTubeRequest<T> request = requests.create();
+                    // charged only once the guard lets the request through
+                    synchronized (chargedKey) {
+                        if (chargedKey.get() == null) {
+                            String key = quotaAccountant.charge(operation);
+                            if (key == null) {
+                                // not an IOException, so the breaker does not count our own budget as an outage
+                                throw new IllegalStateException(
+                                        String.format("YouTube quota exhausted, %s not sent", operation));
+                            }
+                            chargedKey.set(key);
+                        } else {
+                            // a hedged copy costs the same units as the original
+                            quotaAccountant.chargeKey(chargedKey.get(), operation);
+                        }
+                    }
+                    request.setKey(chargedKey.get());
+                    return request.execute();
+                });
+            } catch (GoogleJsonResponseException ex) {
+                if (attempt > 0 || !isQuotaExceeded(ex)) {
+                    throw ex;
+                }
+                quotaAccountant.markExhausted(chargedKey.get());
+            }
+        }
+    }
+
+    private static boolean isQuotaExceeded(final GoogleJsonResponseException ex) {
+        return ex.getStatusCode() == 403
+            && ex.getDetails() != null
+            && ex.getDetails().getErrors() != null
+            && ex.getDetails().getErrors().stream().anyMatch(error -> "quotaExceeded".equals(error.getReason())
+                || "dailyLimitExceeded".equals(error.getReason()));
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory<T> {
+
+        YouTubeRequest<T> create() throws IOException;
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.service.rest;
+
+/**
+ * YouTube Data API calls the bot makes, with their documented quota cost in units.
+ */
+public enum YouTubeOperation {
+
+    VIDEOS_LIST(1),
+    CHANNELS_LIST(1);
+
+    private final int cost;
+
+    YouTubeOperation(final int cost) {
+        this.cost = cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+}
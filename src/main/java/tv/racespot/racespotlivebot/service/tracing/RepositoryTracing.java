@@ -0,0 +1,37 @@
+package tv.racespot.racespotlivebot.service.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Tracer;
+
+/**
+ * Times every Spring Data repository call as a span named after the repository bean and the
+ * method, e.g. {@code db.scheduledEventRepository.save}. The interceptor goes in front of the
+ * repository proxy's own advice, so the span includes the transaction around the call.
+ */
+public class RepositoryTracing implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            String prefix = "db." + beanName + ".";
+            ((Advised) bean).addAdvice(0, (MethodInterceptor) invocation -> {
+                if (Tracer.current().isNoop()) {
+                    return invocation.proceed();
+                }
+                try (Span span = Tracer.startSpan(prefix + invocation.getMethod().getName())) {
+                    try {
+                        return invocation.proceed();
+                    } catch (Throwable ex) {
+                        span.markFailed();
+                        throw ex;
+                    }
+                }
+            });
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,267 @@
+package tv.racespot.racespotlivebot.service.tracing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.util.LogContext;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Trace;
+import tv.racespot.racespotlivebot.util.Tracer;
+
+/**
+ * In-process home for finished traces. Traces at least as slow as the export threshold (and any
+ * with a failed span) are appended to a local file, and the slowest few of every summary
+ * interval are logged with the span names that took most of their time, so a slow
+ * /updateschedule can be broken down without an outside tracing service.
+ */
+public class TraceCollector {
+
+    private static final Comparator<Trace> BY_DURATION = Comparator.comparingLong(Trace::getDurationNanos);
+    private static final int BREAKDOWN_ENTRIES = 4;
+
+    @Value("${tracing.enabled:true}")
+    private boolean enabled;
+    @Value("${tracing.file:traces.jsonl}")
+    private String file;
+    @Value("${tracing.export_threshold_millis:100}")
+    private long exportThresholdMillis;
+    @Value("${tracing.max_file_mb:50}")
+    private long maxFileMegabytes;
+    @Value("${tracing.slowest_kept:5}")
+    private int slowestKept;
+
+    private final Object lock = new Object();
+    private PriorityQueue<Trace> window = new PriorityQueue<>(BY_DURATION);
+    private List<TraceSummary> lastSlowest = Collections.emptyList();
+
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong exported = new AtomicLong();
+
+    private TraceFileWriter writer;
+
+    private final Logger logger;
+
+    public TraceCollector() {
+        this.logger = LoggerFactory.getLogger(TraceCollector.class);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            logger.info("Tracing is disabled");
+            return;
+        }
+        if (StringUtils.isNotBlank(file)) {
+            writer = new TraceFileWriter(file, maxFileMegabytes * 1024 * 1024);
+            writer.start();
+        }
+        Tracer.setSink(this::accept);
+        logger.info("Tracing on, traces over {} ms go to {}", exportThresholdMillis,
+                writer != null ? file : "the slowest-trace summary only");
+    }
+
+    public void shutdown() {
+        Tracer.setSink(null);
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    void accept(final Trace trace) {
+        finished.incrementAndGet();
+        boolean slow = trace.getDurationNanos() >= TimeUnit.MILLISECONDS.toNanos(exportThresholdMillis);
+        if (writer != null && (slow || hasFailedSpan(trace)) && writer.offer(trace)) {
+            exported.incrementAndGet();
+        }
+        if (!slow) {
+            return;
+        }
+        synchronized (lock) {
+            if (window.size() < slowestKept) {
+                window.add(trace);
+            } else if (BY_DURATION.compare(trace, window.peek()) > 0) {
+                window.poll();
+                window.add(trace);
+            }
+        }
+    }
+
+    /**
+     * The slowest traces of the current and the previous summary interval, slowest first.
+     */
+    public List<TraceSummary> getSlowest() {
+        List<TraceSummary> slowest;
+        List<Trace> current;
+        synchronized (lock) {
+            slowest = new ArrayList<>(lastSlowest);
+            current = new ArrayList<>(window);
+        }
+        current.forEach(trace -> slowest.add(summarize(trace)));
+        slowest.sort(Comparator.comparingLong(TraceSummary::getDurationMillis).reversed());
+        return slowest.subList(0, Math.min(slowestKept, slowest.size()));
+    }
+
+    public long getFinished() {
+        return finished.get();
+    }
+
+    public long getExported() {
+        return exported.get();
+    }
+
+    public long getDropped() {
+        return writer != null ? writer.getDropped() : 0;
+    }
+
+    @Scheduled(fixedRateString = "${tracing.summary_interval_millis:300000}", initialDelayString = "${tracing.summary_interval_millis:300000}")
+    public void logSlowest() {
+        try (LogContext ignored = LogContext.begin("tracing.summary")) {
+            List<Trace> slowest;
+            synchronized (lock) {
+                slowest = new ArrayList<>(window);
+                window = new PriorityQueue<>(BY_DURATION);
+            }
+            slowest.sort(BY_DURATION.reversed());
+            List<TraceSummary> summaries = slowest.stream().map(TraceCollector::summarize).collect(Collectors.toList());
+            synchronized (lock) {
+                lastSlowest = summaries;
+            }
+            if (summaries.isEmpty()) {
+                return;
+            }
+            StringBuilder message = new StringBuilder();
+            for (TraceSummary summary : summaries) {
+                message.append("\n  ").append(summary);
+            }
+            logger.info("Slowest of {} traces so far ({} exported, {} dropped):{}",
+                    getFinished(), getExported(), getDropped(), message);
+        }
+    }
+
+    /**
+     * Adds up each span's own time (its duration less that of its children) by span name, so
+     * wrappers such as the root or a lane run do not hide the calls made inside them.
+     */
+    static TraceSummary summarize(final Trace trace) {
+        List<Span> spans = trace.getSpans();
+        Map<Integer, Long> childNanos = new HashMap<>();
+        for (Span span : spans) {
+            if (span.getParent() != null) {
+                childNanos.merge(span.getParent().getId(), span.getDurationNanos(), Long::sum);
+            }
+        }
+        Map<String, long[]> byName = new HashMap<>();
+        boolean failed = false;
+        for (Span span : spans) {
+            long selfNanos = Math.max(0, span.getDurationNanos() - childNanos.getOrDefault(span.getId(), 0L));
+            long[] totals = byName.computeIfAbsent(span.getName(), name -> new long[2]);
+            totals[0] += selfNanos;
+            totals[1]++;
+            failed |= span.isFailed();
+        }
+        String breakdown = byName.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0]).reversed())
+                .limit(BREAKDOWN_ENTRIES)
+                .map(entry -> String.format("%s %d ms%s", entry.getKey(),
+                        TimeUnit.NANOSECONDS.toMillis(entry.getValue()[0]),
+                        entry.getValue()[1] > 1 ? " (" + entry.getValue()[1] + "x)" : ""))
+                .collect(Collectors.joining(", "));
+        return new TraceSummary(
+                trace.getId(),
+                trace.getName(),
+                trace.getStartedAt(),
+                TimeUnit.NANOSECONDS.toMillis(trace.getDurationNanos()),
+                spans.size() + trace.getDroppedSpans(),
+                failed,
+                breakdown);
+    }
+
+    private static boolean hasFailedSpan(final Trace trace) {
+        for (Span span : trace.getSpans()) {
+            if (span.isFailed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class TraceSummary {
+
+        private final String traceId;
+        private final String name;
+        private final Instant startedAt;
+        private final long durationMillis;
+        private final int spanCount;
+        private final boolean failed;
+        private final String breakdown;
+
+        public TraceSummary(
+                final String traceId,
+                final String name,
+                final Instant startedAt,
+                final long durationMillis,
+                final int spanCount,
+                final boolean failed,
+                final String breakdown) {
+            this.traceId = traceId;
+            this.name = name;
+            this.startedAt = startedAt;
+            this.durationMillis = durationMillis;
+            this.spanCount = spanCount;
+            this.failed = failed;
+            this.breakdown = breakdown;
+        }
+
+        public String getTraceId() {
+            return traceId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public int getSpanCount() {
+            return spanCount;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * The span names that took most of the trace's time, with their own time and count.
+         */
+        public String getBreakdown() {
+            return breakdown;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %d ms [%s]%s: %s", name, durationMillis, traceId, failed ? " failed" : "", breakdown);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package tv.racespot.racespotlivebot.service.tracing;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tv.racespot.racespotlivebot.util.Span;
+import tv.racespot.racespotlivebot.util.Trace;
+
+/**
+ * Appends finished traces to a local file, one JSON object per line, on its own thread. When
+ * the queue is full a trace is dropped rather than making the thread that finished it wait.
+ * The file is rolled over to {@code <file>.1} once it grows past the size limit.
+ */
+class TraceFileWriter {
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final Path path;
+    private final long maxBytes;
+    private final JsonFactory jsonFactory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private final BlockingQueue<Trace> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Logger logger;
+
+    private volatile boolean running;
+    private Thread thread;
+    private FileOutputStream out;
+
+    TraceFileWriter(final String file, final long maxBytes) {
+        this.path = Paths.get(file);
+        this.maxBytes = maxBytes;
+
+        this.logger = LoggerFactory.getLogger(TraceFileWriter.class);
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(this::writeLoop, "trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    boolean offer(final Trace trace) {
+        if (queue.offer(trace)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    long getWritten() {
+        return written.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    private void writeLoop() {
+        List<Trace> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Trace first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (Trace trace : batch) {
+                    write(trace);
+                }
+                out.flush();
+                written.addAndGet(batch.size());
+                if (out.getChannel().position() > maxBytes) {
+                    rollOver();
+                }
+            } catch (InterruptedException ex) {
+                running = false;
+            } catch (IOException ex) {
+                logger.warn("Unable to write {} traces to {}: {}", batch.size(), path, ex.getMessage());
+                closeQuietly();
+            } finally {
+                batch.clear();
+            }
+        }
+        closeQuietly();
+    }
+
+    private void write(final Trace trace) throws IOException {
+        if (out == null) {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            out = new FileOutputStream(path.toFile(), true);
+        }
+        long rootStart = trace.getRoot().getStartNanos();
+        JsonGenerator json = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+        json.writeStartObject();
+        json.writeStringField("traceId", trace.getId());
+        json.writeStringField("name", trace.getName());
+        json.writeStringField("startedAt", trace.getStartedAt().toString());
+        json.writeNumberField("durationMicros", TimeUnit.NANOSECONDS.toMicros(trace.getDurationNanos()));
+        if (trace.getDroppedSpans() > 0) {
+            json.writeNumberField("droppedSpans", trace.getDroppedSpans());
+        }
+        json.writeArrayFieldStart("spans");
+        for (Span span : trace.getSpans()) {
+            json.writeStartObject();
+            json.writeNumberField("id", span.getId());
+            if (span.getParent() != null) {
+                json.writeNumberField("parentId", span.getParent().getId());
+            }
+            json.writeStringField("name", span.getName());
+            json.writeNumberField("offsetMicros", TimeUnit.NANOSECONDS.toMicros(span.getStartNanos() - rootStart));
+            json.writeNumberField("durationMicros", TimeUnit.NANOSECONDS.toMicros(span.getDurationNanos()));
+            if (span.getDetail() != null) {
+                json.writeStringField("detail", span.getDetail());
+            }
+            if (span.isFailed()) {
+                json.writeBooleanField("failed", true);
+            }
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.close();
+        out.write('\n');
+    }
+
+    private void rollOver() throws IOException {
+        closeQuietly();
+        Files.move(path, Paths.get(path + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeQuietly() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // nothing more to lose
+        }
+        out = null;
+    }
+}
@@ -0,0 +1,270 @@
+package tv.racespot.racespotlivebot.service.websub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Embedded endpoint the WebSub hub calls back on. GET requests are subscription verifications
+ * and are answered with the hub challenge; POST requests carry Atom notifications, which are
+ * only handed on when their {@code X-Hub-Signature} matches the HMAC of the body.
+ */
+public class WebSubCallbackServer {
+
+    private static final String YOUTUBE_NAMESPACE = "http://www.youtube.com/xml/schemas/2015";
+    private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final int port;
+    private final String path;
+    private final byte[] secret;
+    private final VerificationHandler verificationHandler;
+    private final NotificationHandler notificationHandler;
+
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong rejectedSignatures = new AtomicLong();
+
+    private final Logger logger;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public WebSubCallbackServer(
+            final int port,
+            final String path,
+            final String secret,
+            final VerificationHandler verificationHandler,
+            final NotificationHandler notificationHandler) {
+        if (StringUtils.isEmpty(secret)) {
+            throw new IllegalArgumentException("websub.secret is required to check notification signatures");
+        }
+        this.port = port;
+        this.path = path;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.verificationHandler = verificationHandler;
+        this.notificationHandler = notificationHandler;
+
+        this.logger = LoggerFactory.getLogger(WebSubCallbackServer.class);
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "websub-callback");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+        server.start();
+        logger.info("WebSub callback listening on port {} at {}", getPort(), path);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+        }
+    }
+
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    public long getNotificationCount() {
+        return notifications.get();
+    }
+
+    public long getRejectedSignatureCount() {
+        return rejectedSignatures.get();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                handleVerification(exchange);
+            } else if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                handleNotification(exchange);
+            } else {
+                respond(exchange, 405, "");
+            }
+        } catch (Exception ex) {
+            logger.error("WebSub callback failed: {}", ex.getMessage(), ex);
+            respond(exchange, 500, "");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleVerification(final HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String mode = query.get("hub.mode");
+        String topic = query.get("hub.topic");
+        String challenge = query.get("hub.challenge");
+        long leaseSeconds = NumberUtils.toLong(query.get("hub.lease_seconds"));
+
+        if (StringUtils.isAnyEmpty(mode, topic, challenge)
+                || !verificationHandler.verify(mode, topic, leaseSeconds)) {
+            logger.warn("Refused WebSub {} verification for {}", mode, topic);
+            respond(exchange, 404, "");
+            return;
+        }
+        logger.info("Confirmed WebSub {} for {}, lease {} s", mode, topic, leaseSeconds);
+        respond(exchange, 200, challenge);
+    }
+
+    private void handleNotification(final HttpExchange exchange) throws IOException, GeneralSecurityException {
+        byte[] body = readBody(exchange.getRequestBody());
+        String signature = exchange.getRequestHeaders().getFirst("X-Hub-Signature");
+
+        // the hub must get a 2xx even for a bad signature, the payload is just dropped
+        if (body == null || !isSignatureValid(signature, body)) {
+            rejectedSignatures.incrementAndGet();
+            logger.warn("Dropped WebSub notification with missing or invalid signature");
+            respond(exchange, 202, "");
+            return;
+        }
+
+        try {
+            Document document = parse(body);
+            NodeList entries = document.getElementsByTagNameNS(ATOM_NAMESPACE, "entry");
+            for (int i = 0; i < entries.getLength(); i++) {
+                Element entry = (Element) entries.item(i);
+                String videoId = getText(entry, "videoId");
+                String channelId = getText(entry, "channelId");
+                if (StringUtils.isNotEmpty(videoId)) {
+                    notifications.incrementAndGet();
+                    notificationHandler.notified(channelId, videoId);
+                }
+            }
+        } catch (Exception ex) {
+            logger.warn("Unable to parse WebSub notification: {}", ex.getMessage());
+        }
+        respond(exchange, 202, "");
+    }
+
+    boolean isSignatureValid(final String signature, final byte[] body) throws GeneralSecurityException {
+        if (StringUtils.isEmpty(signature) || !signature.contains("=")) {
+            return false;
+        }
+        String method = StringUtils.substringBefore(signature, "=").toLowerCase();
+        String algorithm;
+        switch (method) {
+            case "sha1":
+                algorithm = "HmacSHA1";
+                break;
+            case "sha256":
+                algorithm = "HmacSHA256";
+                break;
+            case "sha512":
+                algorithm = "HmacSHA512";
+                break;
+            default:
+                return false;
+        }
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(secret, algorithm));
+        byte[] expected = toHex(mac.doFinal(body)).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = StringUtils.substringAfter(signature, "=").toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static Document parse(final byte[] body) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setExpandEntityReferences(false);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        return builder.parse(new ByteArrayInputStream(body));
+    }
+
+    private static String getText(final Element entry, final String localName) {
+        NodeList nodes = entry.getElementsByTagNameNS(YOUTUBE_NAMESPACE, localName);
+        return nodes.getLength() == 0 ? null : StringUtils.trimToNull(nodes.item(0).getTextContent());
+    }
+
+    private static byte[] readBody(final InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_BODY_BYTES) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        Map<String, String> values = new HashMap<>();
+        if (StringUtils.isEmpty(rawQuery)) {
+            return values;
+        }
+        for (String pair : rawQuery.split("&")) {
+            String key = StringUtils.substringBefore(pair, "=");
+            String value = pair.contains("=") ? StringUtils.substringAfter(pair, "=") : "";
+            values.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    @FunctionalInterface
+    public interface VerificationHandler {
+
+        boolean verify(String mode, String topic, long leaseSeconds);
+    }
+
+    @FunctionalInterface
+    public interface NotificationHandler {
+
+        void notified(String channelId, String videoId);
+    }
+}
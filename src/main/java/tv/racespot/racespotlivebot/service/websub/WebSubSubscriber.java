@@ -0,0 +1,164 @@
+package tv.racespot.racespotlivebot.service.websub;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import tv.racespot.racespotlivebot.data.YoutubeChannel;
+import tv.racespot.racespotlivebot.data.YoutubeChannelRepository;
+import tv.racespot.racespotlivebot.service.LeaderElection;
+import tv.racespot.racespotlivebot.util.LogContext;
+
+/**
+ * Keeps a WebSub subscription alive for every registered YouTube channel. Leases are recorded
+ * when the hub verifies them and renewed a day before they run out.
+ */
+public class WebSubSubscriber {
+
+    private static final String TOPIC_PREFIX = "https://www.youtube.com/xml/feeds/videos.xml?channel_id=";
+
+    private final boolean enabled;
+    private final String hubUrl;
+    private final String callbackUrl;
+    private final String secret;
+    private final long leaseSeconds;
+
+    private final YoutubeChannelRepository channelRepository;
+    private final LeaderElection leaderElection;
+    private final HttpClient httpClient;
+
+    private final Logger logger;
+
+    public WebSubSubscriber(
+            final boolean enabled,
+            final String hubUrl,
+            final String callbackUrl,
+            final String secret,
+            final long leaseSeconds,
+            final YoutubeChannelRepository channelRepository,
+            final LeaderElection leaderElection) {
+        if (enabled && (StringUtils.isBlank(callbackUrl) || StringUtils.isEmpty(secret))) {
+            // without both, the hub cannot reach us or every notification fails its signature check
+            throw new IllegalArgumentException("websub.callback_url and websub.secret are required when websub.enabled is true");
+        }
+        this.enabled = enabled;
+        this.hubUrl = hubUrl;
+        this.callbackUrl = callbackUrl;
+        this.secret = secret;
+        this.leaseSeconds = leaseSeconds;
+        this.channelRepository = channelRepository;
+        this.leaderElection = leaderElection;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        this.logger = LoggerFactory.getLogger(WebSubSubscriber.class);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void register(final String channelId) {
+        if (StringUtils.isEmpty(channelId) || channelRepository.findByChannelId(channelId) != null) {
+            return;
+        }
+        channelRepository.save(new YoutubeChannel(channelId));
+        logger.info("Registered YouTube channel {}", channelId);
+        subscribe(channelId);
+    }
+
+    @Scheduled(fixedRate = 3600000, initialDelay = 60000)
+    public void renewLeases() {
+        try (LogContext ignored = LogContext.begin("websub.renew")) {
+            if (!enabled || !leaderElection.isLeader()) {
+                return;
+            }
+            List<YoutubeChannel> expiring = channelRepository.findLeasesExpiringBefore(Instant.now().plus(Duration.ofDays(1)));
+            for (YoutubeChannel channel : expiring) {
+                subscribe(channel.getChannelId());
+            }
+        }
+    }
+
+    public CompletableFuture<Boolean> subscribe(final String channelId) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("hub.callback", callbackUrl);
+        form.put("hub.topic", TOPIC_PREFIX + channelId);
+        form.put("hub.mode", "subscribe");
+        form.put("hub.verify", "async");
+        form.put("hub.lease_seconds", Long.toString(leaseSeconds));
+        form.put("hub.secret", secret);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(hubUrl))
+                .timeout(Duration.ofSeconds(15))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(encode(form)))
+                .build();
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, ex) -> {
+                    if (ex != null) {
+                        logger.error("WebSub subscribe for {} failed: {}", channelId, ex.getMessage());
+                        return false;
+                    }
+                    if (response.statusCode() / 100 != 2) {
+                        logger.error("WebSub hub refused subscription for {}: {} {}",
+                                channelId, response.statusCode(), response.body());
+                        return false;
+                    }
+                    logger.info("Requested WebSub subscription for {}", channelId);
+                    return true;
+                });
+    }
+
+    public boolean verify(final String mode, final String topic, final long leaseSeconds) {
+        if (!topic.startsWith(TOPIC_PREFIX)) {
+            return false;
+        }
+        YoutubeChannel channel = channelRepository.findByChannelId(topic.substring(TOPIC_PREFIX.length()));
+        if ("unsubscribe".equalsIgnoreCase(mode)) {
+            return channel == null;
+        }
+        if (!"subscribe".equalsIgnoreCase(mode) || channel == null) {
+            return false;
+        }
+        channel.setLeaseExpiresAt(Instant.now().plusSeconds(leaseSeconds > 0 ? leaseSeconds : this.leaseSeconds));
+        channelRepository.save(channel);
+        return true;
+    }
+
+    public void recordNotification(final String channelId) {
+        YoutubeChannel channel = channelRepository.findByChannelId(channelId);
+        if (channel != null) {
+            channel.setLastNotificationAt(Instant.now());
+            channelRepository.save(channel);
+        }
+    }
+
+    private static String encode(final Map<String, String> form) {
+        StringJoiner joiner = new StringJoiner("&");
+        for (Map.Entry<String, String> entry : form.entrySet()) {
+            joiner.add(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "="
+                    + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+        }
+        return joiner.toString();
+    }
+}
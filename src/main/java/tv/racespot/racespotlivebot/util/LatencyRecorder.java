@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer so percentiles can be read without
+ * holding every sample ever recorded.
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+
+    private int next;
+    private int size;
+    private long count;
+    private long total;
+    private long max;
+
+    public LatencyRecorder(final int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(final long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        count++;
+        total += millis;
+        max = Math.max(max, millis);
+    }
+
+    public synchronized long percentile(final double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(rank, size - 1))];
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getAverage() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    public String summary() {
+        return String.format("n=%d avg=%dms p50=%dms p95=%dms max=%dms",
+            getCount(), getAverage(), percentile(50), percentile(95), getMax());
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.MDC;
+
+/**
+ * Tags log lines with the interaction or tick that produced them. {@link #begin} puts a fresh
+ * correlation id and the origin (a command name, "reaction", a scheduled task) in the MDC for the
+ * current thread and puts back whatever was there on close; the work executor carries the MDC
+ * over to its lanes, so every line of one slash command shares an id. It also starts the root
+ * span of a trace under the same id, so a slow trace can be matched to its log lines.
+ */
+public final class LogContext implements AutoCloseable {
+
+    public static final String CORRELATION_ID = "correlationId";
+    public static final String ORIGIN = "origin";
+
+    private final Map<String, String> previous;
+    private Span root = Span.NOOP;
+
+    private LogContext(final Map<String, String> previous) {
+        this.previous = previous;
+    }
+
+    public static LogContext begin(final String origin) {
+        LogContext context = new LogContext(MDC.getCopyOfContextMap());
+        String correlationId = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 16);
+        MDC.put(CORRELATION_ID, correlationId);
+        MDC.put(ORIGIN, origin);
+        context.root = Tracer.startTrace(correlationId, origin);
+        return context;
+    }
+
+    /**
+     * Replaces the current thread's MDC with {@code context}, which may be null; returns what was
+     * there before so it can be put back.
+     */
+    public static Map<String, String> swap(final Map<String, String> context) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        restore(context);
+        return previous;
+    }
+
+    @Override
+    public void close() {
+        root.close();
+        restore(previous);
+    }
+
+    private static void restore(final Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
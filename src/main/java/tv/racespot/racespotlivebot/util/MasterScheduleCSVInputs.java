@@ -22,4 +22,7 @@ public class MasterScheduleCSVInputs {
     public static final int LINK_1_REF = 13;
     public static final int LINK_2_REF = 14;
     public static final int NOTES_REF = 15;
+
+    /** Right-most column the parser reads; anything past it is never fetched. */
+    public static final int LAST_REF = NOTES_REF;
 }
\ No newline at end of file
@@ -8,7 +8,6 @@ import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.javacord.api.entity.channel.TextChannel;
 import org.javacord.api.entity.message.Message;
 import org.javacord.api.entity.message.MessageBuilder;
 import org.javacord.api.entity.permission.PermissionType;
@@ -39,16 +38,14 @@ public class MessageUtil {
         message.addReaction("❌");
     }
 
-    public static void sendStackTraceToChannel(
+    public static MessageBuilder buildStackTraceMessage(
         String message,
-        TextChannel channel,
         Throwable error) {
 
         String stackTrace = ExceptionUtils.getStackTrace(error);
-        new MessageBuilder()
+        return new MessageBuilder()
             .append(message)
             .appendCode("java", error.getMessage())
-            .appendCode("java", stackTrace.substring(0, Math.min(stackTrace.length(), 1000)))
-            .send(channel);
+            .appendCode("java", stackTrace.substring(0, Math.min(stackTrace.length(), 1000)));
     }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Turns the schedule sheet's formatted date and UTC time cells into an instant. The sheet is
+ * edited by hand, so several layouts are accepted; day-first is tried before month-first, and a
+ * date without a year is placed in the year that puts it closest to now.
+ */
+public final class ScheduleTimes {
+
+    private static final List<DateTimeFormatter> DATES_WITH_YEAR = formatters(
+        "d/M/uuuu", "d/M/uu", "uuuu-M-d", "d MMM uuuu", "d MMMM uuuu", "MMM d uuuu", "MMMM d uuuu", "M/d/uuuu");
+    private static final List<DateTimeFormatter> DATES_WITHOUT_YEAR = formatters(
+        "d/M", "d MMM", "d MMMM", "MMM d", "MMMM d", "M/d");
+    private static final List<DateTimeFormatter> TIMES = formatters(
+        "H:mm", "H:mm:ss", "h:mm a", "h:mma", "h a", "ha", "HHmm");
+
+    private static final String WEEKDAYS =
+        "(?i)\\b(mon|tue|tues|wed|thu|thur|thurs|fri|sat|sun)(day|nesday|sday|rsday|urday)?\\b\\.?";
+
+    private ScheduleTimes() {
+    }
+
+    /**
+     * The start of an event, or empty when either cell cannot be read.
+     */
+    public static Optional<Instant> parseStart(final String date, final String time, final Instant now) {
+        Optional<LocalDate> day = parseDate(date, now);
+        Optional<LocalTime> clock = parseTime(time);
+        if (!day.isPresent() || !clock.isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(day.get().atTime(clock.get()).toInstant(ZoneOffset.UTC));
+    }
+
+    public static Optional<LocalDate> parseDate(final String date, final Instant now) {
+        if (StringUtils.isBlank(date)) {
+            return Optional.empty();
+        }
+        String cleaned = StringUtils.normalizeSpace(date.replaceAll(WEEKDAYS, " ")
+            .replaceAll("(\\d)(st|nd|rd|th)\\b", "$1")
+            .replaceAll("(\\d)\\.(\\d)", "$1/$2")
+            .replace(",", " "));
+        for (DateTimeFormatter formatter : DATES_WITH_YEAR) {
+            try {
+                return Optional.of(LocalDate.parse(cleaned, formatter));
+            } catch (DateTimeParseException ex) {
+                // try the next layout
+            }
+        }
+        LocalDate today = now.atOffset(ZoneOffset.UTC).toLocalDate();
+        for (DateTimeFormatter formatter : DATES_WITHOUT_YEAR) {
+            try {
+                MonthDay monthDay = MonthDay.parse(cleaned, formatter);
+                return Optional.of(closestYear(monthDay, today));
+            } catch (DateTimeParseException ex) {
+                // try the next layout
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A weekday written out or abbreviated to at least three letters, e.g. "fri" or "Friday".
+     */
+    public static Optional<DayOfWeek> parseWeekday(final String word) {
+        String cleaned = StringUtils.removeEnd(StringUtils.trimToEmpty(word), ".").toLowerCase(Locale.ENGLISH);
+        if (cleaned.length() < 3) {
+            return Optional.empty();
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (day.getDisplayName(TextStyle.FULL, Locale.ENGLISH).toLowerCase(Locale.ENGLISH).startsWith(cleaned)) {
+                return Optional.of(day);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static Optional<LocalTime> parseTime(final String time) {
+        if (StringUtils.isBlank(time)) {
+            return Optional.empty();
+        }
+        String cleaned = StringUtils.normalizeSpace(time.replaceAll("(?i)\\b(utc|gmt|z)\\b", " ")).toUpperCase(Locale.ENGLISH);
+        for (DateTimeFormatter formatter : TIMES) {
+            try {
+                return Optional.of(LocalTime.parse(cleaned, formatter));
+            } catch (DateTimeParseException ex) {
+                // try the next layout
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static LocalDate closestYear(final MonthDay monthDay, final LocalDate today) {
+        LocalDate best = null;
+        for (int offset = -1; offset <= 1; offset++) {
+            int year = today.getYear() + offset;
+            if (!monthDay.isValidYear(year)) {
+                continue;
+            }
+            LocalDate candidate = monthDay.atYear(year);
+            if (best == null || Math.abs(ChronoUnit.DAYS.between(today, candidate))
+                < Math.abs(ChronoUnit.DAYS.between(today, best))) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static List<DateTimeFormatter> formatters(final String... patterns) {
+        return Arrays.stream(patterns)
+            .map(pattern -> new DateTimeFormatterBuilder()
+                .parseCaseInsensitive()
+                .appendPattern(pattern)
+                .toFormatter(Locale.ENGLISH)
+                .withResolverStyle(ResolverStyle.STRICT))
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One timed step of a {@link Trace}. A span is either active on a thread (started with
+ * {@link Tracer#startSpan} and ended by closing it, which puts back the span that was active
+ * before) or detached (started with {@link #child} and ended by whoever finishes the work, for
+ * example when a future completes). Ending twice is harmless. Outside of a trace every span is
+ * {@link #NOOP}.
+ */
+public final class Span implements AutoCloseable {
+
+    public static final Span NOOP = new Span(null, null, 0, "", 0);
+
+    private final Trace trace;
+    private final Span parent;
+    private final int id;
+    private final String name;
+    private final long startNanos;
+    private final AtomicLong endNanos = new AtomicLong();
+
+    private volatile String detail;
+    private volatile boolean failed;
+
+    private Span restoreOnClose;
+    private boolean active;
+
+    Span(final Trace trace, final Span parent, final int id, final String name, final long startNanos) {
+        this.trace = trace;
+        this.parent = parent;
+        this.id = id;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Starts a detached child; the caller has to {@link #end} it.
+     */
+    public Span child(final String name) {
+        if (trace == null) {
+            return NOOP;
+        }
+        return trace.startSpan(this, name);
+    }
+
+    public Span setDetail(final String detail) {
+        if (trace != null) {
+            this.detail = detail;
+        }
+        return this;
+    }
+
+    public Span markFailed() {
+        if (trace != null) {
+            this.failed = true;
+        }
+        return this;
+    }
+
+    public void end() {
+        if (trace != null && endNanos.compareAndSet(0, System.nanoTime())) {
+            trace.spanEnded(this);
+        }
+    }
+
+    @Override
+    public void close() {
+        end();
+        if (active) {
+            active = false;
+            Tracer.activate(restoreOnClose);
+        }
+    }
+
+    void activated(final Span previous) {
+        this.restoreOnClose = previous;
+        this.active = true;
+    }
+
+    public boolean isNoop() {
+        return trace == null;
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public Span getParent() {
+        return parent;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Zero while the span is still running.
+     */
+    public long getEndNanos() {
+        return endNanos.get();
+    }
+
+    public long getDurationNanos() {
+        long end = endNanos.get();
+        return end == 0 ? 0 : end - startNanos;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+}
@@ -4,146 +4,119 @@
  */
 package tv.racespot.racespotlivebot.util;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
-import io.bretty.console.table.Alignment;
-import io.bretty.console.table.ColumnFormatter;
-import io.bretty.console.table.Table;
-import tv.racespot.racespotlivebot.data.DServer;
-import tv.racespot.racespotlivebot.data.SeriesLogo;
-import tv.racespot.racespotlivebot.data.UserMapping;
-
-import org.javacord.api.entity.channel.TextChannel;
-import org.javacord.api.entity.message.MessageBuilder;
+import org.apache.commons.lang3.StringUtils;
 import org.javacord.api.entity.message.MessageDecoration;
 
 public class TableFormatter {
 
-    public static void printServers(List<DServer> servers, TextChannel channel) {
-
-        if (servers.size() == 0) {
-            new MessageBuilder()
-                .append("Severs\n", MessageDecoration.BOLD)
-                .append("```")
-                .append("No servers found")
-                .append("```")
-                .send(channel);
-            return;
-        }
-
-        List<String> serverNames = new ArrayList<>();
-        List<String> discordIds = new ArrayList<>();
-
-        for (DServer server : servers) {
-            serverNames.add(server.getDName());
-            discordIds.add(server.getDServerId());
-        }
-
-        Table.Builder builder = new Table.Builder(
-            "Serverss",
-            serverNames.toArray(new String[0]),
-            getStringFormatterWithWidth(serverNames));
-        addStringColumnToTable(builder, "Discord ID", discordIds);
+    private static final String COLUMN_SEPARATOR = " | ";
+    private static final int MIN_COLUMN_WIDTH = 4;
 
-        Table table = builder.build();
-
-        new MessageBuilder()
-            .append("Servers\n", MessageDecoration.BOLD)
-            .append("```")
-            .append(table.toString())
-            .append("```")
-            .send(channel);
+    public static String formatBlock(String title, String body) {
+        return heading(title) + "```" + body + "```";
     }
 
-    public static void printTalent(List<UserMapping> talentMappings, TextChannel channel) {
-
-        if (talentMappings.size() == 0) {
-            new MessageBuilder()
-                .append("Talent\n", MessageDecoration.BOLD)
-                .append("```")
-                .append("No registered talent found")
-                .append("```")
-                .send(channel);
-            return;
+    /**
+     * Renders one page of a listing. Column widths come from a single pass over the page, and are
+     * narrowed (longest column first) until every row fits the share of {@code maxLength} left
+     * over after the title and footer. Columns are never narrower than {@value #MIN_COLUMN_WIDTH};
+     * when a page still does not fit at that width, the rows past the limit are left out with a
+     * marker line, so the code block stays closed and the result stays within {@code maxLength}.
+     */
+    public static String formatPage(
+        String title,
+        String[] headers,
+        List<String[]> rows,
+        int pageNumber,
+        int totalPages,
+        long totalRows,
+        int maxLength) {
+
+        String heading = heading(title);
+        String footer = String.format("Page %d/%d, %d rows", pageNumber + 1, Math.max(totalPages, 1), totalRows);
+
+        int[] widths = new int[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            widths[i] = headers[i].length();
         }
-
-        List<String> talentNames = new ArrayList<>();
-        List<String> discordIds = new ArrayList<>();
-
-        for (UserMapping mapping : talentMappings) {
-            talentNames.add(mapping.getTalentName());
-            discordIds.add(Long.toString(mapping.getdUserId()));
+        for (String[] row : rows) {
+            for (int i = 0; i < headers.length; i++) {
+                widths[i] = Math.max(widths[i], StringUtils.length(row[i]));
+            }
         }
 
-        Table.Builder builder = new Table.Builder(
-            "Talent",
-            talentNames.toArray(new String[0]),
-            getStringFormatterWithWidth(talentNames));
-        addStringColumnToTable(builder, "Discord ID", discordIds);
-
-        Table table = builder.build();
-
-        new MessageBuilder()
-            .append("Talent\n", MessageDecoration.BOLD)
-            .append("```")
-            .append(table.toString())
-            .append("```")
-            .send(channel);
-    }
-
-    public static void printSeries(List<SeriesLogo> talentMappings, TextChannel channel) {
-
-        if (talentMappings.size() == 0) {
-            new MessageBuilder()
-                .append("Series\n", MessageDecoration.BOLD)
-                .append("```")
-                .append("No registered series found")
-                .append("```")
-                .send(channel);
-            return;
+        // heading + fences + header row + divider row + data rows + footer
+        int overhead = heading.length() + "```\n```".length() + footer.length();
+        int lineBudget = (maxLength - overhead) / (rows.size() + 2) - 1;
+        fitWidths(widths, lineBudget - COLUMN_SEPARATOR.length() * (headers.length - 1));
+
+        StringBuilder builder = new StringBuilder(maxLength);
+        builder.append(heading).append("```\n");
+        appendRow(builder, headers, widths);
+        for (int i = 0; i < widths.length; i++) {
+            if (i > 0) {
+                builder.append("-+-");
+            }
+            builder.append(StringUtils.repeat('-', widths[i]));
         }
-
-        List<String> seriesName = new ArrayList<>();
-        List<String> urls = new ArrayList<>();
-
-        for (SeriesLogo mapping : talentMappings) {
-            seriesName.add(mapping.getSeriesName());
-            urls.add(mapping.getThumbnailUrl());
+        builder.append('\n');
+        String closing = "```" + footer;
+        for (int i = 0; i < rows.size(); i++) {
+            StringBuilder line = new StringBuilder();
+            appendRow(line, rows.get(i), widths);
+            // the last row needs no room for the marker
+            String marker = i < rows.size() - 1 ? omittedRows(rows.size() - i - 1) : "";
+            if (builder.length() + line.length() + marker.length() + closing.length() > maxLength) {
+                builder.append(omittedRows(rows.size() - i));
+                break;
+            }
+            builder.append(line);
         }
+        builder.append(closing);
+        return builder.toString();
+    }
 
-        Table.Builder builder = new Table.Builder(
-            "Series",
-            seriesName.toArray(new String[0]),
-            getStringFormatterWithWidth(seriesName));
-        addStringColumnToTable(builder, "URL", urls);
-
-        Table table = builder.build();
-
-        new MessageBuilder()
-            .append("Series\n", MessageDecoration.BOLD)
-            .append("```")
-            .append(table.toString())
-            .append("```")
-            .send(channel);
+    private static String heading(String title) {
+        return MessageDecoration.BOLD.getPrefix() + title + MessageDecoration.BOLD.getSuffix() + "\n";
     }
 
-    private static ColumnFormatter<String> getStringFormatterWithWidth(List<String> entries) {
-        return ColumnFormatter.text(
-            Alignment.CENTER,
-            entries
-                .stream()
-                .max(Comparator.comparingInt(String::length))
-                .get()
-                .length());
+    private static String omittedRows(int count) {
+        return String.format("... %d more rows\n", count);
     }
 
-    private static void addStringColumnToTable(Table.Builder table, String header, List<String> rows) {
-        table.addColumn(
-            header,
-            rows.toArray(new String[0]),
-            getStringFormatterWithWidth(rows));
+    private static void fitWidths(int[] widths, int budget) {
+        int total = 0;
+        for (int width : widths) {
+            total += width;
+        }
+        while (total > budget) {
+            int widest = 0;
+            for (int i = 1; i < widths.length; i++) {
+                if (widths[i] > widths[widest]) {
+                    widest = i;
+                }
+            }
+            if (widths[widest] <= MIN_COLUMN_WIDTH) {
+                return;
+            }
+            widths[widest]--;
+            total--;
+        }
     }
 
-}
\ No newline at end of file
+    private static void appendRow(StringBuilder builder, String[] cells, int[] widths) {
+        for (int i = 0; i < widths.length; i++) {
+            if (i > 0) {
+                builder.append(COLUMN_SEPARATOR);
+            }
+            String cell = StringUtils.defaultString(cells[i]);
+            if (cell.length() > widths[i]) {
+                cell = StringUtils.abbreviate(cell, widths[i]);
+            }
+            builder.append(StringUtils.rightPad(cell, widths[i]));
+        }
+        builder.append('\n');
+    }
+}
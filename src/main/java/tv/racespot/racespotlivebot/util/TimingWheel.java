@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel: a ring of slots, each holding the timeouts whose deadline tick maps to
+ * it. Adding and cancelling are O(1); a tick only visits one slot, counting down the remaining
+ * revolutions of timeouts that are further out than one turn of the wheel. Deadlines are
+ * rounded up to the next tick. Not thread-safe, callers synchronize.
+ */
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final List<LinkedList<Timeout<T>>> slots;
+    private final int mask;
+
+    private long currentTick;
+    private long startMillis;
+    private int pending;
+
+    public TimingWheel(final long tickMillis, final int slotCount, final long startMillis) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.mask = slotCount - 1;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new LinkedList<>());
+        }
+        this.startMillis = startMillis;
+    }
+
+    public Timeout<T> add(final long deadlineMillis, final T payload) {
+        long deadlineTick = Math.max(currentTick + 1, ceilDiv(deadlineMillis - startMillis, tickMillis));
+        long ticksAway = deadlineTick - currentTick;
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMillis, (ticksAway - 1) / slots.size());
+        slots.get((int) (deadlineTick & mask)).add(timeout);
+        pending++;
+        return timeout;
+    }
+
+    public void cancel(final Timeout<T> timeout) {
+        if (!timeout.cancelled && !timeout.expired) {
+            timeout.cancelled = true;
+            pending--;
+        }
+    }
+
+    /**
+     * Advances the wheel to {@code nowMillis} and returns the payloads that came due, in tick
+     * order.
+     */
+    public List<T> advance(final long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            Iterator<Timeout<T>> iterator = slots.get((int) (currentTick & mask)).iterator();
+            while (iterator.hasNext()) {
+                Timeout<T> timeout = iterator.next();
+                if (timeout.cancelled) {
+                    iterator.remove();
+                } else if (timeout.remainingRounds == 0) {
+                    iterator.remove();
+                    timeout.expired = true;
+                    pending--;
+                    expired.add(timeout.payload);
+                } else {
+                    timeout.remainingRounds--;
+                }
+            }
+        }
+        return expired;
+    }
+
+    public void clear(final long nowMillis) {
+        for (LinkedList<Timeout<T>> slot : slots) {
+            slot.clear();
+        }
+        currentTick = 0;
+        startMillis = nowMillis;
+        pending = 0;
+    }
+
+    public int size() {
+        return pending;
+    }
+
+    private static long ceilDiv(final long value, final long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    public static class Timeout<T> {
+
+        private final T payload;
+        private final long deadlineMillis;
+        private long remainingRounds;
+        private boolean cancelled;
+        private boolean expired;
+
+        private Timeout(final T payload, final long deadlineMillis, final long remainingRounds) {
+            this.payload = payload;
+            this.deadlineMillis = deadlineMillis;
+            this.remainingRounds = remainingRounds;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
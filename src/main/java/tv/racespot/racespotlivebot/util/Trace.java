@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The spans of one interaction or scheduled run. Work handed to other threads keeps its own spans
+ * open, so the trace is complete when the last open span ends rather than when the root does; it
+ * is then passed to the sink once. Only the first {@link #MAX_SPANS} spans are kept, the rest
+ * are counted.
+ */
+public final class Trace {
+
+    public static final int MAX_SPANS = 512;
+
+    private final String id;
+    private final Instant startedAt;
+    private final Consumer<Trace> sink;
+    private final Span root;
+
+    private final AtomicInteger nextSpanId = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    private volatile long endNanos;
+
+    Trace(final String id, final String name, final Consumer<Trace> sink) {
+        this.id = id;
+        this.startedAt = Instant.now();
+        this.sink = sink;
+        this.root = startSpan(null, name);
+    }
+
+    Span startSpan(final Span parent, final String name) {
+        open.incrementAndGet();
+        return new Span(this, parent, nextSpanId.incrementAndGet(), name, System.nanoTime());
+    }
+
+    void spanEnded(final Span span) {
+        if (recorded.incrementAndGet() <= MAX_SPANS) {
+            spans.add(span);
+        } else {
+            dropped.incrementAndGet();
+        }
+        if (open.decrementAndGet() == 0) {
+            endNanos = System.nanoTime();
+            sink.accept(this);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return root.getName();
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Span getRoot() {
+        return root;
+    }
+
+    public long getDurationNanos() {
+        return endNanos == 0 ? 0 : endNanos - root.getStartNanos();
+    }
+
+    /**
+     * The ended spans in the order they ended.
+     */
+    public List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    public int getDroppedSpans() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2021 by Amobee Inc.
+ * All Rights Reserved.
+ */
+package tv.racespot.racespotlivebot.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Entry point for tracing. The span active on the current thread is the parent of new spans;
+ * executors that hand work to other threads capture {@link #current} and {@link #activate} it on
+ * the worker. Nothing is recorded until a sink is installed, so without one every span is
+ * {@link Span#NOOP}.
+ */
+public final class Tracer {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private static volatile Consumer<Trace> sink;
+
+    private Tracer() {
+    }
+
+    public static void setSink(final Consumer<Trace> traceSink) {
+        sink = traceSink;
+    }
+
+    /**
+     * Starts a new trace whose root span becomes active on this thread until it is closed.
+     */
+    public static Span startTrace(final String id, final String name) {
+        Consumer<Trace> traceSink = sink;
+        if (traceSink == null) {
+            return Span.NOOP;
+        }
+        Span root = new Trace(id, name, traceSink).getRoot();
+        root.activated(activate(root));
+        return root;
+    }
+
+    /**
+     * Starts a child of the current span and makes it active until it is closed.
+     */
+    public static Span startSpan(final String name) {
+        Span span = current().child(name);
+        if (!span.isNoop()) {
+            span.activated(activate(span));
+        }
+        return span;
+    }
+
+    public static Span current() {
+        Span span = CURRENT.get();
+        return span != null ? span : Span.NOOP;
+    }
+
+    /**
+     * Makes {@code span} (which may be null) the current span and returns the one it replaces.
+     */
+    public static Span activate(final Span span) {
+        Span previous = CURRENT.get();
+        if (span == null || span.isNoop()) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(span);
+        }
+        return previous;
+    }
+
+    /**
+     * Times {@code future} as a child of the current span.
+     */
+    public static <T> CompletableFuture<T> traceFuture(final String name, final CompletableFuture<T> future) {
+        return traceFuture(current(), name, future);
+    }
+
+    public static <T> CompletableFuture<T> traceFuture(
+            final Span parent,
+            final String name,
+            final CompletableFuture<T> future) {
+        Span span = parent.child(name);
+        if (span.isNoop()) {
+            return future;
+        }
+        return future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                span.markFailed();
+            }
+            span.end();
+        });
+    }
+}
@@ -0,0 +1,102 @@
+package tv.racespot.racespotlivebot.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Runs the lease statements against H2, each in a transaction of its own as in the heartbeat.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LeaderLeaseRepositoryTest {
+
+	private static final String LEASE = "racespot-live-bot";
+
+	@Autowired
+	private LeaderLeaseRepository repository;
+
+	@AfterEach
+	void clear() {
+		repository.deleteAll();
+	}
+
+	@Test
+	void databaseClock() {
+		Instant now = repository.currentTimestamp().toInstant();
+		assertTrue(Math.abs(now.toEpochMilli() - Instant.now().toEpochMilli()) < 5000);
+	}
+
+	@Test
+	void create() {
+		assertEquals(1, repository.create(LEASE, "a", inSeconds(10)));
+		assertEquals("a", repository.findById(LEASE).get().getHolderId());
+		assertThrows(DataIntegrityViolationException.class, () -> repository.create(LEASE, "b", inSeconds(10)));
+		assertEquals("a", repository.findById(LEASE).get().getHolderId());
+	}
+
+	@Test
+	void renew() {
+		repository.create(LEASE, "a", inSeconds(10));
+
+		assertEquals(1, repository.renew(LEASE, "a", inSeconds(20)));
+		assertEquals(0, repository.renew(LEASE, "b", inSeconds(20)));
+	}
+
+	@Test
+	void expiredLeaseIsNotRenewed() {
+		repository.create(LEASE, "a", inSeconds(-1));
+
+		assertEquals(0, repository.renew(LEASE, "a", inSeconds(10)));
+	}
+
+	@Test
+	void takeOver() {
+		repository.create(LEASE, "a", inSeconds(10));
+		assertEquals(0, repository.takeOver(LEASE, "b", inSeconds(10)));
+		assertEquals("a", repository.findById(LEASE).get().getHolderId());
+
+		repository.deleteAll();
+		repository.create(LEASE, "a", inSeconds(-1));
+		assertEquals(1, repository.takeOver(LEASE, "b", inSeconds(10)));
+		assertEquals("b", repository.findById(LEASE).get().getHolderId());
+		assertEquals(0, repository.renew(LEASE, "a", inSeconds(10)));
+	}
+
+	@Test
+	void release() {
+		repository.create(LEASE, "a", inSeconds(10));
+
+		assertEquals(0, repository.release(LEASE, "b"));
+		assertEquals(1, repository.release(LEASE, "a"));
+		assertFalse(repository.findById(LEASE).get().getExpiresAt().isAfter(Instant.now().plusSeconds(1)));
+		assertEquals(1, repository.takeOver(LEASE, "b", inSeconds(10)));
+	}
+
+	private Instant inSeconds(long seconds) {
+		return repository.currentTimestamp().toInstant().plusSeconds(seconds);
+	}
+
+	@Configuration
+	@EntityScan(basePackageClasses = LeaderLease.class)
+	@EnableJpaRepositories(basePackageClasses = LeaderLease.class,
+			includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = LeaderLeaseRepository.class))
+	static class Config {
+	}
+}
@@ -0,0 +1,231 @@
+package tv.racespot.racespotlivebot.service.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.sheets.v4.model.Border;
+import com.google.api.services.sheets.v4.model.Borders;
+import com.google.api.services.sheets.v4.model.CellData;
+import com.google.api.services.sheets.v4.model.CellFormat;
+import com.google.api.services.sheets.v4.model.Color;
+import com.google.api.services.sheets.v4.model.DimensionProperties;
+import com.google.api.services.sheets.v4.model.ExtendedValue;
+import com.google.api.services.sheets.v4.model.GridData;
+import com.google.api.services.sheets.v4.model.GridProperties;
+import com.google.api.services.sheets.v4.model.Padding;
+import com.google.api.services.sheets.v4.model.RowData;
+import com.google.api.services.sheets.v4.model.Sheet;
+import com.google.api.services.sheets.v4.model.SheetProperties;
+import com.google.api.services.sheets.v4.model.Spreadsheet;
+import com.google.api.services.sheets.v4.model.TextFormat;
+import tv.racespot.racespotlivebot.data.ScheduledEvent;
+import tv.racespot.racespotlivebot.util.MasterScheduleCSVInputs;
+
+/**
+ * Payload size, decode time, allocation and retained heap of the schedule fetch modes, on
+ * generated sheets. Excluded from the regular test run; run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class SheetDecodeBenchmark {
+
+	private static final Instant NOW = Instant.parse("2021-06-01T00:00:00Z");
+	private static final JacksonFactory JSON = JacksonFactory.getDefaultInstance();
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	@Test
+	void fieldMask() throws Exception {
+		byte[] full = JSON.toByteArray(sheet(200, 26, true));
+		byte[] masked = JSON.toByteArray(sheet(200, MasterScheduleCSVInputs.LAST_REF + 1, false));
+
+		for (int i = 0; i < 200; i++) {
+			objectModel(full);
+			objectModel(masked);
+		}
+		double fullMillis = millis(() -> objectModel(full), 300);
+		double maskedMillis = millis(() -> objectModel(masked), 300);
+
+		System.out.printf("field mask, 200 rows: full grid %d KB decoded in %.2f ms, masked %d KB decoded in %.2f ms%n",
+				full.length / 1024, fullMillis, masked.length / 1024, maskedMillis);
+		assertTrue(masked.length < full.length);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {5000, 50000})
+	void streamingDecode(int rows) throws Exception {
+		byte[] payload = JSON.toByteArray(sheet(rows, MasterScheduleCSVInputs.LAST_REF + 1, false));
+
+		List<ScheduledEvent> expected = objectModel(payload);
+		List<ScheduledEvent> streamed = streamed(payload);
+		assertEquals(expected.size(), streamed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getIndex(), streamed.get(i).getIndex());
+			assertEquals(expected.get(i).getSourceGid(), streamed.get(i).getSourceGid());
+			assertEquals(expected.get(i).getStartsAt(), streamed.get(i).getStartsAt());
+		}
+
+		for (int i = 0; i < 10; i++) {
+			objectModel(payload);
+			streamed(payload);
+		}
+		long objectModelAllocated = allocated(() -> objectModel(payload));
+		long streamedAllocated = allocated(() -> streamed(payload));
+		double objectModelMillis = millis(() -> objectModel(payload), 10);
+		double streamedMillis = millis(() -> streamed(payload), 10);
+
+		// what each mode holds at its peak: the body and object graph, or the events kept
+		long base = usedHeap();
+		Spreadsheet tree = JSON.fromInputStream(new ByteArrayInputStream(payload), Spreadsheet.class);
+		long treeRetained = usedHeap() - base + payload.length;
+		assertTrue(tree.getSheets().size() > 0);
+		tree = null;
+		base = usedHeap();
+		List<ScheduledEvent> kept = streamed(payload);
+		long eventsRetained = usedHeap() - base;
+		assertEquals(expected.size(), kept.size());
+
+		System.out.printf("%d rows, %d events, %d KB: object model %d MB allocated, %.1f ms, %d MB retained | "
+						+ "streamed %d MB allocated, %.1f ms, %d MB retained%n",
+				rows, expected.size(), payload.length / 1024,
+				objectModelAllocated >> 20, objectModelMillis, treeRetained >> 20,
+				streamedAllocated >> 20, streamedMillis, eventsRetained >> 20);
+	}
+
+	private static List<ScheduledEvent> objectModel(byte[] payload) throws Exception {
+		Spreadsheet sheet = JSON.fromInputStream(new ByteArrayInputStream(payload), Spreadsheet.class);
+		List<SheetsManager.SourceRange> sources = new ArrayList<>();
+		for (Sheet tab : sheet.getSheets()) {
+			for (GridData grid : tab.getData()) {
+				sources.add(new SheetsManager.SourceRange(tab.getProperties().getSheetId(), tab.getProperties().getTitle(), grid));
+			}
+		}
+		return events(sources.parallelStream()
+				.map(source -> SheetsManager.getEntriesFromSheetResponse(source, NOW))
+				.collect(Collectors.toList()));
+	}
+
+	private static List<ScheduledEvent> streamed(byte[] payload) throws Exception {
+		return events(new SheetStreamDecoder().decode(new ByteArrayInputStream(payload)).parse(NOW));
+	}
+
+	private static List<ScheduledEvent> events(List<ScheduleRowCollector> ranges) {
+		List<ScheduledEvent> events = new ArrayList<>();
+		ranges.forEach(range -> events.addAll(range.getEntries()));
+		return events;
+	}
+
+	/**
+	 * Two tabs of {@code rows} each, with short rows, rows without a series and unreadable
+	 * times mixed in. The full variant carries the formats and metadata an unmasked fetch gets.
+	 */
+	private static Spreadsheet sheet(int rows, int columns, boolean full) {
+		List<Sheet> tabs = new ArrayList<>();
+		for (int tab = 0; tab < 2; tab++) {
+			List<RowData> rowData = new ArrayList<>();
+			for (int r = 0; r < rows; r++) {
+				List<CellData> cells = new ArrayList<>();
+				for (int c = 0; c < columns; c++) {
+					cells.add(cell(value(r, c), full));
+				}
+				if (r % 11 == 0 && r > 0) {
+					cells = cells.subList(0, 5);
+				}
+				rowData.add(new RowData().setValues(cells));
+			}
+			GridData grid = new GridData().setStartRow(3).setRowData(rowData);
+			SheetProperties properties = new SheetProperties().setSheetId(100 + tab).setTitle("Tab " + tab);
+			if (full) {
+				List<DimensionProperties> metadata = new ArrayList<>();
+				for (int r = 0; r < rows; r++) {
+					metadata.add(new DimensionProperties().setPixelSize(21));
+				}
+				grid.setRowMetadata(metadata).setStartColumn(0);
+				properties.setIndex(tab).setSheetType("GRID")
+						.setGridProperties(new GridProperties().setRowCount(rows + 10).setColumnCount(26).setFrozenRowCount(1));
+			}
+			tabs.add(new Sheet().setProperties(properties).setData(Arrays.asList(grid)));
+		}
+		return new Spreadsheet().setSheets(tabs);
+	}
+
+	private static String value(int row, int column) {
+		switch (column) {
+			case MasterScheduleCSVInputs.DATE_REF:
+				return String.format("Mon 0%d/06", row % 9 + 1);
+			case MasterScheduleCSVInputs.UTC_REF:
+				return row % 13 == 0 ? "late" : "19:30";
+			case MasterScheduleCSVInputs.SERIES_REF:
+				return row % 7 == 0 ? null : "Series " + row % 40;
+			default:
+				return String.format("Value %d-%d", row, column);
+		}
+	}
+
+	private static CellData cell(String text, boolean full) {
+		CellFormat format = new CellFormat().setBackgroundColor(new Color().setRed(0.8f).setGreen(0.9f).setBlue(0.7f));
+		CellData cell = new CellData().setFormattedValue(text).setUserEnteredFormat(format);
+		if (full) {
+			format.setHorizontalAlignment("CENTER").setVerticalAlignment("BOTTOM").setWrapStrategy("OVERFLOW_CELL")
+					.setPadding(new Padding().setTop(2).setRight(3).setBottom(2).setLeft(3))
+					.setBorders(new Borders().setBottom(new Border().setStyle("SOLID").setWidth(1).setColor(new Color())))
+					.setTextFormat(new TextFormat().setFontFamily("Arial").setFontSize(10).setBold(false).setItalic(false));
+			cell.setUserEnteredValue(new ExtendedValue().setStringValue(text))
+					.setEffectiveValue(new ExtendedValue().setStringValue(text))
+					.setEffectiveFormat(format.clone());
+		}
+		return cell;
+	}
+
+	private static double millis(Run run, int times) throws Exception {
+		long started = System.nanoTime();
+		for (int i = 0; i < times; i++) {
+			run.run();
+		}
+		return (System.nanoTime() - started) / 1e6 / times;
+	}
+
+	/**
+	 * Bytes allocated by every thread, as the grids are parsed on the common pool.
+	 */
+	private static long allocated(Run run) throws Exception {
+		long least = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			long before = totalAllocated();
+			run.run();
+			least = Math.min(least, totalAllocated() - before);
+		}
+		return least;
+	}
+
+	private static long totalAllocated() {
+		long total = 0;
+		for (long allocated : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+			total += Math.max(0, allocated);
+		}
+		return total;
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private interface Run {
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,97 @@
+package tv.racespot.racespotlivebot.service.websub;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WebSubCallbackServerTest {
+
+	private static final String SECRET = "hub-secret";
+	private static final String TOPIC = "https://www.youtube.com/xml/feeds/videos.xml?channel_id=UC123";
+
+	private static final String ATOM = "<?xml version='1.0' encoding='UTF-8'?>"
+			+ "<feed xmlns:yt=\"http://www.youtube.com/xml/schemas/2015\" xmlns=\"http://www.w3.org/2005/Atom\">"
+			+ "<entry><id>yt:video:abc123</id><yt:videoId>abc123</yt:videoId>"
+			+ "<yt:channelId>UC123</yt:channelId><title>Race day</title></entry></feed>";
+
+	private final List<String> notified = new CopyOnWriteArrayList<>();
+	private final HttpClient hub = HttpClient.newHttpClient();
+
+	private WebSubCallbackServer server;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new WebSubCallbackServer(0, "/websub", SECRET,
+				(mode, topic, lease) -> "subscribe".equals(mode) && TOPIC.equals(topic),
+				(channelId, videoId) -> notified.add(channelId + "/" + videoId));
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop();
+	}
+
+	@Test
+	void echoesChallengeForKnownTopic() throws Exception {
+		HttpResponse<String> accepted = hub.send(verification(TOPIC), HttpResponse.BodyHandlers.ofString());
+		HttpResponse<String> refused = hub.send(verification(TOPIC + "other"), HttpResponse.BodyHandlers.ofString());
+
+		assertEquals(200, accepted.statusCode());
+		assertEquals("challenge-42", accepted.body());
+		assertEquals(404, refused.statusCode());
+	}
+
+	@Test
+	void deliversOnlySignedNotifications() throws Exception {
+		HttpResponse<String> signed = hub.send(notification(sign(ATOM)), HttpResponse.BodyHandlers.ofString());
+		HttpResponse<String> forged = hub.send(notification("sha1=0000"), HttpResponse.BodyHandlers.ofString());
+
+		assertEquals(202, signed.statusCode());
+		assertEquals(202, forged.statusCode());
+		assertEquals(List.of("UC123/abc123"), notified);
+		assertEquals(1, server.getRejectedSignatureCount());
+	}
+
+	private HttpRequest verification(String topic) {
+		String query = "hub.mode=subscribe&hub.challenge=challenge-42&hub.lease_seconds=432000&hub.topic="
+				+ URLEncoder.encode(topic, StandardCharsets.UTF_8);
+		return HttpRequest.newBuilder(URI.create(baseUrl() + "?" + query)).GET().build();
+	}
+
+	private HttpRequest notification(String signature) {
+		return HttpRequest.newBuilder(URI.create(baseUrl()))
+				.header("Content-Type", "application/atom+xml")
+				.header("X-Hub-Signature", signature)
+				.POST(HttpRequest.BodyPublishers.ofString(ATOM))
+				.build();
+	}
+
+	private String baseUrl() {
+		return "http://localhost:" + server.getPort() + "/websub";
+	}
+
+	private static String sign(String body) throws Exception {
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA1"));
+		StringBuilder hex = new StringBuilder("sha1=");
+		for (byte b : mac.doFinal(body.getBytes(StandardCharsets.UTF_8))) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}